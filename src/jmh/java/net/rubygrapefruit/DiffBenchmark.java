@@ -0,0 +1,48 @@
+package net.rubygrapefruit;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures comparing two resolved distributions.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+@State(Scope.Thread)
+public class DiffBenchmark {
+    private ClassSet classesBefore;
+    private ClassSet classesAfter;
+
+    @Setup(Level.Trial)
+    public void inspect(DistributionState distribution) throws IOException {
+        DistributionInspector inspector = new DistributionInspector(new JarInspector(null, null));
+        classesBefore = inspector.inspect(distribution.before);
+        classesAfter = inspector.inspect(distribution.after);
+    }
+
+    @Benchmark
+    public void diff(Blackhole blackhole) {
+        new ApiDiff(new DiffListener() {
+            @Override
+            public void classUnchanged(ClassDetails details) {
+                blackhole.consume(details);
+            }
+
+            @Override
+            public void methodAdded(ClassDetails before, ClassDetails after, MethodDetails addedMethod) {
+                blackhole.consume(addedMethod);
+            }
+
+            @Override
+            public void methodRemoved(ClassDetails before, ClassDetails after, MethodDetails removedMethod) {
+                blackhole.consume(removedMethod);
+            }
+        }).diff(classesBefore, classesAfter);
+    }
+}
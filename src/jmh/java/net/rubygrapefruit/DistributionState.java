@@ -0,0 +1,60 @@
+package net.rubygrapefruit;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+
+/**
+ * A pair of synthetic distributions, before and after a change, shared by the benchmarks.
+ */
+@State(Scope.Benchmark)
+public class DistributionState {
+    @Param({"8"})
+    public int jars;
+
+    @Param({"500", "2000"})
+    public int classesPerJar;
+
+    @Param({"10"})
+    public int hierarchyDepth;
+
+    @Param({"20"})
+    public int membersPerClass;
+
+    public File baseDir;
+    public File before;
+    public File after;
+    public File[] beforeJars;
+
+    @Setup(Level.Trial)
+    public void createDistributions() throws IOException {
+        baseDir = Files.createTempDirectory("api-checker-benchmark").toFile();
+        before = new File(baseDir, "before");
+        after = new File(baseDir, "after");
+        beforeJars = new SyntheticDistribution(jars, classesPerJar, hierarchyDepth, membersPerClass, 0).write(before);
+        new SyntheticDistribution(jars, classesPerJar, hierarchyDepth, membersPerClass, 100).write(after);
+    }
+
+    @TearDown(Level.Trial)
+    public void deleteDistributions() throws IOException {
+        Files.walkFileTree(baseDir.toPath(), new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+                Files.delete(file);
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult postVisitDirectory(Path dir, IOException exc) throws IOException {
+                Files.delete(dir);
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+}
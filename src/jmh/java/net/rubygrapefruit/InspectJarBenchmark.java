@@ -0,0 +1,22 @@
+package net.rubygrapefruit;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures parsing a single jar.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+public class InspectJarBenchmark {
+    @Benchmark
+    public List<ParsedClass> inspectJar(DistributionState distribution) throws IOException {
+        return new JarInspector(null, null).inspectJar(distribution.beforeJars[0]);
+    }
+}
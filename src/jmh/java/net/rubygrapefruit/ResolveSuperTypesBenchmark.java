@@ -0,0 +1,46 @@
+package net.rubygrapefruit;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures resolving the inherited members of a distribution. The jars are parsed once, and a new {@link ClassSet} is
+ * built from the parsed classes before each invocation.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+@State(Scope.Thread)
+public class ResolveSuperTypesBenchmark {
+    private final List<List<ParsedClass>> contents = new ArrayList<>();
+    private ClassSet classes;
+
+    @Setup(Level.Trial)
+    public void parse(DistributionState distribution) throws IOException {
+        JarInspector jarInspector = new JarInspector(null, null);
+        for (File jar : DistributionInspector.jars(distribution.before)) {
+            contents.add(jarInspector.inspectJar(jar));
+        }
+    }
+
+    @Setup(Level.Invocation)
+    public void createClassSet() {
+        classes = new ClassSet();
+        for (List<ParsedClass> jarContents : contents) {
+            classes.addAll(jarContents);
+        }
+    }
+
+    @Benchmark
+    public ClassSet resolveSuperTypes() {
+        classes.resolveSuperTypes();
+        return classes;
+    }
+}
@@ -0,0 +1,131 @@
+package net.rubygrapefruit;
+
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+
+/**
+ * Generates a distribution of synthetic classes, with a configurable shape. Classes are generated directly as byte code,
+ * so that large distributions can be created quickly.
+ *
+ * <p>Each jar contains chains of classes of the given depth, where each class extends the previous class of its chain
+ * and every chain implements an interface. One in three classes is internal.</p>
+ */
+public class SyntheticDistribution {
+    private final int jars;
+    private final int classesPerJar;
+    private final int hierarchyDepth;
+    private final int membersPerClass;
+    private final int changeEvery;
+
+    /**
+     * @param changeEvery Changes a method of every nth class, or 0 to change nothing. Use this to generate a later
+     * version of a distribution.
+     */
+    public SyntheticDistribution(int jars, int classesPerJar, int hierarchyDepth, int membersPerClass, int changeEvery) {
+        this.jars = jars;
+        this.classesPerJar = classesPerJar;
+        this.hierarchyDepth = hierarchyDepth;
+        this.membersPerClass = membersPerClass;
+        this.changeEvery = changeEvery;
+    }
+
+    /**
+     * Writes the distribution to the given install directory. Returns the jars that were written.
+     */
+    public File[] write(File installDir) throws IOException {
+        File libDir = new File(installDir, "lib");
+        File pluginsDir = new File(libDir, "plugins");
+        pluginsDir.mkdirs();
+        File[] result = new File[jars];
+        for (int jar = 0; jar < jars; jar++) {
+            // Put every fourth jar in lib/plugins
+            File jarFile = new File(jar % 4 == 3 ? pluginsDir : libDir, "synthetic-" + jar + ".jar");
+            JarOutputStream outputStream = new JarOutputStream(new FileOutputStream(jarFile));
+            try {
+                writeJar(jar, outputStream);
+            } finally {
+                outputStream.close();
+            }
+            result[jar] = jarFile;
+        }
+        return result;
+    }
+
+    private void writeJar(int jar, JarOutputStream outputStream) throws IOException {
+        for (int i = 0; i < classesPerJar; i++) {
+            if (i % hierarchyDepth == 0) {
+                write(outputStream, interfaceName(jar, i / hierarchyDepth), generateInterface(jar, i / hierarchyDepth));
+            }
+            write(outputStream, className(jar, i), generateClass(jar, i));
+        }
+    }
+
+    private static void write(JarOutputStream outputStream, String name, byte[] content) throws IOException {
+        outputStream.putNextEntry(new JarEntry(name + ".class"));
+        outputStream.write(content);
+        outputStream.closeEntry();
+    }
+
+    private static String className(int jar, int index) {
+        String packageName = index % 3 == 0 ? "org/gradle/synthetic" + jar + "/internal" : "org/gradle/synthetic" + jar;
+        return packageName + "/Class" + index;
+    }
+
+    private static String interfaceName(int jar, int chain) {
+        return "org/gradle/synthetic" + jar + "/Interface" + chain;
+    }
+
+    private byte[] generateInterface(int jar, int chain) {
+        ClassWriter writer = new ClassWriter(0);
+        writer.visit(Opcodes.V1_8, Opcodes.ACC_PUBLIC | Opcodes.ACC_ABSTRACT | Opcodes.ACC_INTERFACE, interfaceName(jar, chain), null, "java/lang/Object", null);
+        for (int member = 0; member < membersPerClass; member++) {
+            writer.visitMethod(Opcodes.ACC_PUBLIC | Opcodes.ACC_ABSTRACT, "chain" + chain + "Method" + member, descriptor(member), null, null).visitEnd();
+        }
+        writer.visitEnd();
+        return writer.toByteArray();
+    }
+
+    private byte[] generateClass(int jar, int index) {
+        String superName = index % hierarchyDepth == 0 ? "java/lang/Object" : className(jar, index - 1);
+        String[] interfaces = index % hierarchyDepth == 0 ? new String[]{interfaceName(jar, index / hierarchyDepth)} : null;
+        boolean changed = changeEvery > 0 && index % changeEvery == changeEvery - 1;
+
+        ClassWriter writer = new ClassWriter(ClassWriter.COMPUTE_MAXS);
+        writer.visit(Opcodes.V1_8, Opcodes.ACC_PUBLIC | Opcodes.ACC_SUPER | (index % hierarchyDepth == 0 ? Opcodes.ACC_ABSTRACT : 0), className(jar, index), null, superName, interfaces);
+        method(writer, Opcodes.ACC_PUBLIC, "<init>", "()V");
+        for (int member = 0; member < membersPerClass; member++) {
+            int access = member % 4 == 3 ? Opcodes.ACC_PRIVATE : member % 4 == 2 ? Opcodes.ACC_PROTECTED : Opcodes.ACC_PUBLIC;
+            String name = "method" + index + "_" + member + (changed && member == 0 ? "Changed" : "");
+            method(writer, access, name, descriptor(member));
+            writer.visitField(access, "field" + index + "_" + member, member % 2 == 0 ? "Ljava/lang/String;" : "I", null, null).visitEnd();
+        }
+        writer.visitEnd();
+        return writer.toByteArray();
+    }
+
+    private static void method(ClassWriter writer, int access, String name, String descriptor) {
+        MethodVisitor methodVisitor = writer.visitMethod(access, name, descriptor, null, null);
+        methodVisitor.visitCode();
+        methodVisitor.visitInsn(Opcodes.RETURN);
+        methodVisitor.visitMaxs(0, 0);
+        methodVisitor.visitEnd();
+    }
+
+    private static String descriptor(int member) {
+        switch (member % 3) {
+            case 0:
+                return "()V";
+            case 1:
+                return "(Ljava/lang/String;I)V";
+            default:
+                return "(Ljava/util/List;Ljava/lang/Object;)V";
+        }
+    }
+}
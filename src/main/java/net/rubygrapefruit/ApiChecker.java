@@ -1,36 +1,52 @@
 package net.rubygrapefruit;
 
-import org.objectweb.asm.*;
-
+import java.io.BufferedWriter;
 import java.io.File;
+import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.InputStream;
-import java.util.Map;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
 import java.util.Set;
-import java.util.TreeMap;
-import java.util.TreeSet;
-import java.util.jar.JarFile;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
 
 /**
  * TODO: Changes in inherited supertypes
  * TODO: Changes in modifiers (visibility, static, abstract, etc) for classes, inner classes, methods, fields
  * TODO: Change from type (class, interface, annotation, enum, etc)
- * TODO: Skip private methods
  * TODO: Changes in type parameters for types, methods, exceptions
  * TODO: Changes in checked exceptions
  * TODO: Changes in inherited fields, ignore non-visible fields
  * TODO: Changes in annotations
- * TODO: Internal classes reachable from public API
- * TODO: Classes reachable from public API but not visible
  * TODO: Incubating/deprecated changes
  * TODO: contents of `lib/plugins`
- * TODO: report on moved classes, rather than add + remove
- * TODO: report on change to method parameters and return types, rather than add + remove
  */
 public class ApiChecker {
+    private static final long DEFAULT_CACHE_SIZE = 512 * 1024 * 1024;
+
     private final File before;
     private final File after;
     private final DiffListener diffListener;
+    private int parallelism = 1;
+    private JarCache jarCache;
+    private boolean verbose;
+    private MetricsListener metricsListener;
+    private Cancellation cancellation;
+    private boolean compact;
+    private ApiRules rules = ApiRules.defaults();
+    private long memoryBudget;
+    private File spillDir;
+    private int readThreads;
 
     public ApiChecker(File before, File after, DiffListener diffListener) {
         this.before = before;
@@ -39,266 +55,582 @@ public class ApiChecker {
     }
 
     public static void main(String[] args) throws IOException {
-        if (args.length != 2) {
-            throw new IllegalArgumentException("USAGE: <dist-before> <dist-after");
+        List<String> paths = new ArrayList<>();
+        int parallelism = 1;
+        File cacheDir = null;
+        long cacheSize = DEFAULT_CACHE_SIZE;
+        String format = "text";
+        File outputFile = null;
+        boolean quiet = false;
+        boolean verbose = false;
+        File indexFile = null;
+        int maxModels = 0;
+        File metricsFile = null;
+        boolean gateMode = false;
+        boolean compact = false;
+        int port = 0;
+        int daemonPort = 0;
+        long idleTimeout = 30;
+        File rulesFile = null;
+        long memoryBudget = 0;
+        File spillDir = null;
+        int shards = 1;
+        int readThreads = 0;
+        for (int i = 0; i < args.length; i++) {
+            String arg = args[i];
+            if (arg.equals("--parallel")) {
+                parallelism = Runtime.getRuntime().availableProcessors();
+            } else if (arg.equals("--threads") && i + 1 < args.length) {
+                parallelism = Integer.parseInt(args[++i]);
+            } else if (arg.equals("--cache-dir") && i + 1 < args.length) {
+                cacheDir = new File(args[++i]);
+            } else if (arg.equals("--cache-size") && i + 1 < args.length) {
+                cacheSize = Long.parseLong(args[++i]) * 1024 * 1024;
+            } else if (arg.equals("--format") && i + 1 < args.length) {
+                format = args[++i];
+            } else if (arg.equals("--output") && i + 1 < args.length) {
+                outputFile = new File(args[++i]);
+            } else if (arg.equals("--quiet")) {
+                quiet = true;
+            } else if (arg.equals("--verbose")) {
+                verbose = true;
+            } else if (arg.equals("--index") && i + 1 < args.length) {
+                indexFile = new File(args[++i]);
+            } else if (arg.equals("--max-models") && i + 1 < args.length) {
+                maxModels = Integer.parseInt(args[++i]);
+            } else if (arg.equals("--port") && i + 1 < args.length) {
+                port = Integer.parseInt(args[++i]);
+            } else if (arg.equals("--daemon") && i + 1 < args.length) {
+                daemonPort = Integer.parseInt(args[++i]);
+            } else if (arg.equals("--idle-timeout") && i + 1 < args.length) {
+                idleTimeout = Long.parseLong(args[++i]);
+            } else if (arg.equals("--compact")) {
+                compact = true;
+            } else if (arg.equals("--gate")) {
+                gateMode = true;
+            } else if (arg.equals("--metrics") && i + 1 < args.length) {
+                metricsFile = new File(args[++i]);
+            } else if (arg.equals("--rules") && i + 1 < args.length) {
+                rulesFile = new File(args[++i]);
+            } else if (arg.equals("--memory-budget") && i + 1 < args.length) {
+                memoryBudget = Long.parseLong(args[++i]) * 1024 * 1024;
+            } else if (arg.equals("--spill-dir") && i + 1 < args.length) {
+                spillDir = new File(args[++i]);
+            } else if (arg.equals("--shards") && i + 1 < args.length) {
+                shards = Integer.parseInt(args[++i]);
+            } else if (arg.equals("--read-threads") && i + 1 < args.length) {
+                readThreads = Integer.parseInt(args[++i]);
+            } else {
+                paths.add(arg);
+            }
         }
-
-        File before = new File(args[0]);
-        File after = new File(args[1]);
-        new ApiChecker(before, after, new DiffReporter()).run();
-    }
-
-    public void run() throws IOException {
-        System.out.println("Comparing " + before + " to " + after);
-
-        ClassSet classesBefore = new ClassSet();
-        inspect(before, classesBefore);
-
-        ClassSet classesAfter = new ClassSet();
-        inspect(after, classesAfter);
-
-        diff(classesBefore, classesAfter);
-    }
-
-    private void diff(ClassSet classesBefore, ClassSet classesAfter) {
-        System.out.println();
-        System.out.println("==== DIFF ====");
-        System.out.println();
-
-        Map<String, ClassDetails> addedClasses = new TreeMap<>(classesAfter.getVisibleApiClasses());
-        addedClasses.keySet().removeAll(classesBefore.getVisibleApiClasses().keySet());
-        for (ClassDetails classDetails : addedClasses.values()) {
-            diffListener.classAdded(classDetails);
+        if (!format.equals("text") && !format.equals("json")) {
+            throw new IllegalArgumentException("Unknown format " + format + ", expected text or json");
         }
+        JarCache jarCache = cacheDir != null ? new JarCache(cacheDir, cacheSize) : null;
+        ApiRules rules = rulesFile != null ? ApiRules.parse(rulesFile) : ApiRules.defaults();
 
-        Map<String, ClassDetails> removedClasses = new TreeMap<>(classesBefore.getVisibleApiClasses());
-        removedClasses.keySet().removeAll(classesAfter.getVisibleApiClasses().keySet());
-        for (ClassDetails classDetails : removedClasses.values()) {
-            diffListener.classRemoved(classDetails);
+        if (paths.size() == 3 && paths.get(0).equals("snapshot")) {
+            writeSnapshot(new File(paths.get(1)), new File(paths.get(2)), jarCache, rules);
+            return;
+        }
+        if (paths.size() == 6 && paths.get(0).equals("shard")) {
+            runShard(Integer.parseInt(paths.get(1)), Integer.parseInt(paths.get(2)), new File(paths.get(3)), new File(paths.get(4)), new File(paths.get(5)), parallelism, readThreads, jarCache, rules);
+            return;
+        }
+        boolean leaks = paths.size() == 2 && paths.get(0).equals("leaks");
+        boolean incremental = paths.size() == 3 && paths.get(0).equals("incremental");
+        boolean history = paths.size() >= 3 && paths.get(0).equals("history");
+        boolean daemon = paths.size() == 1 && paths.get(0).equals("daemon");
+        boolean stopDaemon = paths.size() == 1 && paths.get(0).equals("stop") && daemonPort > 0;
+        if (paths.size() != 2 && !incremental && !history && !daemon && !stopDaemon || gateMode && (history || leaks || daemonPort > 0)
+                || shards > 1 && (compact || memoryBudget > 0 || metricsFile != null || verbose || history || incremental || leaks || daemon || stopDaemon || daemonPort > 0)) {
+            throw new IllegalArgumentException("USAGE: [options] [--gate] <dist-before> <dist-after>\n"
+                    + "       [options] snapshot <dist> <snapshot-file>\n"
+                    + "       [options] leaks <dist>\n"
+                    + "       [options] [--memory-budget <mb>] [--spill-dir <dir>] [--gate] <dist-before> <dist-after>\n"
+                    + "       [options] --shards <count> [--spill-dir <dir>] [--gate] <dist-before> <dist-after>\n"
+                    + "       [options] [--gate] incremental <state-dir> <dist>\n"
+                    + "       [options] [--index <file>] [--max-models <count>] history <dist>...\n"
+                    + "       [options] [--port <port>] [--idle-timeout <minutes>] daemon\n"
+                    + "       [options] --daemon <port> <dist-before> <dist-after>\n"
+                    + "       --daemon <port> stop\n"
+                    + "Options: --parallel | --threads <count>, --cache-dir <dir>, --cache-size <mb>,\n"
+                    + "         --format text|json, --output <file>, --quiet, --verbose, --metrics <file>, --compact,\n"
+                    + "         --rules <file>, --read-threads <count>\n"
+                    + "--shards can only be used to compare two distributions, without --compact, --memory-budget, --metrics\n"
+                    + "or --verbose.");
         }
 
-        Set<String> retainedClasses = new TreeSet<>(classesAfter.getVisibleApiClasses().keySet());
-        retainedClasses.retainAll(classesBefore.getVisibleApiClasses().keySet());
-        for (String name : retainedClasses) {
-            ClassDetails before = classesBefore.get(name);
-            ClassDetails after = classesAfter.get(name);
-            DiffCollector diffCollector = new DiffCollector(before, after, diffListener);
-            if (!before.getSuperClass().equals(after.getSuperClass())) {
-                diffCollector.changed();
-                diffListener.superClassChanged(before, after);
-            }
-            if (!before.getInterfaces().equals(after.getInterfaces())) {
-                diffCollector.changed();
-                for (ClassDetails interfaceDetails : before.getInterfaces()) {
-                    if (!after.getInterfaces().contains(interfaceDetails)) {
-                        diffListener.interfaceRemoved(before, after, interfaceDetails);
+        // Only write progress messages when the report is human readable and not written elsewhere
+        boolean progress = !quiet && format.equals("text") && outputFile == null;
+        Writer writer = new BufferedWriter(new OutputStreamWriter(outputFile == null ? System.out : new FileOutputStream(outputFile), StandardCharsets.UTF_8), 64 * 1024);
+        Writer metricsWriter = metricsFile == null ? null : new BufferedWriter(new OutputStreamWriter(new FileOutputStream(metricsFile), StandardCharsets.UTF_8));
+        int exitCode = 0;
+        try {
+            DiffListener reporter = format.equals("json") ? new JsonDiffReporter(writer) : new TextDiffReporter(writer);
+            MetricsListener metrics = metricsWriter == null ? null : new MetricsFileWriter(metricsWriter);
+            Cancellation cancellation = new Cancellation();
+            BreakingChangeGate gate = gateMode ? new BreakingChangeGate(cancellation) : null;
+            DiffListener listener = gate != null ? gate : reporter;
+            if (daemon) {
+                ForkJoinPool pool = parallelism > 1 ? new ForkJoinPool(parallelism) : null;
+                JarInspector jarInspector = new JarInspector(pool, jarCache);
+                jarInspector.setRules(rules);
+                DistributionInspector inspector = new DistributionInspector(jarInspector);
+                inspector.setCompact(compact);
+                ApiDaemon apiDaemon = new ApiDaemon(inspector, TimeUnit.MINUTES.toMillis(idleTimeout));
+                writer.write("Listening on port " + apiDaemon.start(port) + "\n");
+                writer.flush();
+                try {
+                    apiDaemon.awaitStop();
+                } catch (InterruptedException e) {
+                    throw new RuntimeException(e);
+                } finally {
+                    if (pool != null) {
+                        pool.shutdown();
                     }
                 }
-                for (ClassDetails interfaceDetails : after.getInterfaces()) {
-                    if (!before.getInterfaces().contains(interfaceDetails)) {
-                        diffListener.interfaceAdded(before, after, interfaceDetails);
-                    }
+            } else if (daemonPort > 0) {
+                String request = stopDaemon ? "stop"
+                        : "check\t" + format + "\t" + new File(paths.get(0)).getAbsolutePath() + "\t" + new File(paths.get(1)).getAbsolutePath();
+                String failure = ApiDaemon.request(daemonPort, request, writer);
+                if (failure != null) {
+                    System.err.println(failure);
+                    exitCode = 1;
                 }
-            }
-            if (!before.getVisibleMethods().equals(after.getVisibleMethods())) {
-                diffCollector.changed();
-                for (MethodDetails method : before.getVisibleMethods()) {
-                    if (!after.getVisibleMethods().contains(method)) {
-                        diffListener.methodRemoved(before, after, method);
-                    }
+            } else if (history) {
+                List<File> releases = paths.subList(1, paths.size()).stream().map(File::new).collect(Collectors.toList());
+                if (progress) {
+                    writer.write("Comparing " + releases.size() + " releases\n");
+                    writer.flush();
                 }
-                for (MethodDetails method : after.getVisibleMethods()) {
-                    if (!before.getVisibleMethods().contains(method)) {
-                        diffListener.methodAdded(before, after, method);
+                ApiHistory index = history(releases, parallelism, maxModels, jarCache, rules, compact, metrics, reporter);
+                if (indexFile != null) {
+                    try (Writer indexWriter = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(indexFile), StandardCharsets.UTF_8))) {
+                        index.write(indexWriter);
                     }
                 }
-            }
-            if (!before.getVisibleFields().equals(after.getVisibleFields())) {
-                diffCollector.changed();
-                for (FieldDetails field : before.getVisibleFields()) {
-                    if (!after.getVisibleFields().contains(field)) {
-                        diffListener.fieldRemoved(before, after, field);
-                    }
+            } else if (leaks) {
+                List<ApiReachability.LeakedType> leakedTypes = findLeakedTypes(new File(paths.get(1)), parallelism, jarCache, rules);
+                for (ApiReachability.LeakedType leakedType : leakedTypes) {
+                    writer.write(format.equals("json") ? toJson(leakedType) : toText(leakedType));
+                }
+                if (progress) {
+                    writer.write(leakedTypes.size() + " leaked types\n");
+                }
+            } else if (incremental) {
+                JarInspector jarInspector = new JarInspector(null, jarCache);
+                jarInspector.setMetricsListener(metrics);
+                jarInspector.setRules(rules);
+                IncrementalChecker checker = new IncrementalChecker(new File(paths.get(1)), jarInspector);
+                checker.setCancellation(cancellation);
+                boolean complete = checker.check(new File(paths.get(2)), listener);
+                if (!complete && progress) {
+                    writer.write("No previous model found in " + paths.get(1) + ". Recorded " + paths.get(2) + " for the next check.\n");
+                }
+            } else {
+                File before = new File(paths.get(0));
+                File after = new File(paths.get(1));
+                if (progress) {
+                    writer.write("Comparing " + before + " to " + after + "\n");
+                    writer.flush();
                 }
-                for (FieldDetails field : after.getVisibleFields()) {
-                    if (!before.getVisibleFields().contains(field)) {
-                        diffListener.fieldAdded(before, after, field);
+                if (shards > 1) {
+                    // The shards run at the same time, so share the threads between them
+                    int shardThreads = Math.max(1, parallelism / shards);
+                    int shardReadThreads = readThreads == 0 ? 0 : Math.max(1, readThreads / shards);
+                    List<String> workerArgs = new ArrayList<>();
+                    workerArgs.addAll(Arrays.asList("--threads", String.valueOf(shardThreads), "--read-threads", String.valueOf(shardReadThreads)));
+                    if (cacheDir != null) {
+                        workerArgs.addAll(Arrays.asList("--cache-dir", cacheDir.getAbsolutePath(), "--cache-size", String.valueOf(cacheSize / 1024 / 1024)));
                     }
+                    if (rulesFile != null) {
+                        workerArgs.addAll(Arrays.asList("--rules", rulesFile.getAbsolutePath()));
+                    }
+                    ShardedChecker checker = new ShardedChecker(before, after, listener, shards);
+                    checker.setWorkerArgs(workerArgs);
+                    checker.setWorkDir(spillDir);
+                    checker.setCancellation(cancellation);
+                    checker.run();
+                } else {
+                    ApiChecker checker = new ApiChecker(before, after, listener);
+                    checker.setParallelism(parallelism);
+                    checker.setJarCache(jarCache);
+                    checker.setVerbose(verbose);
+                    checker.setMetricsListener(metrics);
+                    checker.setCancellation(cancellation);
+                    checker.setCompact(compact);
+                    checker.setRules(rules);
+                    checker.setMemoryBudget(memoryBudget);
+                    checker.setSpillDir(spillDir);
+                    checker.setReadThreads(readThreads);
+                    checker.run();
                 }
             }
-            diffCollector.done();
-        }
-
-        System.out.println();
-    }
-
-    private void inspect(File distroDir, ClassSet classes) throws IOException {
-        if (!distroDir.isDirectory()) {
-            throw new IllegalArgumentException(String.format("Directory %s does not exist", distroDir));
-        }
 
-        System.out.println();
-        System.out.println("==== Inspecting " + distroDir + " ====");
-        System.out.println();
-        File libDir = new File(distroDir, "lib");
-        if (!libDir.isDirectory()) {
-            throw new IllegalArgumentException( String.format("Distribution %s does not contain a lib/ directory", distroDir));
-        }
-        inspectDir(classes, libDir);
-
-        File pluginsDir = new File(libDir, "plugins");
-        if (!pluginsDir.isDirectory()) {
-            throw new IllegalArgumentException( String.format("Distribution %s does not contain a lib/plugins/ directory", distroDir));
-        }
-        inspectDir(classes, pluginsDir);
-
-        classes.resolveSuperTypes();
-
-        classes.getVisibleApiClasses().values().forEach(details -> {
-            System.out.println(String.format("* class: %s", details));
-            System.out.println(String.format("  * superclass: %s", details.getSuperClass()));
-            for (ClassDetails superType : details.getInterfaces()) {
-                System.out.println(String.format("  * interface: %s", superType));
+            if (gate != null) {
+                if (gate.isBreaking()) {
+                    exitCode = 1;
+                    if (!quiet) {
+                        writer.write("Breaking change: " + gate.getBreakingChange() + "\n");
+                    }
+                } else if (!quiet) {
+                    writer.write("No breaking changes\n");
+                }
             }
-            for (MethodDetails method : details.getMethods()) {
-                System.out.println(String.format("  * method: %s", method));
+        } finally {
+            if (metricsWriter != null) {
+                metricsWriter.close();
             }
-            for (FieldDetails field : details.getFields()) {
-                System.out.println(String.format("  * field: %s", field));
+            if (outputFile == null) {
+                writer.flush();
+            } else {
+                writer.close();
             }
-        });
+        }
+        if (exitCode != 0) {
+            System.exit(exitCode);
+        }
     }
 
-    private void inspectDir(ClassSet classes, File libDir) throws IOException {
-        for (File file : libDir.listFiles()) {
-            if (file.isFile()) {
-                inspectJar(file, classes);
+    private static ApiHistory history(List<File> releases, int parallelism, int maxModels, JarCache jarCache, ApiRules rules, boolean compact, MetricsListener metrics, DiffListener listener) throws IOException {
+        ForkJoinPool pool = parallelism > 1 ? new ForkJoinPool(parallelism) : null;
+        try {
+            JarInspector jarInspector = new JarInspector(pool, jarCache);
+            jarInspector.setRules(rules);
+            DistributionInspector inspector = new DistributionInspector(jarInspector);
+            inspector.setMetricsListener(metrics);
+            inspector.setCompact(compact);
+            // By default, hold enough models to keep every thread busy loading or comparing
+            HistoryChecker checker = new HistoryChecker(inspector, pool, maxModels > 0 ? maxModels : Math.max(2, parallelism + 1));
+            return checker.check(releases, listener);
+        } finally {
+            if (pool != null) {
+                pool.shutdown();
             }
         }
     }
 
-    private void inspectJar(File file, ClassSet classes) throws IOException {
-        JarFile jarFile = new JarFile(file);
+    /**
+     * Compares the classes owned by one shard of a comparison started by {@link ShardedChecker}.
+     */
+    private static void runShard(int index, int count, File workDir, File before, File after, int parallelism, int readThreads, JarCache jarCache, ApiRules rules) throws IOException {
+        ForkJoinPool pool = parallelism > 1 ? new ForkJoinPool(parallelism) : null;
         try {
-            jarFile.stream().filter(entry -> !entry.isDirectory() && entry.getName().endsWith(".class")).forEach(entry -> {
-                try {
-                    InputStream inputStream = jarFile.getInputStream(entry);
-                    try {
-                        ClassReader reader = new ClassReader(inputStream);
-                        ClassDetails classDetails = classes.get(reader.getClassName());
-                        classDetails.setAccess(reader.getAccess());
-                        classDetails.setSuperClass(classes.get(reader.getSuperName()));
-                        for (String name : reader.getInterfaces()) {
-                            classDetails.addInterface(classes.get(name));
-                        }
-                        reader.accept(new ClassVisitor(Opcodes.ASM5) {
-                            @Override
-                            public void visit(int version, int access, String name, String signature, String superName,
-                                              String[] interfaces) {
-                            }
-
-                            @Override
-                            public MethodVisitor visitMethod(int access, String name, String desc, String signature,
-                                                             String[] exceptions) {
-                                classDetails.addDeclaredMethod(access, name, desc);
-                                return null;
-                            }
-
-                            @Override
-                            public FieldVisitor visitField(int access, String name, String desc, String signature,
-                                                           Object value) {
-                                classDetails.addDeclaredField(access, name, desc);
-                                return null;
-                            }
-                        }, ClassReader.SKIP_CODE | ClassReader.SKIP_DEBUG | ClassReader.SKIP_FRAMES);
-                    } finally {
-                        inputStream.close();
-                    }
-                } catch (IOException e) {
-                    throw new RuntimeException(e);
-                }
-            });
+            JarInspector jarInspector = new JarInspector(pool, jarCache);
+            jarInspector.setRules(rules);
+            jarInspector.setReadThreads(readThreads);
+            new DiffShard(index, count, workDir, jarInspector).run(before, after);
         } finally {
-            jarFile.close();
+            if (pool != null) {
+                pool.shutdown();
+            }
         }
     }
 
-    private static class DiffCollector {
-        final DiffListener listener;
-        final ClassDetails before;
-        final ClassDetails after;
-        boolean changed;
-
-        public DiffCollector(ClassDetails after, ClassDetails before, DiffListener listener) {
-            this.after = after;
-            this.before = before;
-            this.listener = listener;
+    /**
+     * Returns the classes of the given distribution that can be reached from its public API but are not part of it.
+     */
+    public static List<ApiReachability.LeakedType> findLeakedTypes(File distro, int parallelism, JarCache jarCache, ApiRules rules) throws IOException {
+        if (ApiSnapshot.isSnapshot(distro)) {
+            throw new IllegalArgumentException(String.format("Cannot find leaked types in snapshot %s, as it holds only the public API classes", distro));
         }
-
-        void changed() {
-            if (!changed) {
-                listener.classChanged(before, after);
-                changed = true;
+        ForkJoinPool pool = parallelism > 1 ? new ForkJoinPool(parallelism) : null;
+        try {
+            JarInspector jarInspector = new JarInspector(pool, jarCache);
+            jarInspector.setRules(rules);
+            // Internal classes that cannot be extended are reached through their members too
+            jarInspector.setAllMembers(true);
+            ClassSet classes = new DistributionInspector(jarInspector).inspectClasses(distro);
+            return new ApiReachability(pool).findLeakedTypes(classes);
+        } finally {
+            if (pool != null) {
+                pool.shutdown();
             }
         }
+    }
 
-        void done() {
-            if (!changed) {
-                listener.classUnchanged(after);
-            }
+    private static String toText(ApiReachability.LeakedType leakedType) {
+        StringBuilder text = new StringBuilder();
+        text.append("LEAKED: ").append(leakedType).append('\n');
+        for (String reference : leakedType.getPath()) {
+            text.append("  via ").append(reference).append('\n');
         }
+        return text.toString();
     }
 
-    private static class DiffReporter extends DiffListener {
-        @Override
-        public void classAdded(ClassDetails details) {
-            System.out.println("ADDED: " + details);
+    private static String toJson(ApiReachability.LeakedType leakedType) {
+        StringBuilder json = new StringBuilder();
+        json.append("{\"event\":\"typeLeaked\",\"class\":");
+        JsonDiffReporter.appendString(json, leakedType.getType().toString());
+        json.append(",\"internal\":").append(leakedType.isInternal()).append(",\"path\":[");
+        List<String> path = leakedType.getPath();
+        for (int i = 0; i < path.size(); i++) {
+            if (i > 0) {
+                json.append(',');
+            }
+            JsonDiffReporter.appendString(json, path.get(i));
         }
+        return json.append("]}\n").toString();
+    }
 
-        @Override
-        public void classRemoved(ClassDetails details) {
-            System.out.println("REMOVED: " + details);
-        }
+    /**
+     * Writes an {@link ApiSnapshot} of the given distribution. The snapshot can be used in place of the distribution.
+     */
+    public static void writeSnapshot(File distroDir, File snapshotFile, JarCache jarCache) throws IOException {
+        writeSnapshot(distroDir, snapshotFile, jarCache, ApiRules.defaults());
+    }
 
-        @Override
-        public void classChanged(ClassDetails before, ClassDetails after) {
-            System.out.println();
-            System.out.println("CHANGED: " + after);
-        }
+    /**
+     * Writes an {@link ApiSnapshot} of the public API of the given distribution, as decided by the given rules.
+     */
+    public static void writeSnapshot(File distroDir, File snapshotFile, JarCache jarCache, ApiRules rules) throws IOException {
+        JarInspector jarInspector = new JarInspector(null, jarCache);
+        jarInspector.setRules(rules);
+        ClassSet classes = new DistributionInspector(jarInspector).inspectClasses(distroDir);
+        ApiSnapshot.write(classes, snapshotFile);
+    }
 
-        @Override
-        public void superClassChanged(ClassDetails before, ClassDetails after) {
-            System.out.println("  * super class changed: was: " + before.getSuperClass() + ", now: " + after.getSuperClass());
+    /**
+     * Sets the number of threads to use to inspect the distributions. The default is 1, which does everything on the
+     * calling thread. When greater than 1, both distributions are inspected at the same time, and their jars are parsed
+     * in parallel. The result is the same regardless of the parallelism.
+     */
+    public void setParallelism(int parallelism) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("Parallelism must be at least 1");
         }
+        this.parallelism = parallelism;
+    }
 
-        @Override
-        public void interfaceAdded(ClassDetails before, ClassDetails after, ClassDetails addedInterface) {
-            System.out.println("  * interface added: " + addedInterface);
-        }
+    /**
+     * Sets the cache to use for the contents of jars. The default is to not use a cache.
+     */
+    public void setJarCache(JarCache jarCache) {
+        this.jarCache = jarCache;
+    }
+
+    /**
+     * When true, writes the public API of each distribution to stdout. The default is false.
+     */
+    public void setVerbose(boolean verbose) {
+        this.verbose = verbose;
+    }
+
+    /**
+     * Sets the listener to receive the cost of inspecting each jar and of each phase, or null to not measure.
+     */
+    public void setMetricsListener(MetricsListener metricsListener) {
+        this.metricsListener = metricsListener;
+    }
+
+    /**
+     * Sets the cancellation used to stop the check early, or null to always complete the check. When cancelled during
+     * inspection, {@link #run()} throws {@link CancelledException}. When cancelled during the comparison, the
+     * comparison stops at the next class and {@link #run()} returns normally.
+     */
+    public void setCancellation(Cancellation cancellation) {
+        this.cancellation = cancellation;
+    }
+
+    /**
+     * When true, holds each distribution as a {@link CompactClassSet}. The default is false.
+     */
+    public void setCompact(boolean compact) {
+        this.compact = compact;
+    }
+
+    /**
+     * Sets the rules that decide which classes and members are part of the public API. The default is
+     * {@link ApiRules#defaults()}.
+     */
+    public void setRules(ApiRules rules) {
+        this.rules = rules;
+    }
+
+    /**
+     * Sets the amount of heap, in bytes, to use for the models of the distributions, or 0 to hold both models in
+     * memory. The default is 0. When set, the classes of each distribution are written to a {@link ClassStore} and
+     * the distributions are compared by reading the stores in class name order.
+     */
+    public void setMemoryBudget(long memoryBudget) {
+        this.memoryBudget = memoryBudget;
+    }
+
+    /**
+     * Sets the directory to write class stores to when a memory budget is set, or null to use a temporary directory.
+     */
+    public void setSpillDir(File spillDir) {
+        this.spillDir = spillDir;
+    }
 
-        @Override
-        public void interfaceRemoved(ClassDetails before, ClassDetails after, ClassDetails removedInterface) {
-            System.out.println("  * interface removed: " + removedInterface);
+    /**
+     * Sets the number of threads to read jars and class files on, or 0 to read them on the threads that parse them. The
+     * default is 0. See {@link JarInspector#setReadThreads(int)}.
+     */
+    public void setReadThreads(int readThreads) {
+        this.readThreads = readThreads;
+    }
+
+    public void run() throws IOException {
+        ForkJoinPool pool = parallelism > 1 ? new ForkJoinPool(parallelism) : null;
+        // Also used to stop inspecting one distribution when inspecting the other fails
+        Cancellation cancellation = this.cancellation != null ? this.cancellation : new Cancellation();
+        try {
+            JarInspector jarInspector = new JarInspector(pool, jarCache);
+            jarInspector.setRules(rules);
+            jarInspector.setReadThreads(readThreads);
+            DistributionInspector inspector = new DistributionInspector(jarInspector);
+            inspector.setMetricsListener(metricsListener);
+            inspector.setCancellation(cancellation);
+            inspector.setCompact(compact);
+            if (memoryBudget > 0) {
+                runWithStores(inspector, pool, cancellation);
+                return;
+            }
+            ApiModel classesBefore;
+            ApiModel classesAfter;
+            if (pool == null) {
+                classesBefore = inspector.inspect(before);
+                classesAfter = inspector.inspect(after);
+            } else {
+                // The distributions share no state, so inspect both at the same time
+                CompletableFuture<ApiModel> beforeResult = inspectAsync(before, inspector, pool, cancellation);
+                CompletableFuture<ApiModel> afterResult = inspectAsync(after, inspector, pool, cancellation);
+                try {
+                    classesBefore = await(beforeResult);
+                } catch (CancelledException e) {
+                    // Report the failure that caused the cancellation, if any
+                    await(afterResult);
+                    throw e;
+                }
+                classesAfter = await(afterResult);
+            }
+
+            if (verbose) {
+                report(before, classesBefore.getApiClasses());
+                report(after, classesAfter.getApiClasses());
+                reportDiffStarted();
+            }
+
+            diff(classesBefore, classesAfter, cancellation);
+        } finally {
+            if (pool != null) {
+                pool.shutdown();
+            }
         }
+    }
 
-        @Override
-        public void methodAdded(ClassDetails before, ClassDetails after, MethodDetails addedMethod) {
-            System.out.println("  * method added: " + addedMethod);
+    /**
+     * Compares the distributions using a {@link ClassStore} for each. The distributions are inspected one after the
+     * other, so that only one is being loaded at a time.
+     */
+    private void runWithStores(DistributionInspector inspector, ForkJoinPool pool, Cancellation cancellation) throws IOException {
+        File dir = spillDir != null ? spillDir : Files.createTempDirectory("api-check").toFile();
+        dir.mkdirs();
+        try (ClassStore classesBefore = inspectToStore(before, dir, inspector, pool);
+             ClassStore classesAfter = inspectToStore(after, dir, inspector, pool)) {
+            if (verbose) {
+                report(before, classesBefore.getApiClasses());
+                report(after, classesAfter.getApiClasses());
+                reportDiffStarted();
+            }
+            new ApiDiff(diffListener, cancellation).diff(classesBefore.getApiClasses(), classesAfter.getApiClasses());
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        } finally {
+            if (spillDir == null) {
+                dir.delete();
+            }
         }
+    }
 
-        @Override
-        public void methodRemoved(ClassDetails before, ClassDetails after, MethodDetails removedMethod) {
-            System.out.println("  * method removed: " + removedMethod);
+    private ClassStore inspectToStore(File distro, File dir, DistributionInspector inspector, ForkJoinPool pool) throws IOException {
+        if (pool == null) {
+            return inspector.inspectToStore(distro, dir, memoryBudget);
         }
+        // Inspect on the pool, so that the entries of large jars are parsed in parallel
+        return await(CompletableFuture.supplyAsync(() -> {
+            try {
+                return inspector.inspectToStore(distro, dir, memoryBudget);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }, pool));
+    }
 
-        @Override
-        public void fieldAdded(ClassDetails before, ClassDetails after, FieldDetails addedField) {
-            System.out.println("  * field added: " + addedField);
+    private CompletableFuture<ApiModel> inspectAsync(File distro, DistributionInspector inspector, ForkJoinPool pool, Cancellation cancellation) {
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                return inspector.inspect(distro);
+            } catch (IOException e) {
+                cancellation.cancel();
+                throw new UncheckedIOException(e);
+            } catch (RuntimeException | Error e) {
+                cancellation.cancel();
+                throw e;
+            }
+        }, pool);
+    }
+
+    static <T> T await(CompletableFuture<T> future) throws IOException {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof UncheckedIOException) {
+                throw ((UncheckedIOException) cause).getCause();
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw e;
         }
+    }
 
-        @Override
-        public void fieldRemoved(ClassDetails before, ClassDetails after, FieldDetails removedField) {
-            System.out.println("  * field removed: " + removedField);
+    private void diff(ApiModel classesBefore, ApiModel classesAfter, Cancellation cancellation) {
+        if (metricsListener == null) {
+            new ApiDiff(diffListener, cancellation).diff(classesBefore, classesAfter);
+            return;
         }
+        Metrics.Timer timer = Metrics.startAll();
+        new ApiDiff(diffListener, cancellation).diff(classesBefore, classesAfter);
+        Collection<ApiClass> before = classesBefore.getApiClasses();
+        Collection<ApiClass> after = classesAfter.getApiClasses();
+        long members = DistributionInspector.countMembers(before) + DistributionInspector.countMembers(after);
+        metricsListener.phaseCompleted(timer.stop("diff", null, before.size() + after.size(), members, 0));
+    }
+
+    private void report(File distroDir, Iterable<? extends ApiClass> classes) {
+        System.out.println();
+        System.out.println("==== Inspecting " + distroDir + " ====");
+        System.out.println();
+        classes.forEach(details -> {
+            System.out.println(String.format("* class: %s", details));
+            System.out.println(String.format("  * superclass: %s", ApiClass.displayName(details.getSuperName())));
+            for (String superType : details.getInterfaceNames()) {
+                System.out.println(String.format("  * interface: %s", ApiClass.displayName(superType)));
+            }
+            // Compact classes hold only their visible members
+            Set<MethodDetails> methods = details instanceof ClassDetails ? ((ClassDetails) details).getMethods() : details.getVisibleMethods();
+            for (MethodDetails method : methods) {
+                System.out.println(String.format("  * method: %s", method));
+            }
+            Set<FieldDetails> fields = details instanceof ClassDetails ? ((ClassDetails) details).getFields() : details.getVisibleFields();
+            for (FieldDetails field : fields) {
+                System.out.println(String.format("  * field: %s", field));
+            }
+        });
+    }
+
+    private static void reportDiffStarted() {
+        System.out.println();
+        System.out.println("==== DIFF ====");
+        System.out.println();
+        System.out.flush();
     }
 }
@@ -0,0 +1,46 @@
+package net.rubygrapefruit;
+
+import java.util.Collection;
+import java.util.Set;
+
+/**
+ * A class of the public API, whose inherited members have been resolved. Read only.
+ */
+public interface ApiClass {
+    String getName();
+
+    int getAccess();
+
+    /**
+     * Returns a 64 bit hash of the API of this class. See {@link ClassDetails#getFingerprint()}.
+     */
+    long getFingerprint();
+
+    /**
+     * Returns the name of the super class of this class, or null when it has none.
+     */
+    String getSuperName();
+
+    /**
+     * Returns the names of the interfaces of this class, sorted by name.
+     */
+    Collection<String> getInterfaceNames();
+
+    /**
+     * Returns the methods of this class that are visible outside its package, including inherited methods, sorted by
+     * signature.
+     */
+    Set<MethodDetails> getVisibleMethods();
+
+    /**
+     * Returns the fields of this class that are visible outside its package, sorted by signature.
+     */
+    Set<FieldDetails> getVisibleFields();
+
+    /**
+     * Returns the given class name in the form used in reports, or null when null.
+     */
+    static String displayName(String name) {
+        return name == null ? null : name.replace('/', '.');
+    }
+}
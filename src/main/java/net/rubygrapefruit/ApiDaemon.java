@@ -0,0 +1,383 @@
+package net.rubygrapefruit;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.lang.ref.SoftReference;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * A long running process that keeps the models of baseline distributions in memory between checks. Clients connect
+ * over a loopback TCP socket, send a single request and receive the report as the response.
+ *
+ * <p>Each request starts with a line holding the daemon's token, which the daemon generates on start up and writes to a
+ * file that only the current user can read, so that other users of the machine cannot use the daemon. The token is
+ * followed by a request line. A check request is {@code check<TAB>text|json<TAB><before><TAB><after>}. The response
+ * starts with a status line, either {@code OK} or {@code ERROR <message>}. The status is sent once both distributions
+ * have been inspected. It is followed by the lines of the report as they are produced, each prefixed with a space so
+ * that the report is not held in memory, then by a trailer line, either {@code END} or {@code ERROR <message>} when the
+ * comparison fails part way through. A {@code stop} request stops the daemon, and its response has no report lines.</p>
+ *
+ * <p>The model of each {@code before} distribution is kept and reused for later checks until the distribution
+ * changes on disk, it has not been used for the idle timeout, or the JVM runs short of memory. The {@code after}
+ * distribution is inspected for every check.</p>
+ */
+public class ApiDaemon {
+    private final DistributionInspector inspector;
+    private final long idleTimeoutMillis;
+    private final Map<File, Baseline> baselines = new ConcurrentHashMap<>();
+    private final ExecutorService connections = Executors.newCachedThreadPool(runnable -> daemonThread(runnable, "api-daemon-connection"));
+    private final ScheduledExecutorService evictions = Executors.newSingleThreadScheduledExecutor(runnable -> daemonThread(runnable, "api-daemon-eviction"));
+    private final CountDownLatch stopped = new CountDownLatch(1);
+    private ServerSocket serverSocket;
+    private String token;
+    private File tokenFile;
+
+    public ApiDaemon(DistributionInspector inspector, long idleTimeoutMillis) {
+        this.inspector = inspector;
+        this.idleTimeoutMillis = idleTimeoutMillis;
+    }
+
+    /**
+     * Starts accepting connections on the given loopback port, or on a free port when 0, and writes the token for the
+     * port to {@link #tokenFile(int)}.
+     *
+     * @return The port that the daemon is listening on.
+     */
+    public int start(int port) throws IOException {
+        serverSocket = new ServerSocket(port, 50, InetAddress.getLoopbackAddress());
+        byte[] bytes = new byte[32];
+        new SecureRandom().nextBytes(bytes);
+        StringBuilder token = new StringBuilder();
+        for (byte b : bytes) {
+            token.append(Character.forDigit((b >> 4) & 0xf, 16));
+            token.append(Character.forDigit(b & 0xf, 16));
+        }
+        this.token = token.toString();
+        tokenFile = tokenFile(serverSocket.getLocalPort());
+        writeToken(tokenFile, this.token);
+        long interval = Math.max(1000, idleTimeoutMillis / 4);
+        evictions.scheduleWithFixedDelay(this::evictIdle, interval, interval, TimeUnit.MILLISECONDS);
+        Thread acceptor = daemonThread(this::accept, "api-daemon-acceptor");
+        acceptor.start();
+        return serverSocket.getLocalPort();
+    }
+
+    /**
+     * Stops accepting connections and discards all models. Checks in progress are allowed to complete.
+     */
+    public void stop() {
+        try {
+            serverSocket.close();
+        } catch (IOException e) {
+            // Ignore
+        }
+        evictions.shutdown();
+        connections.shutdown();
+        baselines.clear();
+        if (tokenFile != null) {
+            tokenFile.delete();
+        }
+        stopped.countDown();
+    }
+
+    /**
+     * Returns the file that holds the token of the daemon listening on the given port.
+     */
+    public static File tokenFile(int port) {
+        return new File(System.getProperty("user.home"), ".api-check/daemon-" + port + ".token");
+    }
+
+    /**
+     * Writes the given token to a file that only the current user can read or write, where the file system supports
+     * this.
+     */
+    private static void writeToken(File file, String token) throws IOException {
+        Path path = file.toPath();
+        boolean posix = FileSystems.getDefault().supportedFileAttributeViews().contains("posix");
+        if (!file.getParentFile().isDirectory()) {
+            if (posix) {
+                Files.createDirectories(path.getParent(), PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rwx------")));
+            } else {
+                Files.createDirectories(path.getParent());
+            }
+        }
+        // Left behind by a daemon that did not stop cleanly
+        Files.deleteIfExists(path);
+        if (posix) {
+            Files.createFile(path, PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rw-------")));
+        } else {
+            Files.createFile(path);
+        }
+        Files.write(path, token.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Blocks until the daemon has been stopped.
+     */
+    public void awaitStop() throws InterruptedException {
+        stopped.await();
+    }
+
+    /**
+     * Sends a request to the daemon listening on the given port, and copies the report to the given writer. The token
+     * of the daemon is read from {@link #tokenFile(int)}.
+     *
+     * @return null on success, or the error message reported by the daemon.
+     */
+    public static String request(int port, String request, Writer output) throws IOException {
+        File tokenFile = tokenFile(port);
+        if (!tokenFile.isFile()) {
+            return String.format("No daemon token found in %s. Is the daemon running on port %s?", tokenFile, port);
+        }
+        String token = new String(Files.readAllBytes(tokenFile.toPath()), StandardCharsets.UTF_8);
+        try (Socket socket = new Socket(InetAddress.getLoopbackAddress(), port)) {
+            Writer writer = new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8);
+            writer.write(token);
+            writer.write('\n');
+            writer.write(request);
+            writer.write('\n');
+            writer.flush();
+            BufferedReader reader = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+            String status = reader.readLine();
+            if (status == null) {
+                return "The daemon closed the connection.";
+            }
+            if (!status.equals("OK")) {
+                return error(status);
+            }
+            while (true) {
+                String line = reader.readLine();
+                if (line == null) {
+                    return "The daemon closed the connection before the report was complete.";
+                }
+                if (line.startsWith(" ")) {
+                    output.write(line, 1, line.length() - 1);
+                    output.write('\n');
+                } else if (line.equals("END")) {
+                    return null;
+                } else {
+                    return error(line);
+                }
+            }
+        }
+    }
+
+    private static String error(String line) {
+        return line.startsWith("ERROR ") ? line.substring(6) : line;
+    }
+
+    private static String errorLine(Exception e) {
+        return "ERROR " + String.valueOf(e.getMessage()).replace('\n', ' ') + "\n";
+    }
+
+    private void accept() {
+        while (!serverSocket.isClosed()) {
+            Socket socket;
+            try {
+                socket = serverSocket.accept();
+            } catch (SocketException e) {
+                // Closed
+                return;
+            } catch (IOException e) {
+                // The connection failed before it was accepted, so there is no client to report to
+                continue;
+            }
+            connections.execute(() -> handle(socket));
+        }
+    }
+
+    private void handle(Socket connection) {
+        try (Socket socket = connection) {
+            BufferedReader reader = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+            Writer writer = new BufferedWriter(new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8), 64 * 1024);
+            String requestToken = reader.readLine();
+            if (requestToken == null || !MessageDigest.isEqual(requestToken.getBytes(StandardCharsets.UTF_8), token.getBytes(StandardCharsets.UTF_8))) {
+                writer.write("ERROR Missing or incorrect daemon token\n");
+                writer.flush();
+                return;
+            }
+            String request = reader.readLine();
+            String[] fields = request == null ? new String[0] : request.split("\t");
+            if (fields.length == 1 && fields[0].equals("stop")) {
+                writer.write("OK\nEND\n");
+                writer.flush();
+                stop();
+                return;
+            }
+            if (fields.length != 4 || !fields[0].equals("check") || !(fields[1].equals("text") || fields[1].equals("json"))) {
+                writer.write("ERROR Unknown request: " + request + "\n");
+                writer.flush();
+                return;
+            }
+
+            ApiModel classesBefore;
+            ApiModel classesAfter;
+            try {
+                classesBefore = baseline(new File(fields[2]));
+                classesAfter = inspector.inspect(new File(fields[3]));
+            } catch (IOException | RuntimeException e) {
+                writer.write(errorLine(e));
+                writer.flush();
+                return;
+            }
+            writer.write("OK\n");
+            ReportWriter report = new ReportWriter(writer);
+            try {
+                DiffListener reporter = fields[1].equals("json") ? new JsonDiffReporter(report) : new TextDiffReporter(report);
+                new ApiDiff(reporter).diff(classesBefore, classesAfter);
+            } catch (UncheckedIOException e) {
+                // The client has gone away
+                return;
+            } catch (RuntimeException e) {
+                report.endLine();
+                writer.write(errorLine(e));
+                writer.flush();
+                return;
+            }
+            report.endLine();
+            writer.write("END\n");
+            writer.flush();
+        } catch (IOException e) {
+            // The client has gone away
+        }
+    }
+
+    private ApiModel baseline(File distro) throws IOException {
+        File key = distro.getCanonicalFile();
+        String fingerprint = fingerprint(key);
+        return baselines.computeIfAbsent(key, Baseline::new).get(fingerprint);
+    }
+
+    /**
+     * Calculates a cheap fingerprint of the given distribution or snapshot, from the size and modification time of
+     * its files. The content of the files is not read.
+     */
+    private static String fingerprint(File distro) throws IOException {
+        if (!distro.isDirectory()) {
+            return distro.length() + ":" + distro.lastModified();
+        }
+        File libDir = new File(distro, "lib");
+        if (!libDir.isDirectory()) {
+            return "";
+        }
+        StringBuilder fingerprint = new StringBuilder();
+        try (Stream<Path> paths = Files.walk(libDir.toPath())) {
+            paths.filter(Files::isRegularFile).sorted().forEach(path -> {
+                File file = path.toFile();
+                fingerprint.append(path).append(':').append(file.length()).append(':').append(file.lastModified()).append('\n');
+            });
+        }
+        return fingerprint.toString();
+    }
+
+    private void evictIdle() {
+        long cutoff = System.currentTimeMillis() - idleTimeoutMillis;
+        baselines.values().removeIf(baseline -> baseline.lastUsed < cutoff);
+    }
+
+    private static Thread daemonThread(Runnable runnable, String name) {
+        Thread thread = new Thread(runnable, name);
+        thread.setDaemon(true);
+        return thread;
+    }
+
+    /**
+     * The model of a baseline distribution. Held using a soft reference, so that it can be discarded when memory runs
+     * short.
+     */
+    /**
+     * Writes the lines of a report to a connection, each prefixed with a space.
+     */
+    private static class ReportWriter extends Writer {
+        private final Writer writer;
+        private boolean atLineStart = true;
+
+        ReportWriter(Writer writer) {
+            this.writer = writer;
+        }
+
+        @Override
+        public void write(char[] chars, int off, int len) throws IOException {
+            int end = off + len;
+            int start = off;
+            for (int i = off; i < end; i++) {
+                if (atLineStart) {
+                    writer.write(' ');
+                    atLineStart = false;
+                }
+                if (chars[i] == '\n') {
+                    writer.write(chars, start, i + 1 - start);
+                    start = i + 1;
+                    atLineStart = true;
+                }
+            }
+            writer.write(chars, start, end - start);
+        }
+
+        /**
+         * Ends the current line, if it has not been ended, so that the trailer starts on a line of its own.
+         */
+        void endLine() throws IOException {
+            if (!atLineStart) {
+                writer.write('\n');
+                atLineStart = true;
+            }
+        }
+
+        @Override
+        public void flush() throws IOException {
+            writer.flush();
+        }
+
+        @Override
+        public void close() throws IOException {
+            endLine();
+        }
+    }
+
+    private class Baseline {
+        private final File distro;
+        private String fingerprint;
+        private SoftReference<ApiModel> classes;
+        private volatile long lastUsed = System.currentTimeMillis();
+
+        Baseline(File distro) {
+            this.distro = distro;
+        }
+
+        synchronized ApiModel get(String fingerprint) throws IOException {
+            lastUsed = System.currentTimeMillis();
+            ApiModel result = classes == null ? null : classes.get();
+            if (result == null || !fingerprint.equals(this.fingerprint)) {
+                result = inspector.inspect(distro);
+                classes = new SoftReference<>(result);
+                this.fingerprint = fingerprint;
+            }
+            return result;
+        }
+    }
+}
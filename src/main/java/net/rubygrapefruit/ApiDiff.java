@@ -0,0 +1,363 @@
+package net.rubygrapefruit;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * Compares two sets of public API classes and reports the differences to a {@link DiffListener}.
+ *
+ * <p>Classes and members are compared using a merge pass over both sorted sequences, and events are sent to the
+ * listener as they are found. Only the removed and added classes, and the removed and added methods of the current
+ * class, are collected. Not thread safe.</p>
+ *
+ * <p>A removed class and an added class are reported as a move when they have the same simple name and the same member
+ * names and parameter counts, and no other removed or added class has the same. A removed method and an added method
+ * of a class are reported as a signature change when they have the same name and parameter count, and no other removed
+ * or added method of the class has the same. Candidates are paired using hash lookups rather than by comparing every
+ * removed item with every added item.</p>
+ */
+public class ApiDiff {
+    private static final ClassDetails AMBIGUOUS_CLASS = new ClassDetails("");
+    private static final MethodDetails AMBIGUOUS_METHOD = new MethodDetails(0, "", "()V");
+
+    private final DiffListener listener;
+    private final Cancellation cancellation;
+    private final MemberMerge<String> interfaces = new MemberMerge<String>() {
+        @Override
+        void removed(String member) {
+            listener.interfaceRemoved(before, after, new ClassDetails(member));
+        }
+
+        @Override
+        void added(String member) {
+            listener.interfaceAdded(before, after, new ClassDetails(member));
+        }
+    };
+    private final MemberMerge<MethodDetails> methods = new MemberMerge<MethodDetails>() {
+        private final List<MethodDetails> removed = new ArrayList<>();
+        private final List<MethodDetails> added = new ArrayList<>();
+
+        @Override
+        void removed(MethodDetails member) {
+            removed.add(member);
+        }
+
+        @Override
+        void added(MethodDetails member) {
+            added.add(member);
+        }
+
+        @Override
+        void finished() {
+            reportMethods(removed, added);
+            removed.clear();
+            added.clear();
+        }
+    };
+    private final MemberMerge<FieldDetails> fields = new MemberMerge<FieldDetails>() {
+        @Override
+        void removed(FieldDetails member) {
+            listener.fieldRemoved(before, after, member);
+        }
+
+        @Override
+        void added(FieldDetails member) {
+            listener.fieldAdded(before, after, member);
+        }
+    };
+    private ApiClass before;
+    private ApiClass after;
+    private boolean changed;
+    private boolean detectMoves = true;
+
+    public ApiDiff(DiffListener listener) {
+        this(listener, null);
+    }
+
+    /**
+     * @param cancellation Stops the comparison at the next class once cancelled, or null to always compare every class.
+     */
+    public ApiDiff(DiffListener listener, Cancellation cancellation) {
+        this.listener = listener;
+        this.cancellation = cancellation;
+    }
+
+    /**
+     * When false, every removed and added class is reported as removed or added, rather than as a move. Used when only
+     * part of the classes are being compared, so that moves can be found once all of the removed and added classes are
+     * known. The default is true.
+     */
+    public void setDetectMoves(boolean detectMoves) {
+        this.detectMoves = detectMoves;
+    }
+
+    public void diff(ApiModel classesBefore, ApiModel classesAfter) {
+        diff(classesBefore.getApiClasses(), classesAfter.getApiClasses());
+    }
+
+    /**
+     * Compares the given classes. Both sequences must be sorted by name. Each sequence is iterated twice, first to find
+     * the classes that have moved and then to compare the classes, unless moves are not being detected.
+     */
+    public void diff(Iterable<? extends ApiClass> classesBefore, Iterable<? extends ApiClass> classesAfter) {
+        Map<String, ApiClass> moves = detectMoves ? findMoves(classesBefore, classesAfter) : Collections.emptyMap();
+        Set<String> moveTargets = new HashSet<>();
+        for (ApiClass target : moves.values()) {
+            moveTargets.add(target.getName());
+        }
+
+        Iterator<? extends ApiClass> beforeIterator = classesBefore.iterator();
+        Iterator<? extends ApiClass> afterIterator = classesAfter.iterator();
+        ApiClass before = next(beforeIterator);
+        ApiClass after = next(afterIterator);
+        while (before != null || after != null) {
+            if (cancellation != null && cancellation.isCancelled()) {
+                return;
+            }
+            int comparison = before == null ? 1 : after == null ? -1 : before.getName().compareTo(after.getName());
+            if (comparison < 0) {
+                ApiClass target = moves.get(before.getName());
+                if (target == null) {
+                    listener.classRemoved(before);
+                } else {
+                    moved(before, target);
+                }
+                before = next(beforeIterator);
+            } else if (comparison > 0) {
+                if (!moveTargets.contains(after.getName())) {
+                    listener.classAdded(after);
+                }
+                after = next(afterIterator);
+            } else {
+                diff(before, after);
+                before = next(beforeIterator);
+                after = next(afterIterator);
+            }
+        }
+    }
+
+    /**
+     * Returns the class that each moved class has moved to, indexed by the name of the moved class.
+     */
+    private Map<String, ApiClass> findMoves(Iterable<? extends ApiClass> classesBefore, Iterable<? extends ApiClass> classesAfter) {
+        List<ApiClass> removed = new ArrayList<>();
+        List<ApiClass> added = new ArrayList<>();
+        Iterator<? extends ApiClass> beforeIterator = classesBefore.iterator();
+        Iterator<? extends ApiClass> afterIterator = classesAfter.iterator();
+        ApiClass before = next(beforeIterator);
+        ApiClass after = next(afterIterator);
+        while (before != null || after != null) {
+            if (cancellation != null && cancellation.isCancelled()) {
+                return Collections.emptyMap();
+            }
+            int comparison = before == null ? 1 : after == null ? -1 : before.getName().compareTo(after.getName());
+            if (comparison < 0) {
+                removed.add(before);
+                before = next(beforeIterator);
+            } else if (comparison > 0) {
+                added.add(after);
+                after = next(afterIterator);
+            } else {
+                before = next(beforeIterator);
+                after = next(afterIterator);
+            }
+        }
+        if (removed.isEmpty() || added.isEmpty()) {
+            return Collections.emptyMap();
+        }
+
+        Map<MoveKey, ApiClass> sources = new HashMap<>();
+        for (ApiClass details : removed) {
+            sources.merge(new MoveKey(details), details, (a, b) -> AMBIGUOUS_CLASS);
+        }
+        Map<MoveKey, ApiClass> targets = new HashMap<>();
+        for (ApiClass details : added) {
+            MoveKey key = new MoveKey(details);
+            if (sources.containsKey(key)) {
+                targets.merge(key, details, (a, b) -> AMBIGUOUS_CLASS);
+            }
+        }
+        Map<String, ApiClass> moves = new HashMap<>();
+        for (Map.Entry<MoveKey, ApiClass> entry : targets.entrySet()) {
+            ApiClass source = sources.get(entry.getKey());
+            if (source != AMBIGUOUS_CLASS && entry.getValue() != AMBIGUOUS_CLASS) {
+                moves.put(source.getName(), entry.getValue());
+            }
+        }
+        return moves;
+    }
+
+    private void moved(ApiClass before, ApiClass after) {
+        listener.classMoved(before, after);
+        if (before.getFingerprint() != after.getFingerprint()) {
+            diff(before, after);
+        }
+    }
+
+    private void diff(ApiClass before, ApiClass after) {
+        if (before.getFingerprint() == after.getFingerprint()) {
+            // Same API, so there is no need to compare the members
+            listener.classUnchanged(after);
+            return;
+        }
+        this.before = before;
+        this.after = after;
+        changed = false;
+        if (!Objects.equals(before.getSuperName(), after.getSuperName())) {
+            changed();
+            listener.superClassChanged(before, after);
+        }
+        interfaces.merge(before.getInterfaceNames(), after.getInterfaceNames());
+        methods.merge(before.getVisibleMethods(), after.getVisibleMethods());
+        fields.merge(before.getVisibleFields(), after.getVisibleFields());
+        if (!changed) {
+            listener.classUnchanged(after);
+        }
+    }
+
+    /**
+     * Reports the given removed and added methods of the current class in signature order. A removed method and an
+     * added method with the same name and parameter count are reported as a signature change.
+     */
+    private void reportMethods(List<MethodDetails> removed, List<MethodDetails> added) {
+        Map<MethodDetails, MethodDetails> changes = Collections.emptyMap();
+        Set<MethodDetails> changeTargets = Collections.emptySet();
+        if (!removed.isEmpty() && !added.isEmpty()) {
+            Map<String, MethodDetails> sources = new HashMap<>();
+            for (MethodDetails method : removed) {
+                sources.merge(overloadKey(method), method, (a, b) -> AMBIGUOUS_METHOD);
+            }
+            Map<String, MethodDetails> targets = new HashMap<>();
+            for (MethodDetails method : added) {
+                String key = overloadKey(method);
+                if (sources.containsKey(key)) {
+                    targets.merge(key, method, (a, b) -> AMBIGUOUS_METHOD);
+                }
+            }
+            changes = new HashMap<>();
+            changeTargets = new HashSet<>();
+            for (Map.Entry<String, MethodDetails> entry : targets.entrySet()) {
+                MethodDetails source = sources.get(entry.getKey());
+                if (source != AMBIGUOUS_METHOD && entry.getValue() != AMBIGUOUS_METHOD) {
+                    changes.put(source, entry.getValue());
+                    changeTargets.add(entry.getValue());
+                }
+            }
+        }
+
+        // Both lists are sorted and have no signatures in common
+        int removedIndex = 0;
+        int addedIndex = 0;
+        while (removedIndex < removed.size() || addedIndex < added.size()) {
+            if (addedIndex == added.size() || removedIndex < removed.size() && removed.get(removedIndex).compareTo(added.get(addedIndex)) < 0) {
+                MethodDetails method = removed.get(removedIndex++);
+                MethodDetails newMethod = changes.get(method);
+                if (newMethod == null) {
+                    listener.methodRemoved(before, after, method);
+                } else {
+                    listener.methodSignatureChanged(before, after, method, newMethod);
+                }
+            } else {
+                MethodDetails method = added.get(addedIndex++);
+                if (!changeTargets.contains(method)) {
+                    listener.methodAdded(before, after, method);
+                }
+            }
+        }
+    }
+
+    private static String overloadKey(MethodDetails method) {
+        return method.getName() + '/' + method.getParameterCount();
+    }
+
+    private void changed() {
+        if (!changed) {
+            listener.classChanged(before, after);
+            changed = true;
+        }
+    }
+
+    private static <T> T next(Iterator<T> iterator) {
+        return iterator.hasNext() ? iterator.next() : null;
+    }
+
+    private abstract class MemberMerge<T extends Comparable<? super T>> {
+        void merge(Collection<T> membersBefore, Collection<T> membersAfter) {
+            if (membersBefore == membersAfter) {
+                return;
+            }
+            Iterator<T> beforeIterator = membersBefore.iterator();
+            Iterator<T> afterIterator = membersAfter.iterator();
+            T before = next(beforeIterator);
+            T after = next(afterIterator);
+            while (before != null || after != null) {
+                int comparison = before == null ? 1 : after == null ? -1 : before.compareTo(after);
+                if (comparison < 0) {
+                    changed();
+                    removed(before);
+                    before = next(beforeIterator);
+                } else if (comparison > 0) {
+                    changed();
+                    added(after);
+                    after = next(afterIterator);
+                } else {
+                    before = next(beforeIterator);
+                    after = next(afterIterator);
+                }
+            }
+            finished();
+        }
+
+        abstract void removed(T member);
+
+        abstract void added(T member);
+
+        /**
+         * Called once all of the members have been compared.
+         */
+        void finished() {
+        }
+    }
+
+    /**
+     * The simple name of a class plus a hash of the names and parameter counts of its visible members. Neither
+     * changes when a class moves to another package, even when its member signatures refer to classes that have also
+     * moved.
+     */
+    private static class MoveKey {
+        private final String simpleName;
+        private final long members;
+
+        MoveKey(ApiClass details) {
+            String name = details.getName();
+            simpleName = name.substring(name.lastIndexOf('/') + 1);
+            long members = 0;
+            for (MethodDetails method : details.getVisibleMethods()) {
+                members += Symbols.hash64(method.getName(), Integer.toString(method.getParameterCount()), '(');
+            }
+            for (FieldDetails field : details.getVisibleFields()) {
+                members += Symbols.hash64(field.getName(), "", ' ');
+            }
+            this.members = members;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            MoveKey other = (MoveKey) obj;
+            return members == other.members && simpleName.equals(other.simpleName);
+        }
+
+        @Override
+        public int hashCode() {
+            return simpleName.hashCode() ^ Long.hashCode(members);
+        }
+    }
+}
@@ -0,0 +1,182 @@
+package net.rubygrapefruit;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Collection;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * An index of the release in which each class and member of the public API was introduced and, when no longer
+ * present, the release from which it was removed. Built by {@link HistoryChecker}.
+ *
+ * <p>Classes and members that are present in the first release are recorded as introduced in that release.</p>
+ */
+public class ApiHistory {
+    // Keyed by class name, or by class name and member signature separated by '#', so that each class sorts before its members
+    private final Map<String, Entry> entries = new TreeMap<>();
+
+    /**
+     * Records the contents of the first release.
+     */
+    void addFirstRelease(File release, ApiModel classes) {
+        for (ApiClass details : classes.getApiClasses()) {
+            classIntroduced(release, details);
+        }
+    }
+
+    /**
+     * Returns a listener that records the changes made in the given release. A moved class is recorded as the removal
+     * of the old class and the introduction of the new class, along with all of their members, so the member changes
+     * reported for the move are ignored.
+     */
+    DiffListener changesIn(File release) {
+        return new DiffListener() {
+            @Override
+            public void classAdded(ApiClass details) {
+                classIntroduced(release, details);
+            }
+
+            @Override
+            public void classRemoved(ApiClass details) {
+                entry(details, null).removed(release);
+                for (MethodDetails method : details.getVisibleMethods()) {
+                    entry(details, method.getSignature()).removed(release);
+                }
+                for (FieldDetails field : details.getVisibleFields()) {
+                    entry(details, field.getSignature()).removed(release);
+                }
+            }
+
+            @Override
+            public void classMoved(ApiClass before, ApiClass after) {
+                classRemoved(before);
+                classAdded(after);
+            }
+
+            @Override
+            public void methodAdded(ApiClass before, ApiClass after, MethodDetails addedMethod) {
+                if (!isMove(before, after)) {
+                    entry(after, addedMethod.getSignature()).introduced(release);
+                }
+            }
+
+            @Override
+            public void methodRemoved(ApiClass before, ApiClass after, MethodDetails removedMethod) {
+                if (!isMove(before, after)) {
+                    entry(after, removedMethod.getSignature()).removed(release);
+                }
+            }
+
+            @Override
+            public void fieldAdded(ApiClass before, ApiClass after, FieldDetails addedField) {
+                if (!isMove(before, after)) {
+                    entry(after, addedField.getSignature()).introduced(release);
+                }
+            }
+
+            @Override
+            public void fieldRemoved(ApiClass before, ApiClass after, FieldDetails removedField) {
+                if (!isMove(before, after)) {
+                    entry(after, removedField.getSignature()).removed(release);
+                }
+            }
+        };
+    }
+
+    private static boolean isMove(ApiClass before, ApiClass after) {
+        return !before.getName().equals(after.getName());
+    }
+
+    private void classIntroduced(File release, ApiClass details) {
+        entry(details, null).introduced(release);
+        for (MethodDetails method : details.getVisibleMethods()) {
+            entry(details, method.getSignature()).introduced(release);
+        }
+        for (FieldDetails field : details.getVisibleFields()) {
+            entry(details, field.getSignature()).introduced(release);
+        }
+    }
+
+    private Entry entry(ApiClass details, String member) {
+        String className = details.toString();
+        return entries.computeIfAbsent(member == null ? className : className + '#' + member, key -> new Entry(className, member));
+    }
+
+    /**
+     * Returns the entries of this index, ordered by class name then member signature.
+     */
+    public Collection<Entry> getEntries() {
+        return entries.values();
+    }
+
+    /**
+     * Writes this index as text, one entry per line.
+     */
+    public void write(Writer writer) throws IOException {
+        for (Entry entry : entries.values()) {
+            writer.write(entry.toString());
+            writer.write('\n');
+        }
+    }
+
+    public static class Entry {
+        private final String className;
+        private final String member;
+        private File introducedIn;
+        private File removedIn;
+
+        Entry(String className, String member) {
+            this.className = className;
+            this.member = member;
+        }
+
+        public String getClassName() {
+            return className;
+        }
+
+        /**
+         * The signature of the member, or null for the class itself.
+         */
+        public String getMember() {
+            return member;
+        }
+
+        public File getIntroducedIn() {
+            return introducedIn;
+        }
+
+        /**
+         * The release from which the class or member was most recently removed, or null when it is present in the
+         * last release.
+         */
+        public File getRemovedIn() {
+            return removedIn;
+        }
+
+        void introduced(File release) {
+            if (introducedIn == null) {
+                introducedIn = release;
+            }
+            removedIn = null;
+        }
+
+        void removed(File release) {
+            removedIn = release;
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder builder = new StringBuilder(className);
+            if (member != null) {
+                builder.append('#').append(member);
+            }
+            builder.append(" introduced: ").append(introducedIn);
+            if (removedIn != null) {
+                builder.append(" removed: ").append(removedIn);
+            }
+            return builder.toString();
+        }
+    }
+}
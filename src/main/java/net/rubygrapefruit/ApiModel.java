@@ -0,0 +1,18 @@
+package net.rubygrapefruit;
+
+import java.util.Collection;
+
+/**
+ * The public API classes of a distribution. Read only.
+ */
+public interface ApiModel {
+    /**
+     * Returns the public API classes, sorted by name.
+     */
+    Collection<ApiClass> getApiClasses();
+
+    /**
+     * Returns the public API class with the given name, or null when there is no such class.
+     */
+    ApiClass findApiClass(String name);
+}
@@ -0,0 +1,249 @@
+package net.rubygrapefruit;
+
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.signature.SignatureReader;
+import org.objectweb.asm.signature.SignatureVisitor;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+/**
+ * Finds the classes that can be reached from the public API but are not part of it: internal classes, and classes in
+ * the public API packages that are not visible outside their package. A class is reached when it is the super class or
+ * an interface of a reached class, or appears in the descriptor, generic signature or declared exceptions of a visible
+ * method or field of a reached class. Every public API class is reached. Classes that are not in the given set, such as
+ * JDK classes, are ignored.
+ *
+ * <p>The classes are walked breadth first, one level at a time. When given a pool, the classes of each level are
+ * examined in parallel, and the results are merged in class name order, so that each class is reported with the same
+ * shortest path regardless of the parallelism.</p>
+ */
+public class ApiReachability {
+    private static final int BATCH_SIZE = 256;
+
+    private final ForkJoinPool pool;
+
+    /**
+     * @param pool The pool to examine classes on, or null to examine them on the calling thread.
+     */
+    public ApiReachability(ForkJoinPool pool) {
+        this.pool = pool;
+    }
+
+    /**
+     * Returns the classes that can be reached from the public API of the given set but are not part of it, ordered by
+     * name. The set must be resolved, and must hold all classes of the distribution rather than only the public API
+     * classes.
+     */
+    public List<LeakedType> findLeakedTypes(ClassSet classes) {
+        Map<String, Reference> reached = new HashMap<>();
+        List<LeakedType> result = new ArrayList<>();
+        List<ClassDetails> level = new ArrayList<>(classes.getVisibleApiClasses().values());
+        while (!level.isEmpty()) {
+            List<ClassDetails> nextLevel = new ArrayList<>();
+            for (List<Reference> references : examine(level, classes)) {
+                for (Reference reference : references) {
+                    String name = reference.target.getName();
+                    if (reached.containsKey(name)) {
+                        continue;
+                    }
+                    reference.previous = reached.get(reference.source.getName());
+                    reached.put(name, reference);
+                    result.add(new LeakedType(reference));
+                    nextLevel.add(reference.target);
+                }
+            }
+            nextLevel.sort(Comparator.naturalOrder());
+            level = nextLevel;
+        }
+        result.sort(Comparator.comparing(leakedType -> leakedType.getType().getName()));
+        return result;
+    }
+
+    /**
+     * Returns the references from each of the given classes, in the same order as the classes.
+     */
+    private List<List<Reference>> examine(List<ClassDetails> level, ClassSet classes) {
+        List<List<Reference>> result = new ArrayList<>(level.size());
+        if (pool == null || level.size() <= BATCH_SIZE) {
+            for (ClassDetails details : level) {
+                result.add(references(details, classes));
+            }
+            return result;
+        }
+
+        List<ForkJoinTask<List<List<Reference>>>> tasks = new ArrayList<>();
+        for (int start = 0; start < level.size(); start += BATCH_SIZE) {
+            List<ClassDetails> batch = level.subList(start, Math.min(start + BATCH_SIZE, level.size()));
+            tasks.add(pool.submit(() -> {
+                List<List<Reference>> references = new ArrayList<>(batch.size());
+                for (ClassDetails details : batch) {
+                    references.add(references(details, classes));
+                }
+                return references;
+            }));
+        }
+        for (ForkJoinTask<List<List<Reference>>> task : tasks) {
+            result.addAll(task.join());
+        }
+        return result;
+    }
+
+    /**
+     * Returns the references from the given class to classes that are not part of the public API. Only called once
+     * for each class, so the class can be resolved here.
+     */
+    private static List<Reference> references(ClassDetails details, ClassSet classes) {
+        List<Reference> references = new ArrayList<>();
+        if (details.getSuperClass() != null) {
+            reference(details, "super class", details.getSuperClass().getName(), classes, references);
+        }
+        for (ClassDetails interfaceDetails : details.getInterfaces()) {
+            reference(details, "interface", interfaceDetails.getName(), classes, references);
+        }
+        for (MethodDetails method : details.getVisibleMethods()) {
+            String via = "method " + method.getSignature();
+            referenceTypes(details, via, method.getDescriptor(), classes, references);
+            if (method.getGenericSignature() != null) {
+                new SignatureReader(method.getGenericSignature()).accept(new SignatureTypes(details, via, classes, references));
+            }
+            for (String exception : method.getExceptions()) {
+                reference(details, via, exception, classes, references);
+            }
+        }
+        for (FieldDetails field : details.getVisibleFields()) {
+            String via = "field " + field.getName();
+            referenceTypes(details, via, field.getDescriptor(), classes, references);
+            if (field.getGenericSignature() != null) {
+                new SignatureReader(field.getGenericSignature()).acceptType(new SignatureTypes(details, via, classes, references));
+            }
+        }
+        return references;
+    }
+
+    /**
+     * Adds a reference to each class type in the given method or field descriptor.
+     */
+    private static void referenceTypes(ClassDetails source, String via, String descriptor, ClassSet classes, List<Reference> references) {
+        for (int start = descriptor.indexOf('L'); start >= 0; start = descriptor.indexOf('L', start)) {
+            int end = descriptor.indexOf(';', start);
+            reference(source, via, descriptor.substring(start + 1, end), classes, references);
+            start = end + 1;
+        }
+    }
+
+    private static void reference(ClassDetails source, String via, String name, ClassSet classes, List<Reference> references) {
+        ClassDetails target = classes.find(name);
+        if (target == null || target == source || target.isApiType() && target.isVisibleOutsidePackage()) {
+            return;
+        }
+        references.add(new Reference(source, via, target));
+    }
+
+    /**
+     * Adds a reference to each class type in a generic signature, including the type arguments and bounds.
+     */
+    private static class SignatureTypes extends SignatureVisitor {
+        private final ClassDetails source;
+        private final String via;
+        private final ClassSet classes;
+        private final List<Reference> references;
+        // The names of the class types being visited, innermost first
+        private final Deque<String> types = new ArrayDeque<>();
+
+        SignatureTypes(ClassDetails source, String via, ClassSet classes, List<Reference> references) {
+            super(Opcodes.ASM5);
+            this.source = source;
+            this.via = via;
+            this.classes = classes;
+            this.references = references;
+        }
+
+        @Override
+        public void visitClassType(String name) {
+            types.push(name);
+            reference(source, via, name, classes, references);
+        }
+
+        @Override
+        public void visitInnerClassType(String name) {
+            String innerName = types.pop() + '$' + name;
+            types.push(innerName);
+            reference(source, via, innerName, classes, references);
+        }
+
+        @Override
+        public void visitEnd() {
+            types.pop();
+        }
+    }
+
+    /**
+     * A reference from one class to another. The first reference found to each class is kept.
+     */
+    private static class Reference {
+        final ClassDetails source;
+        final String via;
+        final ClassDetails target;
+        // The reference to the source class, or null when the source class is part of the public API
+        Reference previous;
+
+        Reference(ClassDetails source, String via, ClassDetails target) {
+            this.source = source;
+            this.via = via;
+            this.target = target;
+        }
+    }
+
+    /**
+     * A class that can be reached from the public API but is not part of it.
+     */
+    public static class LeakedType {
+        private final ClassDetails type;
+        private final List<String> path;
+
+        LeakedType(Reference reference) {
+            this.type = reference.target;
+            List<String> path = new ArrayList<>();
+            for (Reference current = reference; current != null; current = current.previous) {
+                path.add(current.source + " " + current.via);
+            }
+            Collections.reverse(path);
+            this.path = path;
+        }
+
+        public ClassDetails getType() {
+            return type;
+        }
+
+        /**
+         * Returns true when the class is not part of the public API, and false when it is part of the public API but
+         * not visible outside its package.
+         */
+        public boolean isInternal() {
+            return !type.isApiType();
+        }
+
+        /**
+         * Returns the references that reach the class, starting from a public API class. Each reference is described
+         * as the referencing class plus how it references the next class, for example {@code org.gradle.api.Project
+         * method getServices()Lorg/gradle/internal/service/ServiceRegistry;}.
+         */
+        public List<String> getPath() {
+            return path;
+        }
+
+        @Override
+        public String toString() {
+            return type + (isInternal() ? " (internal)" : " (not visible)");
+        }
+    }
+}
@@ -0,0 +1,347 @@
+package net.rubygrapefruit;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Pattern;
+
+/**
+ * Decides which classes and members make up the public API. Rules are read from a text file with one rule per line:
+ *
+ * <pre>
+ * # A comment
+ * include org/gradle/**
+ * exclude **&#47;internal/**
+ * exclude-annotation org.gradle.api.Incubating
+ * module gradle-core-*.jar include org/gradle/internal/api/**
+ * </pre>
+ *
+ * <p>Class patterns match the class name, with segments separated by {@code /} or {@code .}. {@code *} matches part
+ * of a segment, and {@code **} matches any number of segments. A class is part of the public API when it matches an
+ * include pattern and no exclude pattern. Classes and members annotated with an excluded annotation are not part of
+ * the public API. Rules prefixed with {@code module <glob>} apply only to the classes of the jars or class directories
+ * whose file name matches the glob. When any such rule matches a class, the module rules decide, and the other rules
+ * are ignored.</p>
+ *
+ * <p>The patterns are compiled into a trie of name segments. The trie state reached for each package is cached, so
+ * classifying a class costs a hash lookup of its package name plus one step for its simple name, however many rules
+ * there are.</p>
+ */
+public class ApiRules {
+    private static final String[] DEFAULT_RULES = {
+            "include org/gradle/**",
+            "exclude **/internal/**",
+            "exclude org/gradle/launcher/**",
+            "exclude org/gradle/gradleplugin/**",
+            "exclude org/gradle/listener/**",
+            "exclude org/gradle/initialization/**"
+    };
+    private static final ApiRules DEFAULTS = parse(String.join("\n", DEFAULT_RULES));
+
+    private final String source;
+    private final PatternSet rules;
+    private final Set<String> excludedAnnotations;
+    private final Map<String, PatternSet> moduleRules;
+    private final PatternSet noModuleRules;
+    private final Map<String, ApiRules> modules = new ConcurrentHashMap<>();
+    // Calculated on first use. Not synchronized, as every thread calculates the same value
+    private String fingerprint;
+
+    private ApiRules(String source, PatternSet rules, Set<String> excludedAnnotations, Map<String, PatternSet> moduleRules, PatternSet noModuleRules) {
+        this.source = source;
+        this.rules = rules;
+        this.excludedAnnotations = excludedAnnotations;
+        this.moduleRules = moduleRules;
+        this.noModuleRules = noModuleRules;
+    }
+
+    /**
+     * The rules for Gradle distributions.
+     */
+    public static ApiRules defaults() {
+        return DEFAULTS;
+    }
+
+    public static ApiRules parse(File file) throws IOException {
+        return parse(new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8));
+    }
+
+    public static ApiRules parse(String text) {
+        PatternSet rules = new PatternSet();
+        Set<String> excludedAnnotations = new HashSet<>();
+        Map<String, PatternSet> moduleRules = new LinkedHashMap<>();
+        try (BufferedReader reader = new BufferedReader(new StringReader(text))) {
+            String line;
+            int lineNumber = 0;
+            while ((line = reader.readLine()) != null) {
+                lineNumber++;
+                line = line.trim();
+                if (line.isEmpty() || line.startsWith("#")) {
+                    continue;
+                }
+                List<String> fields = Arrays.asList(line.split("\\s+"));
+                PatternSet target = rules;
+                if (fields.get(0).equals("module") && fields.size() == 4) {
+                    target = moduleRules.computeIfAbsent(fields.get(1), glob -> new PatternSet());
+                    fields = fields.subList(2, fields.size());
+                }
+                if (fields.size() != 2) {
+                    throw new IllegalArgumentException(String.format("Could not parse rule at line %s: %s", lineNumber, line));
+                }
+                String value = fields.get(1);
+                switch (fields.get(0)) {
+                    case "include":
+                        target.includes.add(value);
+                        break;
+                    case "exclude":
+                        target.excludes.add(value);
+                        break;
+                    case "exclude-annotation":
+                        if (target != rules) {
+                            throw new IllegalArgumentException(String.format("Annotation rules cannot be applied to a module, at line %s: %s", lineNumber, line));
+                        }
+                        excludedAnnotations.add("L" + value.replace('.', '/') + ";");
+                        break;
+                    default:
+                        throw new IllegalArgumentException(String.format("Unknown rule at line %s: %s", lineNumber, line));
+                }
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        return new ApiRules(text, rules, excludedAnnotations, moduleRules, new PatternSet());
+    }
+
+    /**
+     * Returns the rules to use for the classes of the jar or class directory with the given file name.
+     */
+    public ApiRules forModule(String moduleName) {
+        if (moduleRules.isEmpty()) {
+            return this;
+        }
+        return modules.computeIfAbsent(moduleName, name -> {
+            PatternSet matching = new PatternSet();
+            for (Map.Entry<String, PatternSet> entry : moduleRules.entrySet()) {
+                if (glob(entry.getKey()).matcher(name).matches()) {
+                    matching.includes.addAll(entry.getValue().includes);
+                    matching.excludes.addAll(entry.getValue().excludes);
+                }
+            }
+            return new ApiRules(source + "\n# module " + name, rules, excludedAnnotations, Collections.emptyMap(), matching);
+        });
+    }
+
+    /**
+     * Returns true when the class with the given name is part of the public API, if visible and not annotated with an
+     * excluded annotation.
+     */
+    public boolean isApiType(String className) {
+        Boolean moduleResult = noModuleRules.classify(className);
+        if (moduleResult != null) {
+            return moduleResult;
+        }
+        return Boolean.TRUE.equals(rules.classify(className));
+    }
+
+    public boolean hasExcludedAnnotations() {
+        return !excludedAnnotations.isEmpty();
+    }
+
+    /**
+     * Returns true when classes and members with the given annotation, given as a type descriptor, are not part of the
+     * public API.
+     */
+    public boolean isExcludedAnnotation(String descriptor) {
+        return excludedAnnotations.contains(descriptor);
+    }
+
+    /**
+     * Returns a string that changes whenever these rules change, for use as part of a cache key. This is the SHA-1 of
+     * the source of the rules.
+     */
+    public String getFingerprint() {
+        if (fingerprint == null) {
+            MessageDigest digest;
+            try {
+                digest = MessageDigest.getInstance("SHA-1");
+            } catch (NoSuchAlgorithmException e) {
+                throw new IllegalStateException(e);
+            }
+            StringBuilder fingerprint = new StringBuilder();
+            for (byte b : digest.digest(source.getBytes(StandardCharsets.UTF_8))) {
+                fingerprint.append(Character.forDigit((b >> 4) & 0xf, 16));
+                fingerprint.append(Character.forDigit(b & 0xf, 16));
+            }
+            this.fingerprint = fingerprint.toString();
+        }
+        return fingerprint;
+    }
+
+    private static Pattern glob(String glob) {
+        StringBuilder regex = new StringBuilder();
+        for (char c : glob.toCharArray()) {
+            if (c == '*') {
+                regex.append(".*");
+            } else if (c == '?') {
+                regex.append('.');
+            } else {
+                regex.append(Pattern.quote(String.valueOf(c)));
+            }
+        }
+        return Pattern.compile(regex.toString());
+    }
+
+    /**
+     * A set of include and exclude patterns, compiled to tries on first use.
+     */
+    private static class PatternSet {
+        final List<String> includes = new ArrayList<>();
+        final List<String> excludes = new ArrayList<>();
+        private volatile SegmentTrie includeTrie;
+        private volatile SegmentTrie excludeTrie;
+
+        /**
+         * Returns null when no pattern matches, false when an exclude pattern matches, and true otherwise.
+         */
+        Boolean classify(String className) {
+            if (includes.isEmpty() && excludes.isEmpty()) {
+                return null;
+            }
+            if (includeTrie == null) {
+                excludeTrie = new SegmentTrie(excludes);
+                includeTrie = new SegmentTrie(includes);
+            }
+            if (excludeTrie.matches(className)) {
+                return false;
+            }
+            return includeTrie.matches(className) ? true : null;
+        }
+    }
+
+    /**
+     * Matches names against a set of patterns, one name segment at a time.
+     */
+    private static class SegmentTrie {
+        private final Node root = new Node(false);
+        private final Map<String, Node[]> packageStates = new ConcurrentHashMap<>();
+        private final Node[] initialState;
+
+        SegmentTrie(List<String> patterns) {
+            for (String pattern : patterns) {
+                Node node = root;
+                for (String segment : pattern.replace('.', '/').split("/")) {
+                    node = node.child(segment);
+                }
+                node.terminal = true;
+            }
+            initialState = closure(Collections.singletonList(root));
+        }
+
+        boolean matches(String name) {
+            int packageEnd = name.lastIndexOf('/');
+            Node[] state = packageEnd < 0 ? initialState : packageStates.computeIfAbsent(name.substring(0, packageEnd), this::packageState);
+            if (state.length == 0) {
+                return false;
+            }
+            for (Node node : step(state, name.substring(packageEnd + 1))) {
+                if (node.terminal) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        private Node[] packageState(String packageName) {
+            Node[] state = initialState;
+            int start = 0;
+            while (state.length > 0 && start <= packageName.length()) {
+                int end = packageName.indexOf('/', start);
+                if (end < 0) {
+                    end = packageName.length();
+                }
+                state = step(state, packageName.substring(start, end));
+                start = end + 1;
+            }
+            return state;
+        }
+
+        private static Node[] step(Node[] state, String segment) {
+            List<Node> next = new ArrayList<>();
+            for (Node node : state) {
+                if (node.anySegments) {
+                    next.add(node);
+                }
+                Node literal = node.literals.get(segment);
+                if (literal != null) {
+                    next.add(literal);
+                }
+                for (Map.Entry<Pattern, Node> entry : node.wildcards.entrySet()) {
+                    if (entry.getKey().matcher(segment).matches()) {
+                        next.add(entry.getValue());
+                    }
+                }
+            }
+            return closure(next);
+        }
+
+        /**
+         * Adds the states reachable by matching {@code **} against no segments.
+         */
+        private static Node[] closure(List<Node> nodes) {
+            Set<Node> result = new HashSet<>();
+            List<Node> queue = new ArrayList<>(nodes);
+            while (!queue.isEmpty()) {
+                Node node = queue.remove(queue.size() - 1);
+                if (result.add(node) && node.anySegmentsChild != null) {
+                    queue.add(node.anySegmentsChild);
+                }
+            }
+            return result.toArray(new Node[0]);
+        }
+    }
+
+    private static class Node {
+        final boolean anySegments;
+        final Map<String, Node> literals = new HashMap<>();
+        final Map<Pattern, Node> wildcards = new LinkedHashMap<>();
+        final Map<String, Node> wildcardsByGlob = new HashMap<>();
+        Node anySegmentsChild;
+        boolean terminal;
+
+        Node(boolean anySegments) {
+            this.anySegments = anySegments;
+        }
+
+        Node child(String segment) {
+            if (segment.equals("**")) {
+                if (anySegmentsChild == null) {
+                    anySegmentsChild = new Node(true);
+                }
+                return anySegmentsChild;
+            }
+            if (segment.indexOf('*') >= 0 || segment.indexOf('?') >= 0) {
+                return wildcardsByGlob.computeIfAbsent(segment, glob -> {
+                    Node node = new Node(false);
+                    wildcards.put(glob(glob), node);
+                    return node;
+                });
+            }
+            return literals.computeIfAbsent(segment, literal -> new Node(false));
+        }
+    }
+}
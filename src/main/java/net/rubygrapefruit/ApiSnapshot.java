@@ -0,0 +1,409 @@
+package net.rubygrapefruit;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A compact binary form of the resolved public API of a distribution, that can be used in place of the distribution.
+ *
+ * <p>The file contains a table of distinct strings, then a table of distinct members, then a table of distinct string
+ * lists, then an index of the classes sorted by name, then a record for each class. Members refer to strings and to
+ * lists of strings, such as the annotations of the member, by index. Class records refer to strings and members by
+ * index, so that a member inherited by many classes is stored once. Each
+ * class record ends with the fingerprint of the class, so that unchanged classes can be found without reading their
+ * members, and each member record ends with the fingerprint of the member. The file is memory mapped and each string
+ * and string list is decoded and interned on first use, then cached, so that members can be created from the cached
+ * values without interning them again.</p>
+ */
+public class ApiSnapshot {
+    private static final int MAGIC = 0x41504953;
+    private static final int VERSION = 4;
+    // access, name, descriptor, generic signature, exceptions, annotations, fingerprint
+    private static final int MEMBER_SIZE = 32;
+
+    private final ByteBuffer buffer;
+    private final int stringCount;
+    private final int stringOffsetsStart;
+    private final int stringDataStart;
+    private final int membersStart;
+    private final int listOffsetsStart;
+    private final int listDataStart;
+    private final int classCount;
+    private final int classOffsetsStart;
+    private final String[] strings;
+    private final String[][] lists;
+
+    private ApiSnapshot(ByteBuffer buffer) {
+        this.buffer = buffer;
+        if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION) {
+            throw new IllegalArgumentException("Not an API snapshot or unsupported snapshot version");
+        }
+        stringCount = buffer.getInt(8);
+        stringOffsetsStart = 12;
+        stringDataStart = stringOffsetsStart + (stringCount + 1) * 4;
+        int memberCountOffset = stringDataStart + buffer.getInt(stringOffsetsStart + stringCount * 4);
+        membersStart = memberCountOffset + 4;
+        int listCountOffset = membersStart + buffer.getInt(memberCountOffset) * MEMBER_SIZE;
+        int listCount = buffer.getInt(listCountOffset);
+        listOffsetsStart = listCountOffset + 4;
+        listDataStart = listOffsetsStart + (listCount + 1) * 4;
+        int classesStart = listDataStart + buffer.getInt(listOffsetsStart + listCount * 4) * 4;
+        classCount = buffer.getInt(classesStart);
+        classOffsetsStart = classesStart + 4;
+        strings = new String[stringCount];
+        lists = new String[listCount][];
+    }
+
+    /**
+     * Returns true if the given file is an API snapshot.
+     */
+    public static boolean isSnapshot(File file) throws IOException {
+        if (!file.isFile()) {
+            return false;
+        }
+        DataInputStream inputStream = new DataInputStream(new FileInputStream(file));
+        try {
+            return inputStream.readInt() == MAGIC;
+        } catch (EOFException e) {
+            return false;
+        } finally {
+            inputStream.close();
+        }
+    }
+
+    public static ApiSnapshot open(File file) throws IOException {
+        RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r");
+        try {
+            FileChannel channel = randomAccessFile.getChannel();
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            return new ApiSnapshot(buffer);
+        } finally {
+            randomAccessFile.close();
+        }
+    }
+
+    /**
+     * Creates a snapshot of the public API classes of the given set, held in a direct buffer outside the heap.
+     */
+    public static ApiSnapshot of(ClassSet classes) {
+        ByteArrayOutputStream content = new ByteArrayOutputStream();
+        try {
+            write(classes, content);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        ByteBuffer buffer = ByteBuffer.allocateDirect(content.size());
+        buffer.put(content.toByteArray());
+        buffer.flip();
+        return new ApiSnapshot(buffer);
+    }
+
+    /**
+     * Writes the public API classes of the given set, including their inherited members, to the given file.
+     */
+    public static void write(ClassSet classes, File file) throws IOException {
+        OutputStream outputStream = new BufferedOutputStream(new FileOutputStream(file));
+        try {
+            write(classes, outputStream);
+        } finally {
+            outputStream.close();
+        }
+    }
+
+    private static void write(ClassSet classes, OutputStream output) throws IOException {
+        Map<String, Integer> strings = new LinkedHashMap<>();
+        Map<List<Integer>, Integer> members = new LinkedHashMap<>();
+        List<Long> memberFingerprints = new ArrayList<>();
+        Map<List<Integer>, Integer> lists = new LinkedHashMap<>();
+        ByteArrayOutputStream records = new ByteArrayOutputStream();
+        DataOutputStream recordsOutput = new DataOutputStream(records);
+        List<Integer> recordOffsets = new ArrayList<>();
+        for (ClassDetails details : classes.getVisibleApiClasses().values()) {
+            recordOffsets.add(recordsOutput.size());
+            recordsOutput.writeInt(id(strings, details.getName()));
+            recordsOutput.writeInt(details.getAccess());
+            recordsOutput.writeInt(details.getSuperClass() == null ? -1 : id(strings, details.getSuperClass().getName()));
+            recordsOutput.writeInt(details.getInterfaces().size());
+            for (ClassDetails interfaceDetails : details.getInterfaces()) {
+                recordsOutput.writeInt(id(strings, interfaceDetails.getName()));
+            }
+            recordsOutput.writeInt(details.getVisibleMethods().size());
+            for (MethodDetails method : details.getVisibleMethods()) {
+                recordsOutput.writeInt(memberId(members, memberFingerprints, Arrays.asList(method.getAccess(), id(strings, method.getName()), id(strings, method.getDescriptor()),
+                        optionalId(strings, method.getGenericSignature()), listId(lists, strings, method.getExceptions()), listId(lists, strings, method.getAnnotations())),
+                        method.getFingerprint()));
+            }
+            recordsOutput.writeInt(details.getVisibleFields().size());
+            for (FieldDetails field : details.getVisibleFields()) {
+                recordsOutput.writeInt(memberId(members, memberFingerprints, Arrays.asList(field.getAccess(), id(strings, field.getName()), id(strings, field.getDescriptor()),
+                        optionalId(strings, field.getGenericSignature()), -1, listId(lists, strings, field.getAnnotations())), field.getFingerprint()));
+            }
+            recordsOutput.writeLong(details.getFingerprint());
+        }
+
+        DataOutputStream outputStream = new DataOutputStream(output);
+        outputStream.writeInt(MAGIC);
+        outputStream.writeInt(VERSION);
+        outputStream.writeInt(strings.size());
+        List<byte[]> encodedStrings = new ArrayList<>(strings.size());
+        int offset = 0;
+        for (String value : strings.keySet()) {
+            byte[] encoded = value.getBytes(StandardCharsets.UTF_8);
+            encodedStrings.add(encoded);
+            outputStream.writeInt(offset);
+            offset += encoded.length;
+        }
+        outputStream.writeInt(offset);
+        for (byte[] encoded : encodedStrings) {
+            outputStream.write(encoded);
+        }
+        outputStream.writeInt(members.size());
+        int memberId = 0;
+        for (List<Integer> member : members.keySet()) {
+            for (Integer value : member) {
+                outputStream.writeInt(value);
+            }
+            outputStream.writeLong(memberFingerprints.get(memberId++));
+        }
+        outputStream.writeInt(lists.size());
+        offset = 0;
+        for (List<Integer> list : lists.keySet()) {
+            outputStream.writeInt(offset);
+            offset += list.size();
+        }
+        outputStream.writeInt(offset);
+        for (List<Integer> list : lists.keySet()) {
+            for (Integer value : list) {
+                outputStream.writeInt(value);
+            }
+        }
+        int recordsStart = outputStream.size() + 4 + recordOffsets.size() * 4;
+        outputStream.writeInt(recordOffsets.size());
+        for (Integer recordOffset : recordOffsets) {
+            outputStream.writeInt(recordsStart + recordOffset);
+        }
+        records.writeTo(outputStream);
+        outputStream.flush();
+    }
+
+    private static <T> int id(Map<T, Integer> table, T value) {
+        Integer id = table.get(value);
+        if (id == null) {
+            id = table.size();
+            table.put(value, id);
+        }
+        return id;
+    }
+
+    private static int memberId(Map<List<Integer>, Integer> members, List<Long> fingerprints, List<Integer> member, long fingerprint) {
+        int id = id(members, member);
+        if (id == fingerprints.size()) {
+            fingerprints.add(fingerprint);
+        }
+        return id;
+    }
+
+    private static int optionalId(Map<String, Integer> strings, String value) {
+        return value == null ? -1 : id(strings, value);
+    }
+
+    private static int listId(Map<List<Integer>, Integer> lists, Map<String, Integer> strings, String[] values) {
+        if (values.length == 0) {
+            return -1;
+        }
+        List<Integer> list = new ArrayList<>(values.length);
+        for (String value : values) {
+            list.add(id(strings, value));
+        }
+        return id(lists, list);
+    }
+
+    public int getClassCount() {
+        return classCount;
+    }
+
+    /**
+     * Returns the name of the class with the given index. Classes are sorted by name.
+     */
+    public String getClassName(int index) {
+        return string(buffer.getInt(buffer.getInt(classOffsetsStart + index * 4)));
+    }
+
+    /**
+     * Returns the details of the class with the given index.
+     */
+    public ParsedClass getClass(int index) {
+        int offset = buffer.getInt(classOffsetsStart + index * 4);
+        String name = string(buffer.getInt(offset));
+        int access = buffer.getInt(offset + 4);
+        int superId = buffer.getInt(offset + 8);
+        String[] interfaces = new String[buffer.getInt(offset + 12)];
+        offset += 16;
+        for (int i = 0; i < interfaces.length; i++, offset += 4) {
+            interfaces[i] = string(buffer.getInt(offset));
+        }
+        ParsedClass parsedClass = new ParsedClass(name, access, superId < 0 ? null : string(superId), interfaces);
+        int methodCount = buffer.getInt(offset);
+        offset += 4;
+        for (int i = 0; i < methodCount; i++, offset += 4) {
+            parsedClass.addMethod(method(buffer.getInt(offset)));
+        }
+        int fieldCount = buffer.getInt(offset);
+        offset += 4;
+        for (int i = 0; i < fieldCount; i++, offset += 4) {
+            parsedClass.addField(field(buffer.getInt(offset)));
+        }
+        return parsedClass;
+    }
+
+    /**
+     * Returns the index of the class with the given name, or -1 when not present.
+     */
+    int findClass(String name) {
+        int low = 0;
+        int high = classCount - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int comparison = getClassName(mid).compareTo(name);
+            if (comparison < 0) {
+                low = mid + 1;
+            } else if (comparison > 0) {
+                high = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -1;
+    }
+
+    int getClassAccess(int index) {
+        return buffer.getInt(classOffset(index) + 4);
+    }
+
+    /**
+     * Returns the name of the super class of the given class, or null when it has none.
+     */
+    String getSuperName(int index) {
+        int superId = buffer.getInt(classOffset(index) + 8);
+        return superId < 0 ? null : string(superId);
+    }
+
+    int getInterfaceCount(int index) {
+        return buffer.getInt(classOffset(index) + 12);
+    }
+
+    String getInterfaceName(int index, int interfaceIndex) {
+        return string(buffer.getInt(classOffset(index) + 16 + interfaceIndex * 4));
+    }
+
+    int getMethodCount(int index) {
+        return buffer.getInt(methodsOffset(index));
+    }
+
+    MethodDetails getMethod(int index, int methodIndex) {
+        return method(buffer.getInt(methodsOffset(index) + 4 + methodIndex * 4));
+    }
+
+    int getFieldCount(int index) {
+        return buffer.getInt(fieldsOffset(index));
+    }
+
+    FieldDetails getField(int index, int fieldIndex) {
+        return field(buffer.getInt(fieldsOffset(index) + 4 + fieldIndex * 4));
+    }
+
+    private MethodDetails method(int id) {
+        int member = membersStart + id * MEMBER_SIZE;
+        return new MethodDetails(buffer.getInt(member), string(buffer.getInt(member + 4)), string(buffer.getInt(member + 8)),
+                optionalString(buffer.getInt(member + 12)), list(buffer.getInt(member + 16)), list(buffer.getInt(member + 20)),
+                buffer.getLong(member + 24));
+    }
+
+    private FieldDetails field(int id) {
+        int member = membersStart + id * MEMBER_SIZE;
+        return new FieldDetails(buffer.getInt(member), string(buffer.getInt(member + 4)), string(buffer.getInt(member + 8)),
+                optionalString(buffer.getInt(member + 12)), list(buffer.getInt(member + 20)), buffer.getLong(member + 24));
+    }
+
+    /**
+     * Returns the fingerprint of the given class, as calculated by {@link ClassDetails#getFingerprint()} when the
+     * snapshot was written.
+     */
+    long getFingerprint(int index) {
+        int offset = fieldsOffset(index);
+        return buffer.getLong(offset + 4 + buffer.getInt(offset) * 4);
+    }
+
+    private int classOffset(int index) {
+        return buffer.getInt(classOffsetsStart + index * 4);
+    }
+
+    private int methodsOffset(int index) {
+        int offset = classOffset(index);
+        return offset + 16 + buffer.getInt(offset + 12) * 4;
+    }
+
+    private int fieldsOffset(int index) {
+        int offset = methodsOffset(index);
+        return offset + 4 + buffer.getInt(offset) * 4;
+    }
+
+    /**
+     * Creates a {@link ClassSet} containing the public API classes of this snapshot. Only the public API classes are
+     * created, and these do not need to be resolved.
+     */
+    public ClassSet toClassSet() {
+        ClassSet classes = new ClassSet();
+        for (int i = 0; i < classCount; i++) {
+            classes.addApiClass(getClass(i));
+        }
+        return classes;
+    }
+
+    private String optionalString(int id) {
+        return id < 0 ? null : string(id);
+    }
+
+    private String[] list(int id) {
+        if (id < 0) {
+            return Symbols.NONE;
+        }
+        String[] values = lists[id];
+        if (values == null) {
+            int start = buffer.getInt(listOffsetsStart + id * 4);
+            int end = buffer.getInt(listOffsetsStart + id * 4 + 4);
+            values = new String[end - start];
+            for (int i = 0; i < values.length; i++) {
+                values[i] = string(buffer.getInt(listDataStart + (start + i) * 4));
+            }
+            values = Symbols.intern(values);
+            lists[id] = values;
+        }
+        return values;
+    }
+
+    // Not synchronized: two threads may decode the same string or list, but both store the same interned instance, and
+    // strings and interned lists are safe to publish without synchronization
+    private String string(int id) {
+        String value = strings[id];
+        if (value == null) {
+            int start = buffer.getInt(stringOffsetsStart + id * 4);
+            int end = buffer.getInt(stringOffsetsStart + id * 4 + 4);
+            byte[] bytes = new byte[end - start];
+            ByteBuffer slice = buffer.duplicate();
+            slice.position(stringDataStart + start);
+            slice.get(bytes);
+            value = Symbols.intern(new String(bytes, StandardCharsets.UTF_8));
+            strings[id] = value;
+        }
+        return value;
+    }
+}
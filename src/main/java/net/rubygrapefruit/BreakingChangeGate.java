@@ -0,0 +1,73 @@
+package net.rubygrapefruit;
+
+/**
+ * Classifies each change as breaking or not, and cancels the remaining work of the check at the first breaking
+ * change. Only the first breaking change is recorded.
+ *
+ * <p>The removal or move of a class, the removal of a method, field or interface, a change to the signature of a method,
+ * and a change of superclass, are breaking. The other changes are not.</p>
+ *
+ * <p>When the comparison is split across processes by {@link ShardedChecker}, the shards compare all of their classes
+ * before any change is reported, so only the merge of their results stops at the first breaking change.</p>
+ */
+public class BreakingChangeGate extends DiffListener {
+    private final Cancellation cancellation;
+    private String breakingChange;
+
+    public BreakingChangeGate(Cancellation cancellation) {
+        this.cancellation = cancellation;
+    }
+
+    /**
+     * Returns a description of the first breaking change, or null when no breaking change has been found.
+     */
+    public String getBreakingChange() {
+        return breakingChange;
+    }
+
+    public boolean isBreaking() {
+        return breakingChange != null;
+    }
+
+    @Override
+    public void classRemoved(ApiClass details) {
+        breaking("class removed: " + details);
+    }
+
+    @Override
+    public void classMoved(ApiClass before, ApiClass after) {
+        breaking("class moved: " + before + " to " + after);
+    }
+
+    @Override
+    public void superClassChanged(ApiClass before, ApiClass after) {
+        breaking(after + ": super class changed: was: " + ApiClass.displayName(before.getSuperName()) + ", now: " + ApiClass.displayName(after.getSuperName()));
+    }
+
+    @Override
+    public void interfaceRemoved(ApiClass before, ApiClass after, ClassDetails removedInterface) {
+        breaking(after + ": interface removed: " + removedInterface);
+    }
+
+    @Override
+    public void methodRemoved(ApiClass before, ApiClass after, MethodDetails removedMethod) {
+        breaking(after + ": method removed: " + removedMethod);
+    }
+
+    @Override
+    public void methodSignatureChanged(ApiClass before, ApiClass after, MethodDetails removedMethod, MethodDetails addedMethod) {
+        breaking(after + ": method signature changed: was: " + removedMethod + ", now: " + addedMethod);
+    }
+
+    @Override
+    public void fieldRemoved(ApiClass before, ApiClass after, FieldDetails removedField) {
+        breaking(after + ": field removed: " + removedField);
+    }
+
+    private void breaking(String change) {
+        if (breakingChange == null) {
+            breakingChange = change;
+            cancellation.cancel();
+        }
+    }
+}
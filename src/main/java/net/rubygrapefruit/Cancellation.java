@@ -0,0 +1,26 @@
+package net.rubygrapefruit;
+
+/**
+ * Allows the work of a check to be stopped early, from any thread. The work in progress checks this between units of
+ * work, such as jars and classes, and stops at the next check once cancelled.
+ */
+public class Cancellation {
+    private volatile boolean cancelled;
+
+    public void cancel() {
+        cancelled = true;
+    }
+
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    /**
+     * Throws {@link CancelledException} when cancelled.
+     */
+    void checkNotCancelled() {
+        if (cancelled) {
+            throw new CancelledException();
+        }
+    }
+}
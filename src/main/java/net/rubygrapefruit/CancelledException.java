@@ -0,0 +1,12 @@
+package net.rubygrapefruit;
+
+/**
+ * Thrown when work is abandoned because its {@link Cancellation} has been cancelled.
+ */
+public class CancelledException extends RuntimeException {
+    private static final long serialVersionUID = 1L;
+
+    public CancelledException() {
+        super("The check was cancelled.");
+    }
+}
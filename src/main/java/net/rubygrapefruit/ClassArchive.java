@@ -0,0 +1,382 @@
+package net.rubygrapefruit;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.function.Predicate;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+import java.util.zip.ZipException;
+
+/**
+ * The class files of a jar or of a directory of class files. The classes can be parsed from multiple threads at the
+ * same time.
+ *
+ * <p>Jars are memory mapped, or read into memory up front, and their entries located using the jar's central directory.
+ * Each class is read into a buffer owned by the calling thread and parsed directly from that buffer, so no per-class
+ * buffers are allocated. Jars that cannot be read this way, such as zip64 archives, are read using {@link JarFile}.</p>
+ */
+abstract class ClassArchive implements Closeable {
+    private static final ThreadLocal<Buffers> BUFFERS = ThreadLocal.withInitial(Buffers::new);
+
+    final ApiRules rules;
+    boolean allMembers;
+
+    ClassArchive(ApiRules rules) {
+        this.rules = rules;
+    }
+
+    /**
+     * When true, records the members of every class. See {@link ClassParser#parse(byte[], int, int, ApiRules, boolean)}.
+     * The default is false.
+     */
+    void setAllMembers(boolean allMembers) {
+        this.allMembers = allMembers;
+    }
+
+    /**
+     * Opens the given jar or class directory, using the given rules to decide which classes are part of the public
+     * API. Only the class files whose entry name is accepted by the given filter are included, or all class files when
+     * the filter is null.
+     */
+    static ClassArchive open(File file, ApiRules rules, Predicate<String> filter) throws IOException {
+        if (file.isDirectory()) {
+            return new ClassDirectory(file.toPath(), rules, filter);
+        }
+        ClassArchive archive = MappedJar.open(file, rules, filter);
+        return archive != null ? archive : new StreamedJar(file, rules, filter);
+    }
+
+    /**
+     * Opens the given jar, whose content has already been read into memory.
+     */
+    static ClassArchive open(File file, byte[] content, ApiRules rules, Predicate<String> filter) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(content);
+        buffer.order(ByteOrder.LITTLE_ENDIAN);
+        ClassArchive archive = MappedJar.open(file, buffer, rules, filter);
+        return archive != null ? archive : new StreamedJar(file, rules, filter);
+    }
+
+    /**
+     * Returns the class files of the given class directory that need to be parsed, sorted by path.
+     */
+    static List<Path> classFiles(Path dir, Predicate<String> filter) throws IOException {
+        try (Stream<Path> paths = Files.walk(dir)) {
+            return paths.filter(path -> {
+                String name = dir.relativize(path).toString().replace(File.separatorChar, '/');
+                return name.endsWith(".class") && include(name, filter) && Files.isRegularFile(path);
+            }).sorted().collect(Collectors.toList());
+        }
+    }
+
+    private static boolean include(String entryName, Predicate<String> filter) {
+        return !ClassParser.canSkip(entryName) && (filter == null || filter.test(entryName));
+    }
+
+    /**
+     * Returns the number of class files that need to be parsed.
+     */
+    abstract int size();
+
+    /**
+     * Returns the details of the given class file, or null when the class can be skipped.
+     */
+    abstract ParsedClass parse(int index) throws IOException;
+
+    @Override
+    public void close() throws IOException {
+    }
+
+    /**
+     * Buffers that are reused for each class read by a thread.
+     */
+    private static class Buffers {
+        final Inflater inflater = new Inflater(true);
+        byte[] input = new byte[16 * 1024];
+        byte[] output = new byte[16 * 1024];
+
+        byte[] input(int size) {
+            if (input.length < size) {
+                input = new byte[Math.max(size, input.length * 2)];
+            }
+            return input;
+        }
+
+        byte[] output(int size) {
+            if (output.length < size) {
+                output = new byte[Math.max(size, output.length * 2)];
+            }
+            return output;
+        }
+    }
+
+    private static class MappedJar extends ClassArchive {
+        private static final int END_HEADER = 0x06054b50;
+        private static final int END_HEADER_SIZE = 22;
+        private static final int CENTRAL_HEADER = 0x02014b50;
+        private static final int CENTRAL_HEADER_SIZE = 46;
+        private static final int LOCAL_HEADER = 0x04034b50;
+        private static final int LOCAL_HEADER_SIZE = 30;
+        private static final int STORED = 0;
+        private static final int DEFLATED = 8;
+
+        private final File file;
+        private final ByteBuffer buffer;
+        // For each class entry: compression method, compressed size, size and local header offset
+        private final int[] entries;
+        private final int count;
+
+        private MappedJar(File file, ApiRules rules, ByteBuffer buffer, int[] entries, int count) {
+            super(rules);
+            this.file = file;
+            this.buffer = buffer;
+            this.entries = entries;
+            this.count = count;
+        }
+
+        /**
+         * Returns null when the jar cannot be read using a mapped buffer.
+         */
+        static MappedJar open(File file, ApiRules rules, Predicate<String> filter) throws IOException {
+            MappedByteBuffer buffer;
+            try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+                if (channel.size() > Integer.MAX_VALUE || channel.size() < END_HEADER_SIZE) {
+                    return null;
+                }
+                // The mapping remains valid once the channel is closed
+                buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            }
+            buffer.order(ByteOrder.LITTLE_ENDIAN);
+            return open(file, buffer, rules, filter);
+        }
+
+        /**
+         * Returns null when the jar held in the given little endian buffer cannot be read using the buffer.
+         */
+        static MappedJar open(File file, ByteBuffer buffer, ApiRules rules, Predicate<String> filter) throws IOException {
+            if (buffer.limit() < END_HEADER_SIZE) {
+                return null;
+            }
+            int end = findEndHeader(buffer);
+            if (end < 0) {
+                return null;
+            }
+            int entryCount = buffer.getShort(end + 10) & 0xffff;
+            long directoryOffset = buffer.getInt(end + 16) & 0xffffffffL;
+            if (entryCount == 0xffff || directoryOffset == 0xffffffffL || directoryOffset >= end) {
+                // A zip64 archive, or a corrupt one
+                return null;
+            }
+
+            int[] entries = new int[entryCount * 4];
+            int count = 0;
+            int pos = (int) directoryOffset;
+            for (int i = 0; i < entryCount; i++) {
+                if (pos + CENTRAL_HEADER_SIZE > end || buffer.getInt(pos) != CENTRAL_HEADER) {
+                    throw new ZipException(String.format("Could not read the central directory of %s", file));
+                }
+                int flags = buffer.getShort(pos + 8) & 0xffff;
+                int method = buffer.getShort(pos + 10) & 0xffff;
+                long compressedSize = buffer.getInt(pos + 20) & 0xffffffffL;
+                long size = buffer.getInt(pos + 24) & 0xffffffffL;
+                int nameLength = buffer.getShort(pos + 28) & 0xffff;
+                int extraLength = buffer.getShort(pos + 30) & 0xffff;
+                int commentLength = buffer.getShort(pos + 32) & 0xffff;
+                long localHeaderOffset = buffer.getInt(pos + 42) & 0xffffffffL;
+                if ((flags & 1) != 0 || compressedSize == 0xffffffffL || size == 0xffffffffL || localHeaderOffset == 0xffffffffL
+                        || (method != STORED && method != DEFLATED)) {
+                    // Encrypted or zip64 entries, or an unsupported compression method
+                    return null;
+                }
+                if (isClass(buffer, pos + CENTRAL_HEADER_SIZE, nameLength)) {
+                    String name = name(buffer, pos + CENTRAL_HEADER_SIZE, nameLength);
+                    if (include(name, filter)) {
+                        entries[count * 4] = method;
+                        entries[count * 4 + 1] = (int) compressedSize;
+                        entries[count * 4 + 2] = (int) size;
+                        entries[count * 4 + 3] = (int) localHeaderOffset;
+                        count++;
+                    }
+                }
+                pos += CENTRAL_HEADER_SIZE + nameLength + extraLength + commentLength;
+            }
+            return new MappedJar(file, rules, buffer, entries, count);
+        }
+
+        private static int findEndHeader(ByteBuffer buffer) {
+            // The end header is followed by a comment of up to 64k
+            int limit = Math.max(0, buffer.limit() - END_HEADER_SIZE - 0xffff);
+            for (int pos = buffer.limit() - END_HEADER_SIZE; pos >= limit; pos--) {
+                if (buffer.getInt(pos) == END_HEADER) {
+                    return pos;
+                }
+            }
+            return -1;
+        }
+
+        private static boolean isClass(ByteBuffer buffer, int pos, int length) {
+            if (length < 6) {
+                return false;
+            }
+            int end = pos + length;
+            return buffer.get(end - 6) == '.' && buffer.get(end - 5) == 'c' && buffer.get(end - 4) == 'l' && buffer.get(end - 3) == 'a'
+                    && buffer.get(end - 2) == 's' && buffer.get(end - 1) == 's';
+        }
+
+        private static String name(ByteBuffer buffer, int pos, int length) {
+            byte[] bytes = new byte[length];
+            ByteBuffer view = buffer.duplicate();
+            view.position(pos);
+            view.get(bytes);
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+
+        @Override
+        int size() {
+            return count;
+        }
+
+        @Override
+        ParsedClass parse(int index) throws IOException {
+            int method = entries[index * 4];
+            int compressedSize = entries[index * 4 + 1];
+            int size = entries[index * 4 + 2];
+            int localHeaderOffset = entries[index * 4 + 3];
+            if (localHeaderOffset + LOCAL_HEADER_SIZE > buffer.limit() || buffer.getInt(localHeaderOffset) != LOCAL_HEADER) {
+                throw new ZipException(String.format("Could not read entry at offset %s of %s", localHeaderOffset, file));
+            }
+            int nameLength = buffer.getShort(localHeaderOffset + 26) & 0xffff;
+            int extraLength = buffer.getShort(localHeaderOffset + 28) & 0xffff;
+            int dataOffset = localHeaderOffset + LOCAL_HEADER_SIZE + nameLength + extraLength;
+            if (dataOffset + compressedSize > buffer.limit()) {
+                throw new ZipException(String.format("Could not read entry at offset %s of %s", localHeaderOffset, file));
+            }
+
+            Buffers buffers = BUFFERS.get();
+            ByteBuffer data = buffer.duplicate();
+            data.position(dataOffset);
+            if (method == STORED) {
+                byte[] output = buffers.output(compressedSize);
+                data.get(output, 0, compressedSize);
+                return ClassParser.parse(output, 0, compressedSize, rules, allMembers);
+            }
+
+            // The inflater requires an extra byte of input when the zlib header and checksum are not present
+            byte[] input = buffers.input(compressedSize + 1);
+            data.get(input, 0, compressedSize);
+            input[compressedSize] = 0;
+            byte[] output = buffers.output(size);
+            Inflater inflater = buffers.inflater;
+            inflater.reset();
+            inflater.setInput(input, 0, compressedSize + 1);
+            int length = 0;
+            try {
+                while (length < size && !inflater.finished()) {
+                    int count = inflater.inflate(output, length, size - length);
+                    if (count == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                        break;
+                    }
+                    length += count;
+                }
+            } catch (DataFormatException e) {
+                throw new ZipException(String.format("Could not inflate entry at offset %s of %s: %s", localHeaderOffset, file, e.getMessage()));
+            }
+            if (length != size) {
+                throw new ZipException(String.format("Could not inflate entry at offset %s of %s", localHeaderOffset, file));
+            }
+            return ClassParser.parse(output, 0, size, rules, allMembers);
+        }
+    }
+
+    private static class ClassDirectory extends ClassArchive {
+        private final List<Path> files;
+
+        ClassDirectory(Path dir, ApiRules rules, Predicate<String> filter) throws IOException {
+            super(rules);
+            files = classFiles(dir, filter);
+        }
+
+        @Override
+        int size() {
+            return files.size();
+        }
+
+        @Override
+        ParsedClass parse(int index) throws IOException {
+            try (FileChannel channel = FileChannel.open(files.get(index), StandardOpenOption.READ)) {
+                long size = channel.size();
+                if (size > Integer.MAX_VALUE) {
+                    throw new IOException(String.format("Class file %s is too large", files.get(index)));
+                }
+                byte[] output = BUFFERS.get().output((int) size);
+                ByteBuffer buffer = ByteBuffer.wrap(output, 0, (int) size);
+                while (buffer.hasRemaining()) {
+                    if (channel.read(buffer) < 0) {
+                        break;
+                    }
+                }
+                return ClassParser.parse(output, 0, buffer.position(), rules, allMembers);
+            }
+        }
+    }
+
+    /**
+     * Reads the class files of a jar using {@link JarFile}, for those jars that cannot be memory mapped.
+     */
+    private static class StreamedJar extends ClassArchive {
+        private final List<byte[]> entries = new ArrayList<>();
+
+        StreamedJar(File file, ApiRules rules, Predicate<String> filter) throws IOException {
+            super(rules);
+            try (JarFile jarFile = new JarFile(file)) {
+                Enumeration<JarEntry> jarEntries = jarFile.entries();
+                while (jarEntries.hasMoreElements()) {
+                    JarEntry entry = jarEntries.nextElement();
+                    if (!entry.isDirectory() && entry.getName().endsWith(".class") && include(entry.getName(), filter)) {
+                        try (InputStream inputStream = jarFile.getInputStream(entry)) {
+                            entries.add(readFully(inputStream));
+                        }
+                    }
+                }
+            }
+        }
+
+        private static byte[] readFully(InputStream inputStream) throws IOException {
+            ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+            byte[] buffer = new byte[8192];
+            int nread;
+            while ((nread = inputStream.read(buffer)) > 0) {
+                outputStream.write(buffer, 0, nread);
+            }
+            return outputStream.toByteArray();
+        }
+
+        @Override
+        int size() {
+            return entries.size();
+        }
+
+        @Override
+        ParsedClass parse(int index) {
+            byte[] content = entries.get(index);
+            return ClassParser.parse(content, 0, content.length, rules, allMembers);
+        }
+    }
+}
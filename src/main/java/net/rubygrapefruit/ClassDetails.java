@@ -1,42 +1,161 @@
 package net.rubygrapefruit;
 
+import java.util.AbstractCollection;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.TreeMap;
 import java.util.TreeSet;
 
-public class ClassDetails implements Comparable<ClassDetails> {
+/**
+ * The details of a class. Holds only the members declared by the class. Inherited members are not copied into each
+ * class, but are found by walking the super types when required.
+ */
+public class ClassDetails implements ApiClass, Comparable<ClassDetails> {
     private final String name;
     private ClassDetails superClass;
-    private boolean resolved;
     private final Set<ClassDetails> interfaces = new TreeSet<>();
-    private final Map<String, MethodDetails> methods = new TreeMap<>();
-    private final Set<MethodDetails> visibleMethods = new TreeSet<>();
+    private final Map<MethodDetails, MethodDetails> methods = new HashMap<>();
+    private Set<MethodDetails> visibleMethods;
     private final Map<String, FieldDetails> fields = new TreeMap<>();
     private final Set<FieldDetails> visibleFields = new TreeSet<>();
     private int access;
+    private boolean defined;
+    private boolean apiType;
+    // The sums of the fingerprints of the interfaces, visible methods and visible fields, so that they do not depend on order
+    private long interfacesFingerprint;
+    private long methodsFingerprint;
+    private long fieldsFingerprint;
 
     public ClassDetails(String name) {
         this.name = name;
     }
 
+    /**
+     * Returns true when the inherited members of this class have been resolved.
+     */
     public boolean isResolved() {
-        return resolved;
+        return visibleMethods != null;
     }
 
-    public void setResolved(boolean resolved) {
-        this.resolved = resolved;
+    /**
+     * Resolves the visible methods of this class, including those inherited from its super types. The members of all
+     * super types must have been added before calling this method.
+     */
+    public void resolve() {
+        if (visibleMethods != null) {
+            return;
+        }
+        Set<MethodDetails> visibleMethods = new TreeSet<>();
+        long methodsFingerprint = 0;
+        for (MethodDetails method : collectMethods().values()) {
+            if (method.isVisibleOutsidePackage()) {
+                visibleMethods.add(method);
+                methodsFingerprint += method.getFingerprint();
+            }
+        }
+        this.visibleMethods = visibleMethods;
+        this.methodsFingerprint = methodsFingerprint;
+    }
+
+    /**
+     * Returns a 64 bit hash of the resolved API of this class: its super class, interfaces, visible methods and
+     * visible fields. Classes with the same fingerprint have the same API. The fingerprint does not change between
+     * runs, so it can be persisted.
+     */
+    @Override
+    public long getFingerprint() {
+        resolve();
+        long fingerprint = superClass == null ? 0 : Symbols.hash64(superClass.name, "", (char) 0);
+        fingerprint = Symbols.mix64(fingerprint ^ interfacesFingerprint);
+        fingerprint = Symbols.mix64(fingerprint ^ methodsFingerprint);
+        return Symbols.mix64(fingerprint ^ fieldsFingerprint);
+    }
+
+    /**
+     * Collects the methods of this class and its super types. A method declared by a type hides a method with the same
+     * signature from the types visited after it. Types are visited depth first: this class, then the super class and
+     * its super types, then each interface and its super types. Each type is visited once. Constructors and static
+     * initializers are not inherited.
+     */
+    private Map<MethodDetails, MethodDetails> collectMethods() {
+        Map<MethodDetails, MethodDetails> result = new HashMap<>();
+        Set<ClassDetails> seen = new HashSet<>();
+        Deque<ClassDetails> queue = new ArrayDeque<>();
+        List<ClassDetails> superTypes = new ArrayList<>();
+        queue.push(this);
+        while (!queue.isEmpty()) {
+            ClassDetails current = queue.pop();
+            if (!seen.add(current)) {
+                continue;
+            }
+            for (MethodDetails method : current.methods.values()) {
+                if (current == this || !method.getName().startsWith("<")) {
+                    result.putIfAbsent(method, method);
+                }
+            }
+            superTypes.clear();
+            if (current.superClass != null) {
+                superTypes.add(current.superClass);
+            }
+            superTypes.addAll(current.interfaces);
+            for (int i = superTypes.size() - 1; i >= 0; i--) {
+                queue.push(superTypes.get(i));
+            }
+        }
+        return result;
     }
 
     public Set<ClassDetails> getInterfaces() {
         return interfaces;
     }
 
+    @Override
+    public Collection<String> getInterfaceNames() {
+        return new AbstractCollection<String>() {
+            @Override
+            public Iterator<String> iterator() {
+                Iterator<ClassDetails> iterator = interfaces.iterator();
+                return new Iterator<String>() {
+                    @Override
+                    public boolean hasNext() {
+                        return iterator.hasNext();
+                    }
+
+                    @Override
+                    public String next() {
+                        return iterator.next().name;
+                    }
+                };
+            }
+
+            @Override
+            public int size() {
+                return interfaces.size();
+            }
+        };
+    }
+
+    /**
+     * Returns all methods of this class, including inherited methods.
+     */
     public Set<MethodDetails> getMethods() {
-        return new TreeSet<>(methods.values());
+        return new TreeSet<>(collectMethods().values());
     }
 
+    /**
+     * Returns the methods of this class that are visible outside its package, including inherited methods.
+     */
+    @Override
     public Set<MethodDetails> getVisibleMethods() {
+        resolve();
         return visibleMethods;
     }
 
@@ -44,10 +163,12 @@ public class ClassDetails implements Comparable<ClassDetails> {
         return new TreeSet<>(fields.values());
     }
 
+    @Override
     public Set<FieldDetails> getVisibleFields() {
         return visibleFields;
     }
 
+    @Override
     public String getName() {
         return name;
     }
@@ -56,6 +177,11 @@ public class ClassDetails implements Comparable<ClassDetails> {
         return superClass;
     }
 
+    @Override
+    public String getSuperName() {
+        return superClass == null ? null : superClass.name;
+    }
+
     public void setSuperClass(ClassDetails superClass) {
         this.superClass = superClass;
     }
@@ -73,7 +199,7 @@ public class ClassDetails implements Comparable<ClassDetails> {
 
     @Override
     public String toString() {
-        return name.replace("/", ".");
+        return ApiClass.displayName(name);
     }
 
     @Override
@@ -82,31 +208,56 @@ public class ClassDetails implements Comparable<ClassDetails> {
     }
 
     public void addDeclaredMethod(int access, String name, String descriptor) {
-        MethodDetails methodDetails = new MethodDetails(access, name, descriptor);
-        doAdd(methodDetails);
+        addDeclaredMethod(new MethodDetails(access, name, descriptor));
     }
 
-    public void addInheritedMethods(Iterable<MethodDetails> methods) {
-        for (MethodDetails method : methods) {
-            if (!this.methods.containsKey(method.getSignature())) {
-                doAdd(method);
-            }
-        }
+    public void addDeclaredMethod(MethodDetails methodDetails) {
+        doAdd(methodDetails);
     }
 
     private void doAdd(MethodDetails methodDetails) {
-        methods.put(methodDetails.getSignature(), methodDetails);
-        if (methodDetails.isVisibleOutsidePackage()) {
-            visibleMethods.add(methodDetails);
-        }
+        // Replace any existing method with the same signature
+        methods.remove(methodDetails);
+        methods.put(methodDetails, methodDetails);
+        visibleMethods = null;
     }
 
     public void addInterface(ClassDetails classDetails) {
-        interfaces.add(classDetails);
+        if (interfaces.add(classDetails)) {
+            interfacesFingerprint += Symbols.hash64(classDetails.name, "", (char) 0);
+        }
     }
 
+    /**
+     * Returns true when this class is part of the public API, if visible.
+     */
+    public boolean isApiType() {
+        return apiType;
+    }
+
+    public void setApiType(boolean apiType) {
+        this.apiType = apiType;
+    }
+
+    @Override
+    public int getAccess() {
+        return access;
+    }
+
+    /**
+     * Sets the access flags of this class, and marks this class as defined.
+     */
     public void setAccess(int access) {
         this.access = access;
+        this.defined = true;
+    }
+
+    /**
+     * Returns true when the class file of this class has been added, rather than this class only being referenced by
+     * other classes.
+     */
+    public boolean isDefined() {
+        return defined;
     }
 
     public boolean isVisibleOutsidePackage() {
@@ -114,10 +265,13 @@ public class ClassDetails implements Comparable<ClassDetails> {
     }
 
     public void addDeclaredField(int access, String name, String descriptor) {
-        FieldDetails field = new FieldDetails(access, name, descriptor);
+        addDeclaredField(new FieldDetails(access, name, descriptor));
+    }
+
+    public void addDeclaredField(FieldDetails field) {
         fields.put(field.getName(), field);
-        if (field.isVisibleOutsidePackage()) {
-            visibleFields.add(field);
+        if (field.isVisibleOutsidePackage() && visibleFields.add(field)) {
+            fieldsFingerprint += field.getFingerprint();
         }
     }
 }
@@ -0,0 +1,198 @@
+package net.rubygrapefruit;
+
+import org.objectweb.asm.*;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Extracts the API details from a class file.
+ *
+ * <p>Classes that can be neither part of the public API nor a super type of a public API class are recorded without
+ * their members, using the class header, so that they can still be found when referenced from the public API, unless
+ * the members of all classes are requested. Anonymous and local classes are skipped using the entry name. Private members are never recorded.</p>
+ *
+ * <p>For each member, the access flags, generic signature, declared exceptions and annotation types are recorded in the
+ * same pass. Annotation values and method bodies are not visited.</p>
+ *
+ * <p>Which classes are part of the public API is decided by {@link ApiRules}. Classes and members with an annotation
+ * excluded by the rules are not part of the public API.</p>
+ */
+public class ClassParser {
+    /**
+     * Returns true when the class file with the given entry name can be skipped without reading it. This is the case
+     * for module and package descriptors, and for anonymous and local classes, which cannot be referenced by name from
+     * outside their enclosing class.
+     */
+    public static boolean canSkip(String entryName) {
+        int start = entryName.lastIndexOf('/') + 1;
+        int end = entryName.length() - ".class".length();
+        if (entryName.startsWith("module-info", start) || entryName.startsWith("package-info", start)) {
+            return true;
+        }
+        for (int i = entryName.indexOf('$', start); i >= 0 && i + 1 < end; i = entryName.indexOf('$', i + 1)) {
+            if (Character.isDigit(entryName.charAt(i + 1))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns the details of the given class file.
+     */
+    public static ParsedClass parse(byte[] content) {
+        return parse(content, 0, content.length, ApiRules.defaults());
+    }
+
+    /**
+     * Returns the details of the class file held in the given region of the given buffer. The buffer is not
+     * referenced once this method returns, and so can be reused.
+     */
+    public static ParsedClass parse(byte[] buffer, int offset, int length) {
+        return parse(buffer, offset, length, ApiRules.defaults());
+    }
+
+    /**
+     * Returns the details of the class file held in the given region of the given buffer, using the given rules to
+     * decide whether the class is part of the public API.
+     */
+    public static ParsedClass parse(byte[] buffer, int offset, int length, ApiRules rules) {
+        return parse(buffer, offset, length, rules, false);
+    }
+
+    /**
+     * Returns the details of the class file held in the given region of the given buffer. When allMembers is true, the
+     * members of the class are recorded even when it cannot contribute members to a public API class, such as a final
+     * internal class, so that the classes reachable through it can be found.
+     */
+    public static ParsedClass parse(byte[] buffer, int offset, int length, ApiRules rules, boolean allMembers) {
+        ClassReader reader = new ClassReader(buffer, offset, length);
+        String className = reader.getClassName();
+        int classAccess = reader.getAccess();
+        boolean apiType = rules.isApiType(className);
+        ParsedClass parsedClass = new ParsedClass(className, classAccess, reader.getSuperName(), reader.getInterfaces());
+        parsedClass.setApiType(apiType);
+        if (!allMembers && !(apiType && Visibility.fromAccessField(classAccess) == Visibility.Public) && (classAccess & (Opcodes.ACC_FINAL | Opcodes.ACC_SYNTHETIC)) != 0) {
+            // Cannot be extended, so cannot contribute members to a public API class
+            return parsedClass;
+        }
+        MemberVisitor members = new MemberVisitor(parsedClass, rules);
+        reader.accept(new ClassVisitor(Opcodes.ASM5) {
+            @Override
+            public void visit(int version, int access, String name, String signature, String superName,
+                              String[] interfaces) {
+            }
+
+            @Override
+            public AnnotationVisitor visitAnnotation(String desc, boolean visible) {
+                if (rules.isExcludedAnnotation(desc)) {
+                    parsedClass.setApiType(false);
+                }
+                return null;
+            }
+
+            @Override
+            public MethodVisitor visitMethod(int access, String name, String desc, String signature,
+                                             String[] exceptions) {
+                if ((access & Opcodes.ACC_PRIVATE) != 0) {
+                    return null;
+                }
+                return members.startMethod(access, name, desc, signature, exceptions);
+            }
+
+            @Override
+            public FieldVisitor visitField(int access, String name, String desc, String signature,
+                                           Object value) {
+                if ((access & Opcodes.ACC_PRIVATE) != 0) {
+                    return null;
+                }
+                return members.startField(access, name, desc, signature);
+            }
+        }, ClassReader.SKIP_CODE | ClassReader.SKIP_DEBUG | ClassReader.SKIP_FRAMES);
+        return parsedClass;
+    }
+
+    /**
+     * Collects the annotations of each member, then adds the member once all of its details have been visited. ASM
+     * visits one member at a time, so a single instance is reused for all members of a class.
+     */
+    private static class MemberVisitor {
+        private final ParsedClass parsedClass;
+        private final ApiRules rules;
+        private final List<String> annotations = new ArrayList<>();
+        private final MethodVisitor methodVisitor = new MethodVisitor(Opcodes.ASM5) {
+            @Override
+            public AnnotationVisitor visitAnnotation(String desc, boolean visible) {
+                annotations.add(desc);
+                return null;
+            }
+
+            @Override
+            public void visitEnd() {
+                if (!isExcluded()) {
+                    parsedClass.addMethod(new MethodDetails(access, name, descriptor, signature, exceptions, annotations()));
+                }
+            }
+        };
+        private final FieldVisitor fieldVisitor = new FieldVisitor(Opcodes.ASM5) {
+            @Override
+            public AnnotationVisitor visitAnnotation(String desc, boolean visible) {
+                annotations.add(desc);
+                return null;
+            }
+
+            @Override
+            public void visitEnd() {
+                if (!isExcluded()) {
+                    parsedClass.addField(new FieldDetails(access, name, descriptor, signature, annotations()));
+                }
+            }
+        };
+        private int access;
+        private String name;
+        private String descriptor;
+        private String signature;
+        private String[] exceptions;
+
+        MemberVisitor(ParsedClass parsedClass, ApiRules rules) {
+            this.parsedClass = parsedClass;
+            this.rules = rules;
+        }
+
+        MethodVisitor startMethod(int access, String name, String descriptor, String signature, String[] exceptions) {
+            start(access, name, descriptor, signature);
+            this.exceptions = exceptions;
+            return methodVisitor;
+        }
+
+        FieldVisitor startField(int access, String name, String descriptor, String signature) {
+            start(access, name, descriptor, signature);
+            return fieldVisitor;
+        }
+
+        private void start(int access, String name, String descriptor, String signature) {
+            this.access = access;
+            this.name = name;
+            this.descriptor = descriptor;
+            this.signature = signature;
+            annotations.clear();
+        }
+
+        private boolean isExcluded() {
+            if (!rules.hasExcludedAnnotations()) {
+                return false;
+            }
+            for (String annotation : annotations) {
+                if (rules.isExcludedAnnotation(annotation)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        private String[] annotations() {
+            return annotations.isEmpty() ? null : annotations.toArray(new String[0]);
+        }
+    }
+}
@@ -1,53 +1,138 @@
 package net.rubygrapefruit;
 
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
-public class ClassSet {
-    private final Map<String, ClassDetails> classes = new HashMap<>();
+/**
+ * A set of classes. {@link #get(String)} and {@link #addAll(Iterable)} can be called concurrently.
+ */
+public class ClassSet implements ApiModel {
+    private final ConcurrentMap<String, ClassDetails> classes = new ConcurrentHashMap<>();
     private final Map<String, ClassDetails> apiClasses = new TreeMap<>();
 
     public ClassDetails get(String name) {
+        return classes.computeIfAbsent(name, ClassDetails::new);
+    }
+
+    /**
+     * Returns the class with the given name, or null when the class has not been added to this set. Classes that are
+     * only referenced by the classes of this set, such as JDK classes, are not returned.
+     */
+    public ClassDetails find(String name) {
         ClassDetails details = classes.get(name);
-        if (details == null) {
-            details = new ClassDetails(name);
-            classes.put(name, details);
+        return details != null && details.isDefined() ? details : null;
+    }
+
+    /**
+     * Merges the given classes into this set. When a class is present multiple times, the details are merged in the
+     * order given.
+     */
+    public synchronized void addAll(Iterable<ParsedClass> parsedClasses) {
+        for (ParsedClass parsedClass : parsedClasses) {
+            ClassDetails classDetails = get(parsedClass.getName());
+            classDetails.setAccess(parsedClass.getAccess());
+            classDetails.setApiType(parsedClass.isApiType());
+            if (parsedClass.getSuperName() != null) {
+                classDetails.setSuperClass(get(parsedClass.getSuperName()));
+            }
+            for (String name : parsedClass.getInterfaces()) {
+                classDetails.addInterface(get(name));
+            }
+            for (MethodDetails method : parsedClass.getMethods()) {
+                classDetails.addDeclaredMethod(method);
+            }
+            for (FieldDetails field : parsedClass.getFields()) {
+                classDetails.addDeclaredField(field);
+            }
         }
-        return details;
     }
 
-    private boolean isPublicApiType(ClassDetails details) {
-        return details.getName().startsWith("org/gradle/")
-                && !details.getName().contains("/internal/")
-                && !details.getName().startsWith("org/gradle/launcher/")
-                && !details.getName().startsWith("org/gradle/gradleplugin/")
-                && !details.getName().startsWith("org/gradle/listener/")
-                && !details.getName().startsWith("org/gradle/initialization/");
+    /**
+     * Adds a class that is part of the public API and whose inherited members have already been resolved.
+     */
+    public synchronized void addApiClass(ParsedClass parsedClass) {
+        parsedClass.setApiType(true);
+        addAll(Collections.singleton(parsedClass));
+        ClassDetails details = get(parsedClass.getName());
+        apiClasses.put(details.getName(), details);
     }
 
+    /**
+     * Determines the public API classes and resolves their inherited members. The members of other classes are only
+     * visited when inherited by a public API class, and are never copied.
+     */
     public void resolveSuperTypes() {
         for (ClassDetails details : classes.values()) {
-            resolveSuperTypes(details);
-            if (isPublicApiType(details) && details.isVisibleOutsidePackage()) {
+            if (details.isApiType() && details.isVisibleOutsidePackage()) {
+                details.resolve();
                 apiClasses.put(details.getName(), details);
             }
         }
     }
 
-    private void resolveSuperTypes(ClassDetails details) {
-        if (details.isResolved()) {
-            return;
+    /**
+     * Resolves the given classes, if present, and adds those that are public API classes to the public API. Other
+     * classes are not resolved, and are not included in the public API.
+     */
+    public void resolveSuperTypes(Collection<String> names) {
+        for (String name : names) {
+            ClassDetails details = classes.get(name);
+            if (details != null && details.isApiType() && details.isVisibleOutsidePackage()) {
+                details.resolve();
+                apiClasses.put(details.getName(), details);
+            }
         }
-        if (details.getSuperClass() != null) {
-            resolveSuperTypes(details.getSuperClass());
-            details.addInheritedMethods(details.getSuperClass().getMethods());
+    }
+
+    /**
+     * Returns the names of the given classes plus the names of all classes that inherit from them, directly or
+     * indirectly.
+     */
+    public Set<String> withSubtypes(Collection<String> names) {
+        Map<String, List<String>> subtypes = new HashMap<>();
+        for (ClassDetails details : classes.values()) {
+            if (details.getSuperClass() != null) {
+                subtypes.computeIfAbsent(details.getSuperClass().getName(), k -> new ArrayList<>()).add(details.getName());
+            }
+            for (ClassDetails interfaceDetails : details.getInterfaces()) {
+                subtypes.computeIfAbsent(interfaceDetails.getName(), k -> new ArrayList<>()).add(details.getName());
+            }
         }
-        for (ClassDetails interfaceDetails : details.getInterfaces()) {
-            resolveSuperTypes(interfaceDetails);
-            details.addInheritedMethods(interfaceDetails.getMethods());
+
+        Set<String> result = new HashSet<>(names);
+        Deque<String> queue = new ArrayDeque<>(names);
+        while (!queue.isEmpty()) {
+            List<String> types = subtypes.get(queue.pop());
+            if (types != null) {
+                for (String type : types) {
+                    if (result.add(type)) {
+                        queue.add(type);
+                    }
+                }
+            }
         }
-        details.setResolved(true);
+        return result;
+    }
+
+    @Override
+    public Collection<ApiClass> getApiClasses() {
+        return Collections.unmodifiableCollection(apiClasses.values());
+    }
+
+    @Override
+    public ApiClass findApiClass(String name) {
+        return apiClasses.get(name);
     }
 
     /**
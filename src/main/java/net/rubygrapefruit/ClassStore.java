@@ -0,0 +1,737 @@
+package net.rubygrapefruit;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
+import java.util.Set;
+
+/**
+ * The classes of a distribution, held in a file sorted by class name rather than in memory, so that distributions of
+ * any size can be compared using a bounded amount of heap.
+ *
+ * <p>Classes are added in distribution order. They are buffered in memory until the buffer reaches its share of the
+ * memory budget, then sorted and written to a run file. Once all classes have been added, the run files are merged
+ * into the store file using a k-way merge. When a class is present in more than one jar, its records are kept in the
+ * order they were added, and are merged in that order as {@link ClassSet#addAll(Iterable)} does.</p>
+ *
+ * <p>{@link #getApiClasses()} reads the store file from start to end and resolves each public API class in turn,
+ * loading its super types from the store file using a sparse index and a cache whose size is bounded by the memory
+ * budget. Only the classes being compared are held in memory. Not thread safe.</p>
+ *
+ * <p>A store built into a given file is kept when closed, and can be opened by another process using
+ * {@link #open(File, long)}.</p>
+ */
+public class ClassStore implements Closeable {
+    /**
+     * The number of classes between entries of the sparse index.
+     */
+    private static final int INDEX_INTERVAL = 16;
+    /**
+     * The maximum number of run files to merge at once. More runs are merged in several passes.
+     */
+    private static final int MAX_MERGE_WIDTH = 64;
+    private static final int BUFFER_SIZE = 16 * 1024;
+
+    private final File file;
+    private final List<String> indexNames;
+    private final long[] indexOffsets;
+    private final FileChannel channel;
+    private final ChannelInputStream channelInput;
+    private final DataInputStream channelDataInput;
+    private final LinkedHashMap<String, List<ParsedClass>> cache = new LinkedHashMap<>(256, 0.75f, true);
+    private final long maxCacheSize;
+    private final boolean temporary;
+    private long cacheSize;
+
+    private ClassStore(File file, List<String> indexNames, long[] indexOffsets, long maxCacheSize, boolean temporary) throws IOException {
+        this.file = file;
+        this.indexNames = indexNames;
+        this.indexOffsets = indexOffsets;
+        this.maxCacheSize = maxCacheSize;
+        this.temporary = temporary;
+        this.channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+        this.channelInput = new ChannelInputStream(channel);
+        this.channelDataInput = new DataInputStream(channelInput);
+    }
+
+    /**
+     * Creates a builder that writes its files to the given directory, and uses at most the given number of bytes of
+     * heap for buffered classes and cached super types.
+     */
+    public static Builder builder(File dir, long memoryBudget) {
+        return new Builder(dir, memoryBudget);
+    }
+
+    /**
+     * Opens a store file written by {@link Builder#build(File)}, caching at most the given number of bytes of classes.
+     * The index is rebuilt by reading the name and length of each class, skipping the class details.
+     */
+    public static ClassStore open(File file, long cacheSize) throws IOException {
+        List<String> indexNames = new ArrayList<>();
+        long[] indexOffsets = new long[64];
+        try (DataInputStream inputStream = new DataInputStream(new BufferedInputStream(new FileInputStream(file), BUFFER_SIZE))) {
+            long offset = 0;
+            for (int groups = 0; ; groups++) {
+                String name;
+                try {
+                    name = inputStream.readUTF();
+                } catch (EOFException e) {
+                    break;
+                }
+                int length = inputStream.readInt();
+                if (groups % INDEX_INTERVAL == 0) {
+                    if (indexNames.size() == indexOffsets.length) {
+                        indexOffsets = Arrays.copyOf(indexOffsets, indexOffsets.length * 2);
+                    }
+                    indexOffsets[indexNames.size()] = offset;
+                    indexNames.add(name);
+                }
+                skipFully(inputStream, length);
+                offset += 2 + utfLength(name) + 4 + length;
+            }
+        }
+        return new ClassStore(file, indexNames, Arrays.copyOf(indexOffsets, indexNames.size()), cacheSize, false);
+    }
+
+    /**
+     * Returns the number of bytes used to encode the given string by {@link DataOutputStream#writeUTF(String)}, not
+     * including the length.
+     */
+    private static int utfLength(String value) {
+        int length = 0;
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            length += c >= 1 && c <= 0x7f ? 1 : c <= 0x7ff ? 2 : 3;
+        }
+        return length;
+    }
+
+    /**
+     * Returns the public API classes of this store, sorted by name, with their inherited members resolved. The classes
+     * are read and resolved as the iterator advances.
+     */
+    public Iterable<ClassDetails> getApiClasses() {
+        return ApiClassIterator::new;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+        cache.clear();
+        if (temporary) {
+            file.delete();
+        }
+    }
+
+    /**
+     * Returns the records of the given class in the order they were added, or null when not present.
+     */
+    List<ParsedClass> load(String name) throws IOException {
+        List<ParsedClass> result = cache.get(name);
+        if (result != null) {
+            return result.isEmpty() ? null : result;
+        }
+        result = read(name);
+        cache(name, result);
+        return result.isEmpty() ? null : result;
+    }
+
+    private void cache(String name, List<ParsedClass> records) {
+        cache.put(name, records);
+        cacheSize += estimateSize(name, records);
+        Iterator<Map.Entry<String, List<ParsedClass>>> iterator = cache.entrySet().iterator();
+        while (cacheSize > maxCacheSize && iterator.hasNext()) {
+            Map.Entry<String, List<ParsedClass>> entry = iterator.next();
+            cacheSize -= estimateSize(entry.getKey(), entry.getValue());
+            iterator.remove();
+        }
+    }
+
+    private List<ParsedClass> read(String name) throws IOException {
+        int index = Collections.binarySearch(indexNames, name);
+        if (index < 0) {
+            index = -index - 2;
+            if (index < 0) {
+                return Collections.emptyList();
+            }
+        }
+        channelInput.seek(indexOffsets[index]);
+        DataInputStream inputStream = channelDataInput;
+        for (int i = 0; i < INDEX_INTERVAL; i++) {
+            String groupName;
+            try {
+                groupName = inputStream.readUTF();
+            } catch (EOFException e) {
+                break;
+            }
+            int length = inputStream.readInt();
+            int comparison = groupName.compareTo(name);
+            if (comparison == 0) {
+                return readGroup(groupName, inputStream);
+            }
+            if (comparison > 0) {
+                break;
+            }
+            skipFully(inputStream, length);
+        }
+        return Collections.emptyList();
+    }
+
+    private static void skipFully(DataInputStream inputStream, int length) throws IOException {
+        while (length > 0) {
+            int skipped = inputStream.skipBytes(length);
+            if (skipped <= 0) {
+                throw new EOFException();
+            }
+            length -= skipped;
+        }
+    }
+
+    private static List<ParsedClass> readGroup(String name, DataInputStream inputStream) throws IOException {
+        int count = inputStream.readInt();
+        List<ParsedClass> records = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            records.add(readClass(name, inputStream));
+        }
+        return records;
+    }
+
+    private static long estimateSize(String name, List<ParsedClass> records) {
+        long size = 64 + name.length() * 2;
+        for (ParsedClass record : records) {
+            size += 96 + record.getInterfaces().length * 8 + (record.getMethods().size() + record.getFields().size()) * 56;
+        }
+        return size;
+    }
+
+    static void writeClass(ParsedClass parsedClass, DataOutputStream outputStream) throws IOException {
+        outputStream.writeInt(parsedClass.getAccess());
+        outputStream.writeBoolean(parsedClass.isApiType());
+        outputStream.writeUTF(parsedClass.getSuperName() == null ? "" : parsedClass.getSuperName());
+        outputStream.writeInt(parsedClass.getInterfaces().length);
+        for (String name : parsedClass.getInterfaces()) {
+            outputStream.writeUTF(name);
+        }
+        outputStream.writeInt(parsedClass.getMethods().size());
+        for (MethodDetails method : parsedClass.getMethods()) {
+            writeMethod(method, outputStream);
+        }
+        outputStream.writeInt(parsedClass.getFields().size());
+        for (FieldDetails field : parsedClass.getFields()) {
+            writeField(field, outputStream);
+        }
+    }
+
+    static void writeMethod(MethodDetails method, DataOutputStream outputStream) throws IOException {
+        outputStream.writeInt(method.getAccess());
+        outputStream.writeUTF(method.getName());
+        outputStream.writeUTF(method.getDescriptor());
+        outputStream.writeUTF(method.getGenericSignature() == null ? "" : method.getGenericSignature());
+        writeStrings(method.getExceptions(), outputStream);
+        writeStrings(method.getAnnotations(), outputStream);
+    }
+
+    static void writeField(FieldDetails field, DataOutputStream outputStream) throws IOException {
+        outputStream.writeInt(field.getAccess());
+        outputStream.writeUTF(field.getName());
+        outputStream.writeUTF(field.getDescriptor());
+        outputStream.writeUTF(field.getGenericSignature() == null ? "" : field.getGenericSignature());
+        writeStrings(field.getAnnotations(), outputStream);
+    }
+
+    private static void writeStrings(String[] values, DataOutputStream outputStream) throws IOException {
+        outputStream.writeInt(values.length);
+        for (String value : values) {
+            outputStream.writeUTF(value);
+        }
+    }
+
+    private static String[] readStrings(DataInputStream inputStream) throws IOException {
+        String[] values = new String[inputStream.readInt()];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = inputStream.readUTF();
+        }
+        return values;
+    }
+
+    static ParsedClass readClass(String name, DataInputStream inputStream) throws IOException {
+        int access = inputStream.readInt();
+        boolean apiType = inputStream.readBoolean();
+        String superName = inputStream.readUTF();
+        String[] interfaces = new String[inputStream.readInt()];
+        for (int i = 0; i < interfaces.length; i++) {
+            interfaces[i] = inputStream.readUTF();
+        }
+        ParsedClass parsedClass = new ParsedClass(name, access, superName.isEmpty() ? null : superName, interfaces);
+        parsedClass.setApiType(apiType);
+        int methodCount = inputStream.readInt();
+        for (int i = 0; i < methodCount; i++) {
+            parsedClass.addMethod(readMethod(inputStream));
+        }
+        int fieldCount = inputStream.readInt();
+        for (int i = 0; i < fieldCount; i++) {
+            parsedClass.addField(readField(inputStream));
+        }
+        return parsedClass;
+    }
+
+    static MethodDetails readMethod(DataInputStream inputStream) throws IOException {
+        int access = inputStream.readInt();
+        String name = inputStream.readUTF();
+        String descriptor = inputStream.readUTF();
+        String signature = inputStream.readUTF();
+        return new MethodDetails(access, name, descriptor, signature.isEmpty() ? null : signature, readStrings(inputStream), readStrings(inputStream));
+    }
+
+    static FieldDetails readField(DataInputStream inputStream) throws IOException {
+        int access = inputStream.readInt();
+        String name = inputStream.readUTF();
+        String descriptor = inputStream.readUTF();
+        String signature = inputStream.readUTF();
+        return new FieldDetails(access, name, descriptor, signature.isEmpty() ? null : signature, readStrings(inputStream));
+    }
+
+    /**
+     * Reads the store file in order, and resolves each public API class. Reads from the channel of the store, so there
+     * is nothing to close when the iterator is abandoned before the end.
+     */
+    private class ApiClassIterator implements Iterator<ClassDetails> {
+        private final DataInputStream inputStream = new DataInputStream(new ChannelInputStream(channel));
+        private ClassDetails next;
+        private boolean done;
+
+        @Override
+        public boolean hasNext() {
+            if (next == null && !done) {
+                try {
+                    next = advance();
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+                done = next == null;
+            }
+            return next != null;
+        }
+
+        @Override
+        public ClassDetails next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            ClassDetails result = next;
+            next = null;
+            return result;
+        }
+
+        private ClassDetails advance() throws IOException {
+            while (true) {
+                String name;
+                try {
+                    name = inputStream.readUTF();
+                } catch (EOFException e) {
+                    return null;
+                }
+                inputStream.readInt();
+                List<ParsedClass> records = readGroup(name, inputStream);
+                ParsedClass last = records.get(records.size() - 1);
+                if (!last.isApiType() || Visibility.fromAccessField(last.getAccess()) != Visibility.Public) {
+                    continue;
+                }
+                ClassDetails details = resolve(name, records);
+                if (details != null) {
+                    return details;
+                }
+            }
+        }
+
+        /**
+         * Resolves the given class in a set that contains only the class and its super types.
+         */
+        private ClassDetails resolve(String name, List<ParsedClass> records) throws IOException {
+            ClassSet classes = new ClassSet();
+            Set<String> seen = new HashSet<>();
+            Deque<String> queue = new ArrayDeque<>();
+            seen.add(name);
+            queue.add(name);
+            while (!queue.isEmpty()) {
+                String current = queue.pop();
+                List<ParsedClass> currentRecords = current.equals(name) ? records : load(current);
+                if (currentRecords == null) {
+                    continue;
+                }
+                classes.addAll(currentRecords);
+                for (ParsedClass record : currentRecords) {
+                    if (record.getSuperName() != null && seen.add(record.getSuperName())) {
+                        queue.add(record.getSuperName());
+                    }
+                    for (String interfaceName : record.getInterfaces()) {
+                        if (seen.add(interfaceName)) {
+                            queue.add(interfaceName);
+                        }
+                    }
+                }
+            }
+            classes.resolveSuperTypes(Collections.singleton(name));
+            return classes.getVisibleApiClasses().get(name);
+        }
+    }
+
+    /**
+     * Collects the classes of a distribution into sorted run files, then merges them into a {@link ClassStore}.
+     */
+    public static class Builder {
+        private static final Comparator<Record> BY_NAME = Comparator.comparing(record -> record.name);
+
+        private final File dir;
+        private final long memoryBudget;
+        private final List<Record> buffer = new ArrayList<>();
+        private final List<File> runs = new ArrayList<>();
+        private final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        private long bufferSize;
+
+        private Builder(File dir, long memoryBudget) {
+            this.dir = dir;
+            this.memoryBudget = memoryBudget;
+        }
+
+        /**
+         * Adds the given classes, which take precedence over the classes already added.
+         */
+        public void addAll(Iterable<ParsedClass> parsedClasses) throws IOException {
+            for (ParsedClass parsedClass : parsedClasses) {
+                bytes.reset();
+                writeClass(parsedClass, new DataOutputStream(bytes));
+                Record record = new Record(parsedClass.getName(), bytes.toByteArray());
+                buffer.add(record);
+                bufferSize += record.size();
+                // Half of the budget is used to buffer classes, leaving the remainder for the classes being parsed
+                if (bufferSize > memoryBudget / 2) {
+                    spill();
+                }
+            }
+        }
+
+        /**
+         * Merges the classes added so far into a store. The run files are deleted, as is the store file when the store is
+         * closed.
+         */
+        public ClassStore build() throws IOException {
+            return build(null);
+        }
+
+        /**
+         * Merges the classes added so far into a store written to the given file, which is kept when the store is
+         * closed. The run files are deleted.
+         */
+        public ClassStore build(File file) throws IOException {
+            if (!buffer.isEmpty() || runs.isEmpty()) {
+                spill();
+            }
+            List<File> inputs = new ArrayList<>(runs);
+            runs.clear();
+            try {
+                while (inputs.size() > MAX_MERGE_WIDTH) {
+                    List<File> merged = new ArrayList<>();
+                    for (int i = 0; i < inputs.size(); i += MAX_MERGE_WIDTH) {
+                        List<File> batch = inputs.subList(i, Math.min(inputs.size(), i + MAX_MERGE_WIDTH));
+                        File run = File.createTempFile("run", ".bin", dir);
+                        merged.add(run);
+                        try (DataOutputStream outputStream = open(run)) {
+                            merge(batch, records -> {
+                                for (Record record : records) {
+                                    record.write(outputStream);
+                                }
+                            });
+                            outputStream.writeBoolean(false);
+                        }
+                        delete(batch);
+                    }
+                    inputs = merged;
+                }
+                return writeStore(inputs, file);
+            } finally {
+                delete(inputs);
+            }
+        }
+
+        private ClassStore writeStore(List<File> inputs, File target) throws IOException {
+            File file = target != null ? target : File.createTempFile("classes", ".bin", dir);
+            List<String> indexNames = new ArrayList<>();
+            long[][] indexOffsets = {new long[64]};
+            try {
+                CountingOutputStream counter = new CountingOutputStream(new BufferedOutputStream(new FileOutputStream(file), BUFFER_SIZE));
+                try (DataOutputStream outputStream = new DataOutputStream(counter)) {
+                    int[] groups = {0};
+                    merge(inputs, records -> {
+                        String name = records.get(0).name;
+                        if (groups[0] % INDEX_INTERVAL == 0) {
+                            if (indexNames.size() == indexOffsets[0].length) {
+                                indexOffsets[0] = Arrays.copyOf(indexOffsets[0], indexOffsets[0].length * 2);
+                            }
+                            indexOffsets[0][indexNames.size()] = counter.count;
+                            indexNames.add(name);
+                        }
+                        groups[0]++;
+                        int length = 4;
+                        for (Record record : records) {
+                            length += record.content.length;
+                        }
+                        outputStream.writeUTF(name);
+                        outputStream.writeInt(length);
+                        outputStream.writeInt(records.size());
+                        for (Record record : records) {
+                            outputStream.write(record.content);
+                        }
+                    });
+                }
+                // A quarter of the budget for each of the stores being compared
+                return new ClassStore(file, indexNames, Arrays.copyOf(indexOffsets[0], indexNames.size()), memoryBudget / 4, target == null);
+            } catch (IOException | RuntimeException e) {
+                file.delete();
+                throw e;
+            }
+        }
+
+        /**
+         * Merges the given runs, and passes the records of each class to the given consumer, in class name order.
+         * The records of a class are passed in the order they were added.
+         */
+        private static void merge(List<File> inputs, GroupConsumer consumer) throws IOException {
+            List<RunReader> readers = new ArrayList<>();
+            try {
+                PriorityQueue<RunReader> queue = new PriorityQueue<>(Math.max(1, inputs.size()), (a, b) -> {
+                    int comparison = a.current.name.compareTo(b.current.name);
+                    return comparison != 0 ? comparison : Integer.compare(a.index, b.index);
+                });
+                for (File input : inputs) {
+                    RunReader reader = new RunReader(input, readers.size());
+                    readers.add(reader);
+                    if (reader.advance()) {
+                        queue.add(reader);
+                    }
+                }
+                List<Record> group = new ArrayList<>();
+                while (!queue.isEmpty()) {
+                    RunReader reader = queue.poll();
+                    if (!group.isEmpty() && !group.get(0).name.equals(reader.current.name)) {
+                        consumer.accept(group);
+                        group.clear();
+                    }
+                    group.add(reader.current);
+                    if (reader.advance()) {
+                        queue.add(reader);
+                    }
+                }
+                if (!group.isEmpty()) {
+                    consumer.accept(group);
+                }
+            } finally {
+                for (RunReader reader : readers) {
+                    reader.close();
+                }
+            }
+        }
+
+        private void spill() throws IOException {
+            // A stable sort, so the records of each class remain in the order they were added
+            buffer.sort(BY_NAME);
+            File run = File.createTempFile("run", ".bin", dir);
+            runs.add(run);
+            try (DataOutputStream outputStream = open(run)) {
+                for (Record record : buffer) {
+                    record.write(outputStream);
+                }
+                outputStream.writeBoolean(false);
+            }
+            buffer.clear();
+            bufferSize = 0;
+        }
+
+        private static DataOutputStream open(File file) throws IOException {
+            return new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file), BUFFER_SIZE));
+        }
+
+        private static void delete(List<File> files) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+    }
+
+    private interface GroupConsumer {
+        void accept(List<Record> records) throws IOException;
+    }
+
+    /**
+     * The encoded details of a class, held in a run.
+     */
+    private static class Record {
+        final String name;
+        final byte[] content;
+
+        Record(String name, byte[] content) {
+            this.name = name;
+            this.content = content;
+        }
+
+        long size() {
+            return 64 + name.length() * 2 + content.length;
+        }
+
+        void write(DataOutputStream outputStream) throws IOException {
+            outputStream.writeBoolean(true);
+            outputStream.writeUTF(name);
+            outputStream.writeInt(content.length);
+            outputStream.write(content);
+        }
+    }
+
+    private static class RunReader implements Closeable {
+        final int index;
+        private final DataInputStream inputStream;
+        Record current;
+
+        RunReader(File file, int index) throws IOException {
+            this.index = index;
+            this.inputStream = new DataInputStream(new BufferedInputStream(new FileInputStream(file), BUFFER_SIZE));
+        }
+
+        boolean advance() throws IOException {
+            if (!inputStream.readBoolean()) {
+                current = null;
+                return false;
+            }
+            String name = inputStream.readUTF();
+            byte[] content = new byte[inputStream.readInt()];
+            inputStream.readFully(content);
+            current = new Record(name, content);
+            return true;
+        }
+
+        @Override
+        public void close() throws IOException {
+            inputStream.close();
+        }
+    }
+
+    /**
+     * Counts the bytes written, so that the offset of each class can be recorded in the index.
+     */
+    private static class CountingOutputStream extends FilterOutputStream {
+        long count;
+
+        CountingOutputStream(OutputStream outputStream) {
+            super(outputStream);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            count += len;
+        }
+    }
+
+    /**
+     * Reads the store file from a given position. The same buffer is used for every read, rather than allocating a
+     * buffer for each class that is loaded. Each stream keeps its own position, so several streams can read from the
+     * same channel.
+     */
+    private static class ChannelInputStream extends InputStream {
+        private final FileChannel channel;
+        private final ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+        // The position of the end of the buffered content
+        private long position;
+
+        ChannelInputStream(FileChannel channel) {
+            this.channel = channel;
+            buffer.limit(0);
+        }
+
+        void seek(long position) {
+            this.position = position;
+            buffer.limit(0);
+        }
+
+        @Override
+        public int read() throws IOException {
+            return fill() ? buffer.get() & 0xff : -1;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) {
+                return 0;
+            }
+            if (!fill()) {
+                return -1;
+            }
+            int count = Math.min(len, buffer.remaining());
+            buffer.get(b, off, count);
+            return count;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            if (n <= buffer.remaining()) {
+                int count = (int) Math.max(n, 0);
+                buffer.position(buffer.position() + count);
+                return count;
+            }
+            long buffered = buffer.remaining();
+            long count = Math.max(Math.min(n - buffered, channel.size() - position), 0);
+            seek(position + count);
+            return buffered + count;
+        }
+
+        private boolean fill() throws IOException {
+            if (buffer.hasRemaining()) {
+                return true;
+            }
+            buffer.clear();
+            int count = 0;
+            while (count == 0) {
+                count = channel.read(buffer, position);
+            }
+            buffer.flip();
+            if (count < 0) {
+                return false;
+            }
+            position += count;
+            return true;
+        }
+    }
+}
@@ -0,0 +1,149 @@
+package net.rubygrapefruit;
+
+import java.util.AbstractCollection;
+import java.util.AbstractSet;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.function.IntFunction;
+
+/**
+ * A read-only set of public API classes, stored in the columnar form of an {@link ApiSnapshot} rather than as objects.
+ * The snapshot is either memory mapped from a file, or held in a direct buffer outside the heap.
+ *
+ * <p>The {@link ApiClass}, {@link MethodDetails} and {@link FieldDetails} returned by this set are flyweights, created
+ * on demand as they are visited and not retained by the set. Each class holds only its visible members, including
+ * inherited members.</p>
+ */
+public class CompactClassSet implements ApiModel {
+    private final ApiSnapshot snapshot;
+    private final Collection<ApiClass> apiClasses = new AbstractCollection<ApiClass>() {
+        @Override
+        public Iterator<ApiClass> iterator() {
+            return new IndexIterator<>(snapshot.getClassCount(), CompactClass::new);
+        }
+
+        @Override
+        public int size() {
+            return snapshot.getClassCount();
+        }
+    };
+
+    public CompactClassSet(ApiSnapshot snapshot) {
+        this.snapshot = snapshot;
+    }
+
+    /**
+     * Creates a compact copy of the public API classes of the given set, which should already be resolved.
+     */
+    public static CompactClassSet of(ClassSet classes) {
+        return new CompactClassSet(ApiSnapshot.of(classes));
+    }
+
+    @Override
+    public Collection<ApiClass> getApiClasses() {
+        return apiClasses;
+    }
+
+    @Override
+    public ApiClass findApiClass(String name) {
+        int index = snapshot.findClass(name);
+        return index < 0 ? null : new CompactClass(index);
+    }
+
+    private class CompactClass implements ApiClass {
+        private final int index;
+
+        CompactClass(int index) {
+            this.index = index;
+        }
+
+        @Override
+        public String getName() {
+            return snapshot.getClassName(index);
+        }
+
+        @Override
+        public int getAccess() {
+            return snapshot.getClassAccess(index);
+        }
+
+        @Override
+        public long getFingerprint() {
+            return snapshot.getFingerprint(index);
+        }
+
+        @Override
+        public String getSuperName() {
+            return snapshot.getSuperName(index);
+        }
+
+        @Override
+        public Collection<String> getInterfaceNames() {
+            return new IndexSet<>(snapshot.getInterfaceCount(index), interfaceIndex -> snapshot.getInterfaceName(index, interfaceIndex));
+        }
+
+        @Override
+        public Set<MethodDetails> getVisibleMethods() {
+            return new IndexSet<>(snapshot.getMethodCount(index), methodIndex -> snapshot.getMethod(index, methodIndex));
+        }
+
+        @Override
+        public Set<FieldDetails> getVisibleFields() {
+            return new IndexSet<>(snapshot.getFieldCount(index), fieldIndex -> snapshot.getField(index, fieldIndex));
+        }
+
+        @Override
+        public String toString() {
+            return ApiClass.displayName(getName());
+        }
+    }
+
+    /**
+     * A set whose elements are created on demand, in index order. The elements are stored in sorted order.
+     */
+    private static class IndexSet<T> extends AbstractSet<T> {
+        private final int size;
+        private final IntFunction<T> factory;
+
+        IndexSet(int size, IntFunction<T> factory) {
+            this.size = size;
+            this.factory = factory;
+        }
+
+        @Override
+        public Iterator<T> iterator() {
+            return new IndexIterator<>(size, factory);
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+    }
+
+    private static class IndexIterator<T> implements Iterator<T> {
+        private final int size;
+        private final IntFunction<T> factory;
+        private int next;
+
+        IndexIterator(int size, IntFunction<T> factory) {
+            this.size = size;
+            this.factory = factory;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return next < size;
+        }
+
+        @Override
+        public T next() {
+            if (next >= size) {
+                throw new NoSuchElementException();
+            }
+            return factory.apply(next++);
+        }
+    }
+}
@@ -0,0 +1,378 @@
+package net.rubygrapefruit;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+
+/**
+ * A file of {@link DiffListener} events, written by one process and replayed by another.
+ *
+ * <p>The events are grouped by class. Each group starts with a class event, such as {@code classChanged}, followed by
+ * the member events of the class. The group is keyed by the name of the class before the change, or by the name of the
+ * added class, so that the groups of several files can be merged into class name order. Each class event is written
+ * with the resolved API of its classes, so that moves can be found once all of the files have been written and so that
+ * a replayed event carries the same details as the original event.</p>
+ */
+class DiffEventLog {
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final int END = 0;
+    private static final int CLASS_REMOVED = 1;
+    private static final int CLASS_ADDED = 2;
+    private static final int CLASS_MOVED = 3;
+    private static final int CLASS_UNCHANGED = 4;
+    private static final int CLASS_CHANGED = 5;
+    private static final int SUPER_CLASS_CHANGED = 6;
+    private static final int INTERFACE_ADDED = 7;
+    private static final int INTERFACE_REMOVED = 8;
+    private static final int METHOD_ADDED = 9;
+    private static final int METHOD_REMOVED = 10;
+    private static final int METHOD_SIGNATURE_CHANGED = 11;
+    private static final int FIELD_ADDED = 12;
+    private static final int FIELD_REMOVED = 13;
+
+    private static boolean isClassEvent(int type) {
+        return type == END || type <= CLASS_CHANGED;
+    }
+
+    /**
+     * Writes the events it receives to a file. {@link #close()} must be called once the comparison has completed.
+     */
+    static class Writer extends DiffListener implements Closeable {
+        private final DataOutputStream outputStream;
+
+        Writer(File file) throws IOException {
+            outputStream = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file), BUFFER_SIZE));
+        }
+
+        @Override
+        public void classRemoved(ApiClass details) {
+            writeClass(CLASS_REMOVED, details);
+        }
+
+        @Override
+        public void classAdded(ApiClass details) {
+            writeClass(CLASS_ADDED, details);
+        }
+
+        @Override
+        public void classMoved(ApiClass before, ApiClass after) {
+            writeClasses(CLASS_MOVED, before, after);
+        }
+
+        @Override
+        public void classUnchanged(ApiClass details) {
+            writeClass(CLASS_UNCHANGED, details);
+        }
+
+        @Override
+        public void classChanged(ApiClass before, ApiClass after) {
+            writeClasses(CLASS_CHANGED, before, after);
+        }
+
+        @Override
+        public void superClassChanged(ApiClass before, ApiClass after) {
+            write(SUPER_CLASS_CHANGED);
+        }
+
+        @Override
+        public void interfaceAdded(ApiClass before, ApiClass after, ClassDetails addedInterface) {
+            write(INTERFACE_ADDED, addedInterface.getName());
+        }
+
+        @Override
+        public void interfaceRemoved(ApiClass before, ApiClass after, ClassDetails removedInterface) {
+            write(INTERFACE_REMOVED, removedInterface.getName());
+        }
+
+        @Override
+        public void methodAdded(ApiClass before, ApiClass after, MethodDetails addedMethod) {
+            try {
+                outputStream.writeByte(METHOD_ADDED);
+                ClassStore.writeMethod(addedMethod, outputStream);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        @Override
+        public void methodRemoved(ApiClass before, ApiClass after, MethodDetails removedMethod) {
+            try {
+                outputStream.writeByte(METHOD_REMOVED);
+                ClassStore.writeMethod(removedMethod, outputStream);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        @Override
+        public void methodSignatureChanged(ApiClass before, ApiClass after, MethodDetails removedMethod, MethodDetails addedMethod) {
+            try {
+                outputStream.writeByte(METHOD_SIGNATURE_CHANGED);
+                ClassStore.writeMethod(removedMethod, outputStream);
+                ClassStore.writeMethod(addedMethod, outputStream);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        @Override
+        public void fieldAdded(ApiClass before, ApiClass after, FieldDetails addedField) {
+            try {
+                outputStream.writeByte(FIELD_ADDED);
+                ClassStore.writeField(addedField, outputStream);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        @Override
+        public void fieldRemoved(ApiClass before, ApiClass after, FieldDetails removedField) {
+            try {
+                outputStream.writeByte(FIELD_REMOVED);
+                ClassStore.writeField(removedField, outputStream);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                outputStream.writeByte(END);
+            } finally {
+                outputStream.close();
+            }
+        }
+
+        private void writeClass(int type, ApiClass details) {
+            try {
+                outputStream.writeByte(type);
+                writeDetails(details);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        private void writeClasses(int type, ApiClass before, ApiClass after) {
+            try {
+                outputStream.writeByte(type);
+                writeDetails(before);
+                writeDetails(after);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        /**
+         * Writes the given class with its resolved API, as a class that has already been resolved.
+         */
+        private void writeDetails(ApiClass details) throws IOException {
+            ParsedClass parsedClass = new ParsedClass(details.getName(), details.getAccess(), details.getSuperName(),
+                    details.getInterfaceNames().toArray(new String[0]));
+            for (MethodDetails method : details.getVisibleMethods()) {
+                parsedClass.addMethod(method);
+            }
+            for (FieldDetails field : details.getVisibleFields()) {
+                parsedClass.addField(field);
+            }
+            outputStream.writeUTF(details.getName());
+            ClassStore.writeClass(parsedClass, outputStream);
+        }
+
+        private void write(int type, String... values) {
+            try {
+                outputStream.writeByte(type);
+                for (String value : values) {
+                    outputStream.writeUTF(value);
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+
+    /**
+     * Reads the groups of events from a file, one group at a time.
+     */
+    static class Reader implements Closeable {
+        private final DataInputStream inputStream;
+        private int type;
+        private String name;
+        private ParsedClass parsedClass;
+        private ParsedClass newParsedClass;
+        private boolean replayed;
+
+        Reader(File file) throws IOException {
+            inputStream = new DataInputStream(new BufferedInputStream(new FileInputStream(file), BUFFER_SIZE));
+            type = inputStream.readUnsignedByte();
+            replayed = true;
+        }
+
+        /**
+         * Advances to the next group. Returns false when there are no more groups. The member events of the current
+         * group are skipped when they have not been replayed.
+         */
+        boolean next() throws IOException {
+            if (!replayed) {
+                replay(null);
+            }
+            if (type == END) {
+                return false;
+            }
+            name = inputStream.readUTF();
+            parsedClass = ClassStore.readClass(name, inputStream);
+            newParsedClass = null;
+            switch (type) {
+                case CLASS_REMOVED:
+                case CLASS_ADDED:
+                case CLASS_UNCHANGED:
+                    break;
+                case CLASS_MOVED:
+                case CLASS_CHANGED:
+                    newParsedClass = ClassStore.readClass(inputStream.readUTF(), inputStream);
+                    break;
+                default:
+                    throw new IOException(String.format("Unexpected event %s for class %s", type, name));
+            }
+            replayed = false;
+            return true;
+        }
+
+        /**
+         * Returns the name that the current group is ordered by.
+         */
+        String getName() {
+            return name;
+        }
+
+        boolean isRemoved() {
+            return type == CLASS_REMOVED;
+        }
+
+        boolean isAdded() {
+            return type == CLASS_ADDED;
+        }
+
+        /**
+         * Returns the class removed or added by the current group, with its resolved API.
+         */
+        ClassDetails getDetails() {
+            return details(parsedClass);
+        }
+
+        /**
+         * Sends the events of the current group to the given listener, or skips them when the listener is null.
+         */
+        void replay(DiffListener listener) throws IOException {
+            replayed = true;
+            ClassDetails before = null;
+            ClassDetails after = null;
+            if (listener != null) {
+                switch (type) {
+                    case CLASS_REMOVED:
+                        listener.classRemoved(getDetails());
+                        break;
+                    case CLASS_ADDED:
+                        listener.classAdded(getDetails());
+                        break;
+                    case CLASS_MOVED:
+                        before = details(parsedClass);
+                        after = details(newParsedClass);
+                        listener.classMoved(before, after);
+                        break;
+                    case CLASS_UNCHANGED:
+                        listener.classUnchanged(getDetails());
+                        break;
+                    case CLASS_CHANGED:
+                        before = details(parsedClass);
+                        after = details(newParsedClass);
+                        listener.classChanged(before, after);
+                        break;
+                }
+            }
+            while (true) {
+                type = inputStream.readUnsignedByte();
+                if (isClassEvent(type)) {
+                    return;
+                }
+                switch (type) {
+                    case SUPER_CLASS_CHANGED:
+                        if (listener != null) {
+                            listener.superClassChanged(before, after);
+                        }
+                        break;
+                    case INTERFACE_ADDED: {
+                        String interfaceName = inputStream.readUTF();
+                        if (listener != null) {
+                            listener.interfaceAdded(before, after, new ClassDetails(interfaceName));
+                        }
+                        break;
+                    }
+                    case INTERFACE_REMOVED: {
+                        String interfaceName = inputStream.readUTF();
+                        if (listener != null) {
+                            listener.interfaceRemoved(before, after, new ClassDetails(interfaceName));
+                        }
+                        break;
+                    }
+                    case METHOD_ADDED: {
+                        MethodDetails method = ClassStore.readMethod(inputStream);
+                        if (listener != null) {
+                            listener.methodAdded(before, after, method);
+                        }
+                        break;
+                    }
+                    case METHOD_REMOVED: {
+                        MethodDetails method = ClassStore.readMethod(inputStream);
+                        if (listener != null) {
+                            listener.methodRemoved(before, after, method);
+                        }
+                        break;
+                    }
+                    case METHOD_SIGNATURE_CHANGED: {
+                        MethodDetails removedMethod = ClassStore.readMethod(inputStream);
+                        MethodDetails addedMethod = ClassStore.readMethod(inputStream);
+                        if (listener != null) {
+                            listener.methodSignatureChanged(before, after, removedMethod, addedMethod);
+                        }
+                        break;
+                    }
+                    case FIELD_ADDED: {
+                        FieldDetails field = ClassStore.readField(inputStream);
+                        if (listener != null) {
+                            listener.fieldAdded(before, after, field);
+                        }
+                        break;
+                    }
+                    case FIELD_REMOVED: {
+                        FieldDetails field = ClassStore.readField(inputStream);
+                        if (listener != null) {
+                            listener.fieldRemoved(before, after, field);
+                        }
+                        break;
+                    }
+                    default:
+                        throw new IOException(String.format("Unexpected event %s for class %s", type, name));
+                }
+            }
+        }
+
+        private static ClassDetails details(ParsedClass parsedClass) {
+            ClassSet classes = new ClassSet();
+            classes.addApiClass(parsedClass);
+            return classes.get(parsedClass.getName());
+        }
+
+        @Override
+        public void close() throws IOException {
+            inputStream.close();
+        }
+    }
+}
@@ -1,36 +1,63 @@
 package net.rubygrapefruit;
 
+import java.io.File;
+
 public class DiffListener {
-    public void classAdded(ClassDetails details) {
+    /**
+     * Called when comparing a series of releases, before the changes between two adjacent releases are reported.
+     */
+    public void releaseStarted(File before, File after) {
+    }
+
+    public void classAdded(ApiClass details) {
+    }
+
+    public void classRemoved(ApiClass details) {
+    }
+
+    /**
+     * Called when a removed class and an added class look like the same class under a new name. By default, reports
+     * the class as removed and the new class as added. When the API of the class has also changed, the changes are
+     * reported after this method is called, as for any other changed class.
+     */
+    public void classMoved(ApiClass before, ApiClass after) {
+        classRemoved(before);
+        classAdded(after);
     }
 
-    public void classRemoved(ClassDetails details) {
+    public void classUnchanged(ApiClass details) {
     }
 
-    public void classUnchanged(ClassDetails details) {
+    public void classChanged(ApiClass before, ApiClass after) {
     }
 
-    public void classChanged(ClassDetails before, ClassDetails after) {
+    public void superClassChanged(ApiClass before, ApiClass after) {
     }
 
-    public void superClassChanged(ClassDetails before, ClassDetails after) {
+    public void interfaceAdded(ApiClass before, ApiClass after, ClassDetails addedInterface) {
     }
 
-    public void interfaceAdded(ClassDetails before, ClassDetails after, ClassDetails addedInterface) {
+    public void interfaceRemoved(ApiClass before, ApiClass after, ClassDetails removedInterface) {
     }
 
-    public void interfaceRemoved(ClassDetails before, ClassDetails after, ClassDetails removedInterface) {
+    public void methodAdded(ApiClass before, ApiClass after, MethodDetails addedMethod) {
     }
 
-    public void methodAdded(ClassDetails before, ClassDetails after, MethodDetails addedMethod) {
+    public void methodRemoved(ApiClass before, ApiClass after, MethodDetails removedMethod) {
     }
 
-    public void methodRemoved(ClassDetails before, ClassDetails after, MethodDetails removedMethod) {
+    /**
+     * Called when a removed method and an added method look like the same method with a different signature. By
+     * default, reports the method as removed and the new method as added.
+     */
+    public void methodSignatureChanged(ApiClass before, ApiClass after, MethodDetails removedMethod, MethodDetails addedMethod) {
+        methodRemoved(before, after, removedMethod);
+        methodAdded(before, after, addedMethod);
     }
 
-    public void fieldAdded(ClassDetails before, ClassDetails after, FieldDetails addedField) {
+    public void fieldAdded(ApiClass before, ApiClass after, FieldDetails addedField) {
     }
 
-    public void fieldRemoved(ClassDetails before, ClassDetails after, FieldDetails removedField) {
+    public void fieldRemoved(ApiClass before, ApiClass after, FieldDetails removedField) {
     }
 }
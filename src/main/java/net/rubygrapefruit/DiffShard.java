@@ -0,0 +1,197 @@
+package net.rubygrapefruit;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the classes owned by one shard of a sharded comparison, and writes the changes to a {@link DiffEventLog}.
+ * Each shard runs in its own process, and the shards of a comparison share a work directory.
+ *
+ * <p>Classes are assigned to shards by package, so that the classes of a package are always compared by the same shard.
+ * Each shard runs in two phases:</p>
+ *
+ * <ol>
+ * <li>Parses the classes it owns from each distribution, skipping the class files of other shards without reading them,
+ * and writes them to a {@link ClassStore} in the work directory. These stores make up the super type summary.</li>
+ * <li>Waits for the stores of the other shards, then loads the super types it does not own from those stores, resolves
+ * the public API classes it owns, and compares them. Moves are not detected, as the removed and added classes of all
+ * shards are needed to find them.</li>
+ * </ol>
+ */
+public class DiffShard {
+    private static final long SUMMARY_TIMEOUT = TimeUnit.MINUTES.toMillis(30);
+    private static final long POLL_INTERVAL = 20;
+
+    private final int index;
+    private final int count;
+    private final File workDir;
+    private final JarInspector jarInspector;
+
+    /**
+     * @param jarInspector The inspector to parse jars with. Its shard is set to this shard.
+     */
+    public DiffShard(int index, int count, File workDir, JarInspector jarInspector) {
+        if (index < 0 || index >= count) {
+            throw new IllegalArgumentException(String.format("Shard %s is not one of %s shards", index, count));
+        }
+        this.index = index;
+        this.count = count;
+        this.workDir = workDir;
+        this.jarInspector = jarInspector;
+        jarInspector.setShard(index, count);
+    }
+
+    /**
+     * Returns the shard that owns the given class, given either its name or the name of its class file.
+     */
+    public static int owner(String name, int count) {
+        int end = name.lastIndexOf('/');
+        int hash = 0;
+        for (int i = 0; i < end; i++) {
+            hash = 31 * hash + name.charAt(i);
+        }
+        return Math.floorMod(hash, count);
+    }
+
+    static File eventsFile(File workDir, int index) {
+        return new File(workDir, "events-" + index + ".bin");
+    }
+
+    private static File summaryFile(File workDir, String distro, int index) {
+        return new File(workDir, distro + "-" + index + ".bin");
+    }
+
+    /**
+     * Returns the directory that the given shard writes its temporary files to, such as the run files of its stores.
+     * The directory is separate for each shard.
+     */
+    static File scratchDir(File workDir, int index) {
+        return new File(workDir, "shard-" + index);
+    }
+
+    private static File tempFile(File file) {
+        return new File(file.getParentFile(), file.getName() + ".tmp");
+    }
+
+    /**
+     * Compares the classes owned by this shard, and writes the changes to the events file of this shard.
+     */
+    public void run(File before, File after) throws IOException {
+        List<ParsedClass> ownedBefore = inspect(before, "before");
+        List<ParsedClass> ownedAfter = inspect(after, "after");
+        ClassSet classesBefore = resolve(ownedBefore, "before");
+        ClassSet classesAfter = resolve(ownedAfter, "after");
+        File events = eventsFile(workDir, index);
+        File tempFile = tempFile(events);
+        try (DiffEventLog.Writer writer = new DiffEventLog.Writer(tempFile)) {
+            ApiDiff diff = new ApiDiff(writer);
+            diff.setDetectMoves(false);
+            diff.diff(classesBefore, classesAfter);
+        }
+        Files.move(tempFile.toPath(), events.toPath(), StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Parses the classes of the given distribution owned by this shard, and publishes them for the other shards.
+     */
+    private List<ParsedClass> inspect(File distro, String name) throws IOException {
+        List<ParsedClass> owned = new ArrayList<>();
+        jarInspector.inspectJars(DistributionInspector.jars(distro), owned::addAll);
+
+        // Written under another name, then moved, so that other shards never see a partial store
+        File summary = summaryFile(workDir, name, index);
+        File tempFile = tempFile(summary);
+        File scratchDir = scratchDir(workDir, index);
+        scratchDir.mkdirs();
+        ClassStore.Builder builder = ClassStore.builder(scratchDir, Runtime.getRuntime().maxMemory() / 4);
+        builder.addAll(owned);
+        builder.build(tempFile).close();
+        Files.move(tempFile.toPath(), summary.toPath(), StandardCopyOption.ATOMIC_MOVE);
+        return owned;
+    }
+
+    /**
+     * Resolves the public API classes owned by this shard, loading their super types owned by other shards from the
+     * stores of those shards.
+     */
+    private ClassSet resolve(List<ParsedClass> owned, String name) throws IOException {
+        ClassSet classes = new ClassSet();
+        classes.addAll(owned);
+        Set<String> ownedNames = new LinkedHashSet<>();
+        Set<String> seen = new HashSet<>();
+        Deque<String> queue = new ArrayDeque<>();
+        for (ParsedClass parsedClass : owned) {
+            ownedNames.add(parsedClass.getName());
+            queueSuperTypes(parsedClass, seen, queue);
+        }
+
+        ClassStore[] summaries = new ClassStore[count];
+        try {
+            while (!queue.isEmpty()) {
+                String current = queue.pop();
+                int owner = owner(current, count);
+                if (summaries[owner] == null) {
+                    File summary = summaryFile(workDir, name, owner);
+                    awaitSummary(summary);
+                    summaries[owner] = ClassStore.open(summary, Runtime.getRuntime().maxMemory() / 8);
+                }
+                List<ParsedClass> records = summaries[owner].load(current);
+                if (records == null) {
+                    // Not part of the distribution, such as a JDK class
+                    continue;
+                }
+                classes.addAll(records);
+                for (ParsedClass record : records) {
+                    queueSuperTypes(record, seen, queue);
+                }
+            }
+        } finally {
+            for (ClassStore summary : summaries) {
+                if (summary != null) {
+                    summary.close();
+                }
+            }
+        }
+        classes.resolveSuperTypes(ownedNames);
+        return classes;
+    }
+
+    /**
+     * Queues the super types of the given class that are owned by other shards.
+     */
+    private void queueSuperTypes(ParsedClass parsedClass, Set<String> seen, Deque<String> queue) {
+        if (parsedClass.getSuperName() != null && owner(parsedClass.getSuperName(), count) != index && seen.add(parsedClass.getSuperName())) {
+            queue.add(parsedClass.getSuperName());
+        }
+        for (String interfaceName : parsedClass.getInterfaces()) {
+            if (owner(interfaceName, count) != index && seen.add(interfaceName)) {
+                queue.add(interfaceName);
+            }
+        }
+    }
+
+    private static void awaitSummary(File summary) throws IOException {
+        long deadline = System.currentTimeMillis() + SUMMARY_TIMEOUT;
+        while (!summary.isFile()) {
+            if (System.currentTimeMillis() > deadline) {
+                throw new IOException(String.format("Timed out waiting for %s", summary));
+            }
+            try {
+                Thread.sleep(POLL_INTERVAL);
+            } catch (InterruptedException e) {
+                throw new IOException(String.format("Interrupted while waiting for %s", summary), e);
+            }
+        }
+    }
+}
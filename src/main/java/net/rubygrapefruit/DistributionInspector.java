@@ -0,0 +1,145 @@
+package net.rubygrapefruit;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Loads the public API of a distribution, given either the distribution's install directory or an {@link ApiSnapshot}
+ * of the distribution.
+ */
+public class DistributionInspector {
+    private final JarInspector jarInspector;
+    private MetricsListener metricsListener;
+    private Cancellation cancellation;
+    private boolean compact;
+
+    public DistributionInspector(JarInspector jarInspector) {
+        this.jarInspector = jarInspector;
+    }
+
+    /**
+     * Sets the listener to receive the cost of inspecting each jar and of each phase, or null to not measure.
+     */
+    public void setMetricsListener(MetricsListener metricsListener) {
+        this.metricsListener = metricsListener;
+        jarInspector.setMetricsListener(metricsListener);
+    }
+
+    /**
+     * Sets the cancellation to check before each jar is parsed and before resolving, or null to not check.
+     */
+    public void setCancellation(Cancellation cancellation) {
+        this.cancellation = cancellation;
+        jarInspector.setCancellation(cancellation);
+    }
+
+    /**
+     * When true, returns each distribution as a {@link CompactClassSet}, which uses much less heap. The default is
+     * false.
+     */
+    public void setCompact(boolean compact) {
+        this.compact = compact;
+    }
+
+    public ApiModel inspect(File distro) throws IOException {
+        if (ApiSnapshot.isSnapshot(distro)) {
+            ApiSnapshot snapshot = ApiSnapshot.open(distro);
+            return compact ? new CompactClassSet(snapshot) : snapshot.toClassSet();
+        }
+        ClassSet classes = inspectDistribution(distro);
+        return compact ? CompactClassSet.of(classes) : classes;
+    }
+
+    /**
+     * Loads the given distribution or snapshot as a {@link ClassSet}, regardless of {@link #setCompact(boolean)}.
+     */
+    public ClassSet inspectClasses(File distro) throws IOException {
+        if (ApiSnapshot.isSnapshot(distro)) {
+            return ApiSnapshot.open(distro).toClassSet();
+        }
+        return inspectDistribution(distro);
+    }
+
+    /**
+     * Loads the classes of the given distribution into a {@link ClassStore}, holding at most the given number of bytes
+     * of classes in memory at once. Jars are inspected one at a time.
+     */
+    public ClassStore inspectToStore(File distro, File dir, long memoryBudget) throws IOException {
+        ClassStore.Builder builder = ClassStore.builder(dir, memoryBudget);
+        if (ApiSnapshot.isSnapshot(distro)) {
+            ApiSnapshot snapshot = ApiSnapshot.open(distro);
+            for (int i = 0; i < snapshot.getClassCount(); i++) {
+                ParsedClass parsedClass = snapshot.getClass(i);
+                parsedClass.setApiType(true);
+                builder.addAll(Collections.singleton(parsedClass));
+            }
+        } else {
+            for (File jar : jars(distro)) {
+                builder.addAll(jarInspector.inspectJar(jar));
+            }
+        }
+        if (cancellation != null) {
+            cancellation.checkNotCancelled();
+        }
+        return builder.build();
+    }
+
+    private ClassSet inspectDistribution(File distro) throws IOException {
+        ClassSet classes = new ClassSet();
+        jarInspector.inspectJars(distro, jars(distro), classes);
+        if (cancellation != null) {
+            cancellation.checkNotCancelled();
+        }
+        if (metricsListener == null) {
+            classes.resolveSuperTypes();
+            return classes;
+        }
+        Metrics.Timer timer = Metrics.startAll();
+        classes.resolveSuperTypes();
+        Collection<ClassDetails> apiClasses = classes.getVisibleApiClasses().values();
+        metricsListener.phaseCompleted(timer.stop("resolve", distro, apiClasses.size(), countMembers(apiClasses), 0));
+        return classes;
+    }
+
+    /**
+     * Returns the number of visible members of the given classes, including inherited members.
+     */
+    static long countMembers(Collection<? extends ApiClass> classes) {
+        long members = 0;
+        for (ApiClass details : classes) {
+            members += details.getVisibleMethods().size() + details.getVisibleFields().size();
+        }
+        return members;
+    }
+
+    /**
+     * Returns the jars of the given distribution directory, in the order they should be inspected.
+     */
+    public static List<File> jars(File distro) throws IOException {
+        if (!distro.isDirectory()) {
+            throw new IllegalArgumentException(String.format("Directory %s does not exist", distro));
+        }
+
+        File libDir = new File(distro, "lib");
+        if (!libDir.isDirectory()) {
+            throw new IllegalArgumentException( String.format("Distribution %s does not contain a lib/ directory", distro));
+        }
+        File pluginsDir = new File(libDir, "plugins");
+        if (!pluginsDir.isDirectory()) {
+            throw new IllegalArgumentException( String.format("Distribution %s does not contain a lib/plugins/ directory", distro));
+        }
+
+        List<File> jars = new ArrayList<>();
+        for (File jar : JarInspector.jars(libDir)) {
+            if (!jar.equals(pluginsDir)) {
+                jars.add(jar);
+            }
+        }
+        jars.addAll(JarInspector.jars(pluginsDir));
+        return jars;
+    }
+}
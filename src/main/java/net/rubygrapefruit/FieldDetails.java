@@ -1,19 +1,109 @@
 package net.rubygrapefruit;
 
+import org.objectweb.asm.Opcodes;
+
+/**
+ * The details of a field. Fields are identified by name and descriptor. The generic signature and annotations are
+ * canonical instances from {@link Symbols}, so that fields with the same metadata share it.
+ */
 public class FieldDetails implements Comparable<FieldDetails> {
     private final String name;
     private final String descriptor;
     private final int access;
+    private final String genericSignature;
+    private final String[] annotations;
+    private final int hashCode;
+    private final long fingerprint;
 
     public FieldDetails(int access, String name, String descriptor) {
+        this(access, name, descriptor, null, null);
+    }
+
+    /**
+     * @param genericSignature The generic signature, or null when the field has none.
+     * @param annotations The descriptors of the annotations, or null when there are none.
+     */
+    public FieldDetails(int access, String name, String descriptor, String genericSignature, String[] annotations) {
+        this.access = access;
+        this.name = Symbols.intern(name);
+        this.descriptor = Symbols.intern(descriptor);
+        this.genericSignature = Symbols.intern(genericSignature);
+        this.annotations = Symbols.intern(annotations);
+        this.hashCode = this.name.hashCode() ^ this.descriptor.hashCode();
+        this.fingerprint = Symbols.hash64(this.name, this.descriptor, ' ');
+    }
+
+    /**
+     * Creates a field from values that are already canonical instances from {@link Symbols}, with a fingerprint
+     * calculated by {@link #getFingerprint()} when the field was stored.
+     */
+    FieldDetails(int access, String name, String descriptor, String genericSignature, String[] annotations, long fingerprint) {
         this.access = access;
         this.name = name;
         this.descriptor = descriptor;
+        this.genericSignature = genericSignature;
+        this.annotations = annotations;
+        this.hashCode = name.hashCode() ^ descriptor.hashCode();
+        this.fingerprint = fingerprint;
     }
 
+    @Override
+    public boolean equals(Object obj) {
+        if (obj == this) {
+            return true;
+        }
+        if (!(obj instanceof FieldDetails)) {
+            return false;
+        }
+        FieldDetails other = (FieldDetails) obj;
+        return hashCode == other.hashCode && name.equals(other.name) && descriptor.equals(other.descriptor);
+    }
+
+    @Override
+    public int hashCode() {
+        return hashCode;
+    }
+
+    /**
+     * Orders fields by signature.
+     */
     @Override
     public int compareTo(FieldDetails o) {
-        return getSignature().compareTo(o.getSignature());
+        return Symbols.compare(name, descriptor, o.name, o.descriptor, ' ');
+    }
+
+    /**
+     * Returns the generic signature of this field, or null when it has none.
+     */
+    public String getGenericSignature() {
+        return genericSignature;
+    }
+
+    /**
+     * Returns the descriptors of the annotations of this field, of any retention. The array must not be modified.
+     */
+    public String[] getAnnotations() {
+        return annotations;
+    }
+
+    public boolean hasAnnotation(String descriptor) {
+        for (String annotation : annotations) {
+            if (annotation.equals(descriptor)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public boolean isDeprecated() {
+        return (access & Opcodes.ACC_DEPRECATED) != 0;
+    }
+
+    /**
+     * Returns a 64 bit hash of the signature of this field. Does not include the other details of the field.
+     */
+    public long getFingerprint() {
+        return fingerprint;
     }
 
     public String getSignature() {
@@ -30,7 +120,15 @@ public class FieldDetails implements Comparable<FieldDetails> {
         return getSignature();
     }
 
+    public int getAccess() {
+        return access;
+    }
+
     public String getName() {
         return name;
     }
+
+    public String getDescriptor() {
+        return descriptor;
+    }
 }
@@ -0,0 +1,188 @@
+package net.rubygrapefruit;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Semaphore;
+import java.util.function.Consumer;
+
+/**
+ * Compares each release in a series of releases with the release before it. Each release is loaded only once.
+ *
+ * <p>When a pool is provided, releases are loaded and adjacent releases are compared in parallel, holding at most the
+ * given number of release models in memory at once. The changes for each pair of releases are reported to the
+ * listener on the calling thread, in release order.</p>
+ */
+public class HistoryChecker {
+    private final DistributionInspector inspector;
+    private final ForkJoinPool pool;
+    private final int maxModels;
+
+    public HistoryChecker(DistributionInspector inspector, ForkJoinPool pool, int maxModels) {
+        if (maxModels < 2) {
+            throw new IllegalArgumentException("At least 2 models must be held in memory to compare releases.");
+        }
+        this.inspector = inspector;
+        this.pool = pool;
+        this.maxModels = maxModels;
+    }
+
+    /**
+     * Reports the changes made in each release, and returns the index of when each class and member was introduced
+     * and removed.
+     *
+     * @param releases The distributions or snapshots to compare, oldest first.
+     */
+    public ApiHistory check(List<File> releases, DiffListener listener) throws IOException {
+        if (releases.size() < 2) {
+            throw new IllegalArgumentException("At least 2 releases are required.");
+        }
+        Executor executor = pool != null ? pool : Runnable::run;
+        Semaphore models = new Semaphore(maxModels);
+        ApiHistory history = new ApiHistory();
+        List<CompletableFuture<Changes>> pairs = new ArrayList<>();
+        int reported = 0;
+
+        CompletableFuture<ApiModel> previous = null;
+        CompletableFuture<Changes> previousPair = null;
+        for (int i = 0; i < releases.size(); i++) {
+            reported = report(pairs, reported, false, history, listener);
+            models.acquireUninterruptibly();
+
+            File after = releases.get(i);
+            CompletableFuture<ApiModel> model = CompletableFuture.supplyAsync(() -> inspect(after), executor);
+            if (previous != null) {
+                File before = releases.get(i - 1);
+                boolean first = i == 1;
+                CompletableFuture<Changes> pair = previous.thenCombine(model, (classesBefore, classesAfter) -> {
+                    if (first) {
+                        history.addFirstRelease(before, classesBefore);
+                    }
+                    Changes changes = new Changes(before, after);
+                    new ApiDiff(changes).diff(classesBefore, classesAfter);
+                    return changes;
+                });
+                pairs.add(pair);
+
+                // The previous model is no longer required once it has been compared with both of its neighbours
+                CompletableFuture<?> done = previousPair == null ? pair : CompletableFuture.allOf(previousPair, pair);
+                done.whenComplete((result, failure) -> models.release());
+                previousPair = pair;
+            }
+            previous = model;
+        }
+        previousPair.whenComplete((result, failure) -> models.release());
+
+        report(pairs, reported, true, history, listener);
+        return history;
+    }
+
+    private ApiModel inspect(File release) {
+        try {
+            return inspector.inspect(release);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Reports the changes for the completed pairs, starting at the given pair and stopping at the first pair that has
+     * not completed, unless asked to wait.
+     */
+    private int report(List<CompletableFuture<Changes>> pairs, int next, boolean wait, ApiHistory history, DiffListener listener) throws IOException {
+        while (next < pairs.size() && (wait || pairs.get(next).isDone())) {
+            Changes changes = ApiChecker.await(pairs.get(next));
+            listener.releaseStarted(changes.before, changes.after);
+            changes.replay(listener);
+            changes.replay(history.changesIn(changes.after));
+            next++;
+        }
+        return next;
+    }
+
+    /**
+     * Collects the changes between a pair of releases, so they can be reported later in release order. Unchanged
+     * classes are not collected.
+     */
+    private static class Changes extends DiffListener {
+        private final File before;
+        private final File after;
+        private final List<Consumer<DiffListener>> events = new ArrayList<>();
+
+        Changes(File before, File after) {
+            this.before = before;
+            this.after = after;
+        }
+
+        void replay(DiffListener listener) {
+            for (Consumer<DiffListener> event : events) {
+                event.accept(listener);
+            }
+        }
+
+        @Override
+        public void classAdded(ApiClass details) {
+            events.add(listener -> listener.classAdded(details));
+        }
+
+        @Override
+        public void classRemoved(ApiClass details) {
+            events.add(listener -> listener.classRemoved(details));
+        }
+
+        @Override
+        public void classMoved(ApiClass before, ApiClass after) {
+            events.add(listener -> listener.classMoved(before, after));
+        }
+
+        @Override
+        public void classChanged(ApiClass before, ApiClass after) {
+            events.add(listener -> listener.classChanged(before, after));
+        }
+
+        @Override
+        public void superClassChanged(ApiClass before, ApiClass after) {
+            events.add(listener -> listener.superClassChanged(before, after));
+        }
+
+        @Override
+        public void interfaceAdded(ApiClass before, ApiClass after, ClassDetails addedInterface) {
+            events.add(listener -> listener.interfaceAdded(before, after, addedInterface));
+        }
+
+        @Override
+        public void interfaceRemoved(ApiClass before, ApiClass after, ClassDetails removedInterface) {
+            events.add(listener -> listener.interfaceRemoved(before, after, removedInterface));
+        }
+
+        @Override
+        public void methodAdded(ApiClass before, ApiClass after, MethodDetails addedMethod) {
+            events.add(listener -> listener.methodAdded(before, after, addedMethod));
+        }
+
+        @Override
+        public void methodRemoved(ApiClass before, ApiClass after, MethodDetails removedMethod) {
+            events.add(listener -> listener.methodRemoved(before, after, removedMethod));
+        }
+
+        @Override
+        public void methodSignatureChanged(ApiClass before, ApiClass after, MethodDetails removedMethod, MethodDetails addedMethod) {
+            events.add(listener -> listener.methodSignatureChanged(before, after, removedMethod, addedMethod));
+        }
+
+        @Override
+        public void fieldAdded(ApiClass before, ApiClass after, FieldDetails addedField) {
+            events.add(listener -> listener.fieldAdded(before, after, addedField));
+        }
+
+        @Override
+        public void fieldRemoved(ApiClass before, ApiClass after, FieldDetails removedField) {
+            events.add(listener -> listener.fieldRemoved(before, after, removedField));
+        }
+    }
+}
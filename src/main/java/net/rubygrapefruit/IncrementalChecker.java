@@ -0,0 +1,178 @@
+package net.rubygrapefruit;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Compares a distribution with the same distribution as it was at the previous check, reusing the stored model of the
+ * previous check.
+ *
+ * <p>Only the jars whose content has changed since the previous check are parsed. The classes of those jars, and all
+ * classes that inherit from them, are resolved and compared. Everything else is assumed to be unchanged and is not
+ * reported.</p>
+ */
+public class IncrementalChecker {
+    private static final String MANIFEST = "manifest.txt";
+
+    private final File stateDir;
+    private final JarInspector jarInspector;
+    private final JarCache models;
+    private Cancellation cancellation;
+
+    public IncrementalChecker(File stateDir, JarInspector jarInspector) {
+        this.stateDir = stateDir;
+        this.jarInspector = jarInspector;
+        this.models = new JarCache(new File(stateDir, "jars"), Long.MAX_VALUE);
+    }
+
+    /**
+     * Sets the cancellation used to stop the comparison at the next class, or null to always compare every class. The
+     * distribution is still recorded for the next check when the comparison stops early.
+     */
+    public void setCancellation(Cancellation cancellation) {
+        this.cancellation = cancellation;
+    }
+
+    /**
+     * Reports the changes made to the given distribution since the previous check, then records the distribution for
+     * the next check.
+     *
+     * @return false when there is no usable model from a previous check, in which case nothing is reported.
+     */
+    public boolean check(File distro, DiffListener listener) throws IOException {
+        Map<String, String> previous = readManifest();
+        Map<String, String> current = new LinkedHashMap<>();
+        Map<String, File> jarsByPath = new LinkedHashMap<>();
+        Map<String, List<ParsedClass>> contentsByPath = new HashMap<>();
+        Map<String, List<ParsedClass>> previousContentsByPath = new HashMap<>();
+        Set<String> changedClasses = new HashSet<>();
+        boolean complete = previous != null;
+
+        // Only the jars that have changed are loaded here, as most checks find that nothing has changed
+        for (File jar : DistributionInspector.jars(distro)) {
+            String path = distro.toPath().relativize(jar.toPath()).toString();
+            String key = jarInspector.cacheKey(models, jar);
+            current.put(path, key);
+            jarsByPath.put(path, jar);
+            if (previous == null || !key.equals(previous.get(path))) {
+                List<ParsedClass> contents = contents(jar, key);
+                contentsByPath.put(path, contents);
+                if (previous != null) {
+                    addNames(contents, changedClasses);
+                }
+            }
+        }
+
+        if (previous != null) {
+            for (Map.Entry<String, String> entry : previous.entrySet()) {
+                if (entry.getValue().equals(current.get(entry.getKey()))) {
+                    continue;
+                }
+                List<ParsedClass> contents = models.load(entry.getValue());
+                if (contents == null) {
+                    complete = false;
+                    break;
+                }
+                previousContentsByPath.put(entry.getKey(), contents);
+                addNames(contents, changedClasses);
+            }
+        }
+
+        // When no jar has changed there is nothing to report, so the unchanged jars are not loaded and the models are
+        // not built
+        if (complete && !changedClasses.isEmpty()) {
+            ClassSet classesAfter = new ClassSet();
+            for (Map.Entry<String, File> entry : jarsByPath.entrySet()) {
+                List<ParsedClass> contents = contentsByPath.get(entry.getKey());
+                if (contents == null) {
+                    contents = contents(entry.getValue(), current.get(entry.getKey()));
+                    contentsByPath.put(entry.getKey(), contents);
+                }
+                classesAfter.addAll(contents);
+            }
+            ClassSet classesBefore = new ClassSet();
+            for (String path : previous.keySet()) {
+                List<ParsedClass> contents = previousContentsByPath.get(path);
+                if (contents == null) {
+                    // Unchanged, so reuse the contents already loaded rather than decoding the entry again
+                    contents = contentsByPath.get(path);
+                }
+                classesBefore.addAll(contents);
+            }
+
+            Set<String> affected = classesBefore.withSubtypes(changedClasses);
+            affected.addAll(classesAfter.withSubtypes(changedClasses));
+            classesBefore.resolveSuperTypes(affected);
+            classesAfter.resolveSuperTypes(affected);
+            new ApiDiff(listener, cancellation).diff(classesBefore, classesAfter);
+        }
+
+        writeManifest(current);
+        models.retain(new HashSet<>(current.values()));
+        return complete;
+    }
+
+    /**
+     * Returns the classes of the given jar, from its stored model when there is one.
+     */
+    private List<ParsedClass> contents(File jar, String key) throws IOException {
+        List<ParsedClass> contents = models.load(key);
+        if (contents == null) {
+            contents = jarInspector.inspectJar(jar);
+            models.store(key, contents);
+        }
+        return contents;
+    }
+
+    private static void addNames(List<ParsedClass> contents, Set<String> names) {
+        for (ParsedClass parsedClass : contents) {
+            names.add(parsedClass.getName());
+        }
+    }
+
+    /**
+     * Returns the jars of the previous check, mapped to the key of their content, or null when there was no previous check.
+     */
+    private Map<String, String> readManifest() throws IOException {
+        File manifest = new File(stateDir, MANIFEST);
+        if (!manifest.isFile()) {
+            return null;
+        }
+        Map<String, String> jars = new LinkedHashMap<>();
+        for (String line : Files.readAllLines(manifest.toPath(), StandardCharsets.UTF_8)) {
+            int separator = line.indexOf(' ');
+            if (separator < 0) {
+                return null;
+            }
+            jars.put(line.substring(separator + 1), line.substring(0, separator));
+        }
+        return jars;
+    }
+
+    private void writeManifest(Map<String, String> jars) throws IOException {
+        stateDir.mkdirs();
+        File manifest = new File(stateDir, MANIFEST);
+        File tempFile = File.createTempFile(MANIFEST, ".tmp", stateDir);
+        try {
+            Writer writer = new OutputStreamWriter(new FileOutputStream(tempFile), StandardCharsets.UTF_8);
+            try {
+                for (Map.Entry<String, String> entry : jars.entrySet()) {
+                    writer.write(entry.getValue() + ' ' + entry.getKey() + '\n');
+                }
+            } finally {
+                writer.close();
+            }
+            Files.move(tempFile.toPath(), manifest.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            tempFile.delete();
+        }
+    }
+}
@@ -0,0 +1,344 @@
+package net.rubygrapefruit;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+/**
+ * An on-disk cache of the classes parsed from a jar, keyed by the hash of the jar's content. Can be shared by
+ * concurrent threads and processes.
+ *
+ * <p>Each entry is written to a temporary file and then moved into place, and carries a checksum, so a partially
+ * written or corrupt entry is discarded rather than used. When the total size of the entries exceeds the limit, the
+ * least recently used entries are removed, along with any temporary files left behind by a process that did not
+ * complete.</p>
+ */
+public class JarCache {
+    private static final int MAGIC = 0x41504943;
+    private static final int VERSION = 5;
+    private static final String ENTRY_SUFFIX = ".bin";
+    private static final String TEMP_SUFFIX = ".tmp";
+    // Temporary files older than this were left behind by a process that did not complete
+    private static final long STALE_TEMP_FILE_AGE = TimeUnit.HOURS.toMillis(1);
+
+    private final File cacheDir;
+    private final long maxSize;
+    private long currentSize = -1;
+
+    public JarCache(File cacheDir, long maxSize) {
+        this.cacheDir = cacheDir;
+        this.maxSize = maxSize;
+    }
+
+    /**
+     * Calculates the cache key for the given jar or class directory.
+     */
+    public String key(File jar) throws IOException {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-1");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+        byte[] buffer = new byte[64 * 1024];
+        if (jar.isDirectory()) {
+            // A class directory: hash the path and content of each file
+            List<Path> files;
+            try (Stream<Path> paths = Files.walk(jar.toPath())) {
+                files = paths.filter(Files::isRegularFile).sorted().collect(Collectors.toList());
+            }
+            for (Path file : files) {
+                digest.update(jar.toPath().relativize(file).toString().replace(File.separatorChar, '/').getBytes(StandardCharsets.UTF_8));
+                digest.update((byte) 0);
+                update(digest, file.toFile(), buffer);
+            }
+        } else {
+            update(digest, jar, buffer);
+        }
+        StringBuilder key = new StringBuilder();
+        for (byte b : digest.digest()) {
+            key.append(Character.forDigit((b >> 4) & 0xf, 16));
+            key.append(Character.forDigit(b & 0xf, 16));
+        }
+        return key.toString();
+    }
+
+    private static void update(MessageDigest digest, File file, byte[] buffer) throws IOException {
+        InputStream inputStream = new FileInputStream(file);
+        try {
+            int nread;
+            while ((nread = inputStream.read(buffer)) > 0) {
+                digest.update(buffer, 0, nread);
+            }
+        } finally {
+            inputStream.close();
+        }
+    }
+
+    /**
+     * Returns the classes for the given key, or null when not cached or the entry cannot be read.
+     */
+    public List<ParsedClass> load(String key) {
+        File file = new File(cacheDir, key + ENTRY_SUFFIX);
+        byte[] content;
+        try {
+            content = Files.readAllBytes(file.toPath());
+        } catch (IOException e) {
+            return null;
+        }
+        List<ParsedClass> classes = decode(content);
+        if (classes == null) {
+            // Discard the entry so that it is replaced
+            if (file.delete()) {
+                adjustSize(-content.length);
+            }
+            return null;
+        }
+        file.setLastModified(System.currentTimeMillis());
+        return classes;
+    }
+
+    /**
+     * Stores the classes for the given key, replacing any existing entry.
+     */
+    public void store(String key, List<ParsedClass> classes) throws IOException {
+        byte[] content = encode(classes);
+        cacheDir.mkdirs();
+        File file = new File(cacheDir, key + ENTRY_SUFFIX);
+        File tempFile = File.createTempFile(key, TEMP_SUFFIX, cacheDir);
+        long replaced;
+        try {
+            Files.write(tempFile.toPath(), content);
+            // Zero when there is no existing entry
+            replaced = file.length();
+            Files.move(tempFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            tempFile.delete();
+        }
+        adjustSize(content.length - replaced);
+    }
+
+    /**
+     * Removes all entries except those with the given keys.
+     */
+    public synchronized void retain(Collection<String> keys) {
+        for (File file : entries()) {
+            String name = file.getName();
+            if (!keys.contains(name.substring(0, name.length() - ENTRY_SUFFIX.length()))) {
+                file.delete();
+            }
+        }
+        currentSize = -1;
+    }
+
+    private synchronized void adjustSize(long delta) {
+        if (currentSize < 0) {
+            currentSize = 0;
+            for (File file : entries()) {
+                currentSize += file.length();
+            }
+        } else {
+            currentSize += delta;
+        }
+        if (currentSize > maxSize) {
+            evict();
+        }
+    }
+
+    private void evict() {
+        File[] tempFiles = cacheDir.listFiles((dir, name) -> name.endsWith(TEMP_SUFFIX));
+        if (tempFiles != null) {
+            long staleBefore = System.currentTimeMillis() - STALE_TEMP_FILE_AGE;
+            for (File tempFile : tempFiles) {
+                if (tempFile.lastModified() < staleBefore) {
+                    tempFile.delete();
+                }
+            }
+        }
+
+        File[] files = entries();
+        Arrays.sort(files, Comparator.comparingLong(File::lastModified));
+        long size = 0;
+        for (File file : files) {
+            size += file.length();
+        }
+        for (int i = 0; i < files.length && size > maxSize; i++) {
+            long length = files[i].length();
+            if (files[i].delete()) {
+                size -= length;
+            }
+        }
+        currentSize = size;
+    }
+
+    private File[] entries() {
+        File[] files = cacheDir.listFiles((dir, name) -> name.endsWith(ENTRY_SUFFIX));
+        return files == null ? new File[0] : files;
+    }
+
+    private static byte[] encode(List<ParsedClass> classes) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream outputStream = new DataOutputStream(bytes);
+        outputStream.writeInt(MAGIC);
+        outputStream.writeInt(VERSION);
+        StringTableWriter strings = new StringTableWriter(outputStream);
+        outputStream.writeInt(classes.size());
+        for (ParsedClass parsedClass : classes) {
+            strings.write(parsedClass.getName());
+            outputStream.writeInt(parsedClass.getAccess());
+            outputStream.writeBoolean(parsedClass.isApiType());
+            strings.write(parsedClass.getSuperName());
+            outputStream.writeInt(parsedClass.getInterfaces().length);
+            for (String name : parsedClass.getInterfaces()) {
+                strings.write(name);
+            }
+            outputStream.writeInt(parsedClass.getMethods().size());
+            for (MethodDetails method : parsedClass.getMethods()) {
+                outputStream.writeInt(method.getAccess());
+                strings.write(method.getName());
+                strings.write(method.getDescriptor());
+                strings.write(method.getGenericSignature());
+                strings.writeAll(method.getExceptions());
+                strings.writeAll(method.getAnnotations());
+            }
+            outputStream.writeInt(parsedClass.getFields().size());
+            for (FieldDetails field : parsedClass.getFields()) {
+                outputStream.writeInt(field.getAccess());
+                strings.write(field.getName());
+                strings.write(field.getDescriptor());
+                strings.write(field.getGenericSignature());
+                strings.writeAll(field.getAnnotations());
+            }
+        }
+        CRC32 crc = new CRC32();
+        crc.update(bytes.toByteArray());
+        outputStream.writeLong(crc.getValue());
+        outputStream.flush();
+        return bytes.toByteArray();
+    }
+
+    private static List<ParsedClass> decode(byte[] content) {
+        if (content.length < 8) {
+            return null;
+        }
+        CRC32 crc = new CRC32();
+        crc.update(content, 0, content.length - 8);
+        DataInputStream inputStream = new DataInputStream(new ByteArrayInputStream(content));
+        try {
+            inputStream.skipBytes(content.length - 8);
+            if (inputStream.readLong() != crc.getValue()) {
+                return null;
+            }
+            inputStream = new DataInputStream(new ByteArrayInputStream(content, 0, content.length - 8));
+            if (inputStream.readInt() != MAGIC || inputStream.readInt() != VERSION) {
+                return null;
+            }
+            StringTableReader strings = new StringTableReader(inputStream);
+            int classCount = inputStream.readInt();
+            List<ParsedClass> classes = new ArrayList<>(classCount);
+            for (int i = 0; i < classCount; i++) {
+                String name = strings.read();
+                int access = inputStream.readInt();
+                boolean apiType = inputStream.readBoolean();
+                String superName = strings.read();
+                String[] interfaces = new String[inputStream.readInt()];
+                for (int j = 0; j < interfaces.length; j++) {
+                    interfaces[j] = strings.read();
+                }
+                ParsedClass parsedClass = new ParsedClass(name, access, superName, interfaces);
+                parsedClass.setApiType(apiType);
+                int methodCount = inputStream.readInt();
+                for (int j = 0; j < methodCount; j++) {
+                    parsedClass.addMethod(new MethodDetails(inputStream.readInt(), strings.read(), strings.read(), strings.read(), strings.readAll(), strings.readAll()));
+                }
+                int fieldCount = inputStream.readInt();
+                for (int j = 0; j < fieldCount; j++) {
+                    parsedClass.addField(new FieldDetails(inputStream.readInt(), strings.read(), strings.read(), strings.read(), strings.readAll()));
+                }
+                classes.add(parsedClass);
+            }
+            return classes;
+        } catch (IOException | RuntimeException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Writes each distinct string once, and later occurrences as a reference to the first.
+     */
+    private static class StringTableWriter {
+        private final DataOutputStream outputStream;
+        private final Map<String, Integer> strings = new HashMap<>();
+
+        StringTableWriter(DataOutputStream outputStream) {
+            this.outputStream = outputStream;
+        }
+
+        void write(String value) throws IOException {
+            if (value == null) {
+                outputStream.writeInt(-1);
+                return;
+            }
+            Integer index = strings.get(value);
+            if (index != null) {
+                outputStream.writeInt(index);
+                return;
+            }
+            strings.put(value, strings.size());
+            outputStream.writeInt(-2);
+            outputStream.writeUTF(value);
+        }
+
+        void writeAll(String[] values) throws IOException {
+            outputStream.writeInt(values.length);
+            for (String value : values) {
+                write(value);
+            }
+        }
+    }
+
+    private static class StringTableReader {
+        private final DataInputStream inputStream;
+        private final List<String> strings = new ArrayList<>();
+
+        StringTableReader(DataInputStream inputStream) {
+            this.inputStream = inputStream;
+        }
+
+        String read() throws IOException {
+            int index = inputStream.readInt();
+            if (index == -1) {
+                return null;
+            }
+            if (index == -2) {
+                String value = inputStream.readUTF();
+                strings.add(value);
+                return value;
+            }
+            return strings.get(index);
+        }
+
+        String[] readAll() throws IOException {
+            String[] values = new String[inputStream.readInt()];
+            for (int i = 0; i < values.length; i++) {
+                values[i] = read();
+            }
+            return values;
+        }
+    }
+}
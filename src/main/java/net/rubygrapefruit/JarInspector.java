@@ -0,0 +1,471 @@
+package net.rubygrapefruit;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.Semaphore;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+import java.util.stream.Stream;
+
+/**
+ * Reads the classes from the jars of a distribution into a {@link ClassSet}.
+ *
+ * <p>When given a pool, jars are parsed concurrently, and the entries of large jars are also parsed concurrently. The
+ * results are always merged into the {@link ClassSet} in the same order as a sequential run, so that the resulting
+ * model does not depend on scheduling.</p>
+ *
+ * <p>When given read threads, jars and class files are read on those threads and parsed on the pool, as a pipeline. The
+ * content of each jar is read in one piece, and the class files of a class directory are read concurrently, so that
+ * waiting for slow storage overlaps with parsing.</p>
+ */
+public class JarInspector {
+    /**
+     * Jars with fewer class entries than this are parsed on a single thread.
+     */
+    private static final int PARALLEL_ENTRY_THRESHOLD = 64;
+    /**
+     * The maximum number of bytes read by the read threads that have not yet been parsed.
+     */
+    private static final long READ_BUFFER_SIZE = 64 * 1024 * 1024;
+
+    private final ForkJoinPool pool;
+    private final JarCache cache;
+    private ApiRules rules = ApiRules.defaults();
+    private MetricsListener metricsListener;
+    private Cancellation cancellation;
+    private int shard;
+    private int shardCount = 1;
+    private int readThreads;
+    private boolean allMembers;
+
+    /**
+     * @param pool The pool to parse jars on, or null to parse on the calling thread.
+     * @param cache The cache to use for parsed jars, or null to always parse jars.
+     */
+    public JarInspector(ForkJoinPool pool, JarCache cache) {
+        this.pool = pool;
+        this.cache = cache;
+    }
+
+    /**
+     * Sets the rules that decide which classes and members are part of the public API.
+     */
+    public void setRules(ApiRules rules) {
+        this.rules = rules;
+    }
+
+    /**
+     * When true, records the members of every class rather than only those that can contribute to the public API, as
+     * required to find the classes reachable from the public API. The default is false.
+     */
+    public void setAllMembers(boolean allMembers) {
+        this.allMembers = allMembers;
+    }
+
+    /**
+     * Sets the listener to receive the cost of inspecting each jar, or null to not measure.
+     */
+    public void setMetricsListener(MetricsListener metricsListener) {
+        this.metricsListener = metricsListener;
+    }
+
+    /**
+     * Sets the cancellation to check before each jar and class is parsed, or null to not check.
+     */
+    public void setCancellation(Cancellation cancellation) {
+        this.cancellation = cancellation;
+    }
+
+    /**
+     * Inspects only the classes owned by the given shard, as decided by {@link DiffShard#owner(String, int)}. Class
+     * files owned by other shards are skipped without being read. The default is a single shard that owns every class.
+     */
+    public void setShard(int shard, int shardCount) {
+        this.shard = shard;
+        this.shardCount = shardCount;
+    }
+
+    /**
+     * Sets the number of threads to read jars and class files on, or 0 to read each jar on the thread that parses it.
+     * The default is 0. When set, the read threads stop reading once 64MB have been read but not yet parsed, until the
+     * parsers catch up. As the work for a jar is spread across threads, the cost of each jar is reported to the metrics
+     * listener as the time from starting to read the jar until its last class is parsed, without its allocations.
+     */
+    public void setReadThreads(int readThreads) {
+        this.readThreads = readThreads;
+    }
+
+    /**
+     * Returns the jars and class directories in the given directory, sorted by name.
+     */
+    public static List<File> jars(File libDir) throws IOException {
+        File[] files = libDir.listFiles();
+        if (files == null) {
+            throw new IOException(String.format("Could not list the contents of %s", libDir));
+        }
+        Arrays.sort(files);
+        List<File> jars = new ArrayList<>();
+        for (File file : files) {
+            if (file.isFile() || file.isDirectory()) {
+                jars.add(file);
+            }
+        }
+        return jars;
+    }
+
+    public void inspectDir(File libDir, ClassSet classes) throws IOException {
+        inspectJars(libDir, jars(libDir), classes);
+    }
+
+    /**
+     * Inspects the given jars, and merges their contents into the given set in the order given.
+     */
+    public void inspectJars(List<File> jars, ClassSet classes) throws IOException {
+        inspectJars(null, jars, classes);
+    }
+
+    /**
+     * Inspects the given jars, and merges their contents into the given set in the order given.
+     *
+     * @param target The directory or distribution that contains the jars, used to report metrics.
+     */
+    void inspectJars(File target, List<File> jars, ClassSet classes) throws IOException {
+        if (metricsListener == null) {
+            inspectJars(jars, classes::addAll);
+            return;
+        }
+        Metrics.Timer timer = Metrics.startAll();
+        long[] counts = new long[3];
+        inspectJars(jars, contents -> {
+            classes.addAll(contents);
+            counts[0] += contents.size();
+            counts[1] += countMembers(contents);
+        });
+        for (File jar : jars) {
+            counts[2] += size(jar);
+        }
+        metricsListener.phaseCompleted(timer.stop("inspect", target, counts[0], counts[1], counts[2]));
+    }
+
+    /**
+     * Inspects the given jars, and passes their contents to the given consumer in the order given.
+     */
+    void inspectJars(List<File> jars, Consumer<List<ParsedClass>> consumer) throws IOException {
+        if (readThreads > 0) {
+            pipelineJars(jars, consumer);
+            return;
+        }
+        if (pool == null) {
+            for (File jar : jars) {
+                consumer.accept(inspectJar(jar));
+            }
+            return;
+        }
+
+        List<ForkJoinTask<List<ParsedClass>>> tasks = new ArrayList<>(jars.size());
+        for (File jar : jars) {
+            tasks.add(pool.submit(() -> {
+                try {
+                    return inspectJar(jar);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }));
+        }
+        for (ForkJoinTask<List<ParsedClass>> task : tasks) {
+            consumer.accept(join(task));
+        }
+    }
+
+    /**
+     * Inspects the given jars using the read threads and the pool, and passes their contents to the given consumer in
+     * the order given.
+     */
+    private void pipelineJars(List<File> jars, Consumer<List<ParsedClass>> consumer) throws IOException {
+        ExecutorService readers = Executors.newFixedThreadPool(readThreads, runnable -> {
+            Thread thread = new Thread(runnable, "class file reader");
+            thread.setDaemon(true);
+            return thread;
+        });
+        try {
+            ReadBuffer buffer = new ReadBuffer(READ_BUFFER_SIZE);
+            // Without a pool, each class is parsed by the thread that read it
+            Executor parsers = pool != null ? pool : Runnable::run;
+            List<CompletableFuture<List<ParsedClass>>> results = new ArrayList<>(jars.size());
+            for (File jar : jars) {
+                Metrics.Timer[] timer = new Metrics.Timer[1];
+                CompletableFuture<List<ParsedClass>> inspected = CompletableFuture.supplyAsync(() -> {
+                    checkNotCancelled();
+                    if (metricsListener != null) {
+                        timer[0] = Metrics.startWall();
+                    }
+                    try {
+                        return cache == null ? null : cacheKey(cache, jar);
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                }, readers).thenCompose(key -> {
+                    List<ParsedClass> cached = key == null ? null : cache.load(key);
+                    if (cached != null) {
+                        return CompletableFuture.completedFuture(cached);
+                    }
+                    CompletableFuture<List<ParsedClass>> result = readJar(jar, readers, parsers, buffer);
+                    return key == null ? result : result.thenApplyAsync(classes -> {
+                        try {
+                            cache.store(key, classes);
+                        } catch (IOException e) {
+                            throw new UncheckedIOException(e);
+                        }
+                        return classes;
+                    }, readers);
+                });
+                if (metricsListener != null) {
+                    inspected = inspected.thenApply(classes -> {
+                        try {
+                            metricsListener.jarInspected(timer[0].stop("jar", jar, classes.size(), countMembers(classes), size(jar)));
+                        } catch (IOException e) {
+                            throw new UncheckedIOException(e);
+                        }
+                        return classes;
+                    });
+                }
+                results.add(inspected);
+            }
+            for (CompletableFuture<List<ParsedClass>> result : results) {
+                consumer.accept(ApiChecker.await(result));
+            }
+        } finally {
+            readers.shutdownNow();
+        }
+    }
+
+    private CompletableFuture<List<ParsedClass>> readJar(File file, ExecutorService readers, Executor parsers, ReadBuffer buffer) {
+        ApiRules jarRules = rules.forModule(file.getName());
+        Predicate<String> filter = shardFilter();
+        if (!file.isDirectory()) {
+            return CompletableFuture.supplyAsync(() -> buffer.read(file.toPath()), readers).thenApplyAsync(content -> {
+                try (ClassArchive archive = ClassArchive.open(file, content.bytes, jarRules, filter)) {
+                    archive.setAllMembers(allMembers);
+                    return parseArchive(archive);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                } finally {
+                    buffer.release(content);
+                }
+            }, parsers);
+        }
+
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                return ClassArchive.classFiles(file.toPath(), filter);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }, readers).thenCompose(files -> {
+            List<CompletableFuture<ParsedClass>> classes = new ArrayList<>(files.size());
+            for (Path path : files) {
+                classes.add(CompletableFuture.supplyAsync(() -> buffer.read(path), readers).thenApplyAsync(content -> {
+                    try {
+                        checkNotCancelled();
+                        return ClassParser.parse(content.bytes, 0, content.bytes.length, jarRules, allMembers);
+                    } finally {
+                        buffer.release(content);
+                    }
+                }, parsers));
+            }
+            return CompletableFuture.allOf(classes.toArray(new CompletableFuture<?>[0])).thenApply(ignored -> {
+                List<ParsedClass> result = new ArrayList<>(classes.size());
+                for (CompletableFuture<ParsedClass> parsedClass : classes) {
+                    if (parsedClass.join() != null) {
+                        result.add(parsedClass.join());
+                    }
+                }
+                return result;
+            });
+        });
+    }
+
+    public List<ParsedClass> inspectJar(File file) throws IOException {
+        checkNotCancelled();
+        if (metricsListener == null) {
+            return doInspectJar(file);
+        }
+        Metrics.Timer timer = Metrics.startThread();
+        List<ParsedClass> result = doInspectJar(file);
+        metricsListener.jarInspected(timer.stop("jar", file, result.size(), countMembers(result), size(file)));
+        return result;
+    }
+
+    private static long size(File file) throws IOException {
+        if (!file.isDirectory()) {
+            return file.length();
+        }
+        try (Stream<Path> paths = Files.walk(file.toPath())) {
+            return paths.filter(Files::isRegularFile).mapToLong(path -> path.toFile().length()).sum();
+        }
+    }
+
+    private static long countMembers(List<ParsedClass> classes) {
+        long members = 0;
+        for (ParsedClass parsedClass : classes) {
+            members += parsedClass.getMethods().size() + parsedClass.getFields().size();
+        }
+        return members;
+    }
+
+    private List<ParsedClass> doInspectJar(File file) throws IOException {
+        ApiRules jarRules = rules.forModule(file.getName());
+        if (cache == null) {
+            return parseJar(file, jarRules);
+        }
+        String key = cacheKey(cache, file);
+        List<ParsedClass> result = cache.load(key);
+        if (result == null) {
+            result = parseJar(file, jarRules);
+            cache.store(key, result);
+        }
+        return result;
+    }
+
+    /**
+     * Calculates the key under which the classes of the given jar are cached. The classes depend on the rules, the
+     * shard and whether all members are recorded, as well as the content of the jar.
+     */
+    String cacheKey(JarCache cache, File file) throws IOException {
+        String key = cache.key(file) + "-" + rules.forModule(file.getName()).getFingerprint();
+        if (allMembers) {
+            key += "-all";
+        }
+        return shardCount == 1 ? key : key + "-" + shard + "of" + shardCount;
+    }
+
+    /**
+     * Returns the filter that selects the class files owned by the shard, or null when there is a single shard.
+     */
+    private Predicate<String> shardFilter() {
+        return shardCount == 1 ? null : entryName -> DiffShard.owner(entryName, shardCount) == shard;
+    }
+
+    private List<ParsedClass> parseJar(File file, ApiRules jarRules) throws IOException {
+        try (ClassArchive archive = ClassArchive.open(file, jarRules, shardFilter())) {
+            archive.setAllMembers(allMembers);
+            return parseArchive(archive);
+        }
+    }
+
+    private List<ParsedClass> parseArchive(ClassArchive archive) throws IOException {
+        int count = archive.size();
+        List<ParsedClass> result = new ArrayList<>(count);
+        if (count < PARALLEL_ENTRY_THRESHOLD || !ForkJoinTask.inForkJoinPool()) {
+            for (int i = 0; i < count; i++) {
+                checkNotCancelled();
+                ParsedClass parsedClass = archive.parse(i);
+                if (parsedClass != null) {
+                    result.add(parsedClass);
+                }
+            }
+            return result;
+        }
+
+        // Each task reads its own entry, so that reading as well as parsing happens in parallel
+        List<ForkJoinTask<ParsedClass>> tasks = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            int index = i;
+            tasks.add(ForkJoinTask.adapt(() -> {
+                checkNotCancelled();
+                try {
+                    return archive.parse(index);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }));
+        }
+        ForkJoinTask.invokeAll(tasks);
+        for (ForkJoinTask<ParsedClass> task : tasks) {
+            ParsedClass parsedClass = join(task);
+            if (parsedClass != null) {
+                result.add(parsedClass);
+            }
+        }
+        return result;
+    }
+
+    private void checkNotCancelled() {
+        if (cancellation != null) {
+            cancellation.checkNotCancelled();
+        }
+    }
+
+    private static <T> T join(ForkJoinTask<T> task) throws IOException {
+        try {
+            return task.join();
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    /**
+     * Limits the number of bytes that have been read but not yet parsed. Counted in kilobytes, so that the limit fits
+     * in a semaphore.
+     */
+    private class ReadBuffer {
+        private final int maxPermits;
+        private final Semaphore available;
+
+        ReadBuffer(long maxSize) {
+            maxPermits = (int) (maxSize / 1024);
+            available = new Semaphore(maxPermits);
+        }
+
+        /**
+         * Reads the given file, once there is room for its content. A file larger than the limit is read once nothing
+         * else has been read.
+         */
+        Content read(Path path) {
+            checkNotCancelled();
+            try {
+                int permits = (int) Math.min(maxPermits, (Files.size(path) + 1023) / 1024);
+                try {
+                    available.acquire(permits);
+                } catch (InterruptedException e) {
+                    throw new InterruptedIOException(String.format("Interrupted while waiting to read %s", path));
+                }
+                try {
+                    return new Content(Files.readAllBytes(path), permits);
+                } catch (IOException | RuntimeException e) {
+                    available.release(permits);
+                    throw e;
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        void release(Content content) {
+            available.release(content.permits);
+        }
+    }
+
+    private static class Content {
+        final byte[] bytes;
+        final int permits;
+
+        Content(byte[] bytes, int permits) {
+            this.bytes = bytes;
+            this.permits = permits;
+        }
+    }
+}
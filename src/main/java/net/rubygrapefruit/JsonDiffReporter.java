@@ -0,0 +1,165 @@
+package net.rubygrapefruit;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+
+/**
+ * Writes the changes to a {@link Writer} as newline delimited JSON, one object per event, as the events are received.
+ * Unchanged classes are not reported. The caller is responsible for buffering and flushing the writer.
+ *
+ * <p>Each object has an {@code event} property with the name of the {@link DiffListener} method, and a {@code class}
+ * property with the name of the class. Member events have a {@code method}, {@code field} or {@code interface}
+ * property, and {@code superClassChanged} events have {@code before} and {@code after} properties. {@code classMoved}
+ * events have a {@code before} property with the old name of the class, and {@code methodSignatureChanged} events have
+ * {@code before} and {@code after} properties with the old and new signatures. When comparing a series of releases,
+ * each release starts with a {@code releaseStarted} object with {@code before} and {@code after} properties and no
+ * {@code class} property.</p>
+ */
+public class JsonDiffReporter extends DiffListener {
+    private final Writer writer;
+    private final StringBuilder line = new StringBuilder();
+
+    public JsonDiffReporter(Writer writer) {
+        this.writer = writer;
+    }
+
+    @Override
+    public void releaseStarted(File before, File after) {
+        line.setLength(0);
+        line.append('{');
+        property("event", "releaseStarted");
+        property("before", before.toString());
+        property("after", after.toString());
+        end();
+    }
+
+    @Override
+    public void classAdded(ApiClass details) {
+        write("classAdded", details, null, null);
+    }
+
+    @Override
+    public void classRemoved(ApiClass details) {
+        write("classRemoved", details, null, null);
+    }
+
+    @Override
+    public void classMoved(ApiClass before, ApiClass after) {
+        write("classMoved", after, "before", before.toString());
+    }
+
+    @Override
+    public void classChanged(ApiClass before, ApiClass after) {
+        write("classChanged", after, null, null);
+    }
+
+    @Override
+    public void superClassChanged(ApiClass before, ApiClass after) {
+        start("superClassChanged", after);
+        property("before", String.valueOf(ApiClass.displayName(before.getSuperName())));
+        property("after", String.valueOf(ApiClass.displayName(after.getSuperName())));
+        end();
+    }
+
+    @Override
+    public void interfaceAdded(ApiClass before, ApiClass after, ClassDetails addedInterface) {
+        write("interfaceAdded", after, "interface", addedInterface.toString());
+    }
+
+    @Override
+    public void interfaceRemoved(ApiClass before, ApiClass after, ClassDetails removedInterface) {
+        write("interfaceRemoved", after, "interface", removedInterface.toString());
+    }
+
+    @Override
+    public void methodAdded(ApiClass before, ApiClass after, MethodDetails addedMethod) {
+        write("methodAdded", after, "method", addedMethod.getSignature());
+    }
+
+    @Override
+    public void methodRemoved(ApiClass before, ApiClass after, MethodDetails removedMethod) {
+        write("methodRemoved", after, "method", removedMethod.getSignature());
+    }
+
+    @Override
+    public void methodSignatureChanged(ApiClass before, ApiClass after, MethodDetails removedMethod, MethodDetails addedMethod) {
+        start("methodSignatureChanged", after);
+        property("before", removedMethod.getSignature());
+        property("after", addedMethod.getSignature());
+        end();
+    }
+
+    @Override
+    public void fieldAdded(ApiClass before, ApiClass after, FieldDetails addedField) {
+        write("fieldAdded", after, "field", addedField.getSignature());
+    }
+
+    @Override
+    public void fieldRemoved(ApiClass before, ApiClass after, FieldDetails removedField) {
+        write("fieldRemoved", after, "field", removedField.getSignature());
+    }
+
+    private void write(String event, ApiClass details, String name, String value) {
+        start(event, details);
+        if (name != null) {
+            property(name, value);
+        }
+        end();
+    }
+
+    private void start(String event, ApiClass details) {
+        line.setLength(0);
+        line.append('{');
+        property("event", event);
+        property("class", details.toString());
+    }
+
+    private void property(String name, String value) {
+        if (line.length() > 1) {
+            line.append(',');
+        }
+        string(name);
+        line.append(':');
+        string(value);
+    }
+
+    private void string(String value) {
+        appendString(line, value);
+    }
+
+    /**
+     * Appends the given value to the given builder as a JSON string.
+     */
+    static void appendString(StringBuilder builder, String value) {
+        builder.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '"':
+                    builder.append("\\\"");
+                    break;
+                case '\\':
+                    builder.append("\\\\");
+                    break;
+                default:
+                    if (c < 0x20) {
+                        builder.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        builder.append(c);
+                    }
+            }
+        }
+        builder.append('"');
+    }
+
+    private void end() {
+        line.append("}\n");
+        try {
+            writer.append(line);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
@@ -1,30 +1,79 @@
 package net.rubygrapefruit;
 
+import org.objectweb.asm.Opcodes;
+
+/**
+ * The details of a method. Methods are identified by name and descriptor. The generic signature, exceptions and
+ * annotations are canonical instances from {@link Symbols}, so that methods with the same metadata share it.
+ */
 public class MethodDetails implements Comparable<MethodDetails> {
     private final int access;
     private final String name;
     private final String descriptor;
+    private final String genericSignature;
+    private final String[] exceptions;
+    private final String[] annotations;
+    private final int hashCode;
+    private final long fingerprint;
 
     public MethodDetails(int access, String name, String descriptor) {
+        this(access, name, descriptor, null, null, null);
+    }
+
+    /**
+     * @param genericSignature The generic signature, or null when the method has none.
+     * @param exceptions The internal names of the declared exceptions, or null when there are none.
+     * @param annotations The descriptors of the annotations, or null when there are none.
+     */
+    public MethodDetails(int access, String name, String descriptor, String genericSignature, String[] exceptions, String[] annotations) {
+        this.access = access;
+        this.name = Symbols.intern(name);
+        this.descriptor = Symbols.intern(descriptor);
+        this.genericSignature = Symbols.intern(genericSignature);
+        this.exceptions = Symbols.intern(exceptions);
+        this.annotations = Symbols.intern(annotations);
+        this.hashCode = this.name.hashCode() ^ this.descriptor.hashCode();
+        this.fingerprint = Symbols.hash64(this.name, this.descriptor, (char) 0);
+    }
+
+    /**
+     * Creates a method from values that are already canonical instances from {@link Symbols}, with a fingerprint
+     * calculated by {@link #getFingerprint()} when the method was stored.
+     */
+    MethodDetails(int access, String name, String descriptor, String genericSignature, String[] exceptions, String[] annotations, long fingerprint) {
         this.access = access;
         this.name = name;
         this.descriptor = descriptor;
+        this.genericSignature = genericSignature;
+        this.exceptions = exceptions;
+        this.annotations = annotations;
+        this.hashCode = name.hashCode() ^ descriptor.hashCode();
+        this.fingerprint = fingerprint;
     }
 
     @Override
     public boolean equals(Object obj) {
+        if (obj == this) {
+            return true;
+        }
+        if (!(obj instanceof MethodDetails)) {
+            return false;
+        }
         MethodDetails other = (MethodDetails) obj;
-        return name.equals(other.name) && descriptor.equals(other.descriptor);
+        return hashCode == other.hashCode && name.equals(other.name) && descriptor.equals(other.descriptor);
     }
 
     @Override
     public int hashCode() {
-        return name.hashCode() ^ descriptor.hashCode();
+        return hashCode;
     }
 
+    /**
+     * Orders methods by signature.
+     */
     @Override
     public int compareTo(MethodDetails o) {
-        return getSignature().compareTo(o.getSignature());
+        return Symbols.compare(name, descriptor, o.name, o.descriptor, (char) 0);
     }
 
     @Override
@@ -32,6 +81,78 @@ public class MethodDetails implements Comparable<MethodDetails> {
         return getSignature();
     }
 
+    public int getAccess() {
+        return access;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String getDescriptor() {
+        return descriptor;
+    }
+
+    /**
+     * Returns the generic signature of this method, or null when it has none.
+     */
+    public String getGenericSignature() {
+        return genericSignature;
+    }
+
+    /**
+     * Returns the internal names of the exceptions declared by this method. The array must not be modified.
+     */
+    public String[] getExceptions() {
+        return exceptions;
+    }
+
+    /**
+     * Returns the descriptors of the annotations of this method, of any retention. The array must not be modified.
+     */
+    public String[] getAnnotations() {
+        return annotations;
+    }
+
+    public boolean hasAnnotation(String descriptor) {
+        for (String annotation : annotations) {
+            if (annotation.equals(descriptor)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public boolean isDeprecated() {
+        return (access & Opcodes.ACC_DEPRECATED) != 0;
+    }
+
+    /**
+     * Returns a 64 bit hash of the signature of this method. Does not include the other details of the method.
+     */
+    public long getFingerprint() {
+        return fingerprint;
+    }
+
+    /**
+     * Returns the number of parameters of this method, parsed from its descriptor.
+     */
+    public int getParameterCount() {
+        int count = 0;
+        int i = 1;
+        while (descriptor.charAt(i) != ')') {
+            while (descriptor.charAt(i) == '[') {
+                i++;
+            }
+            if (descriptor.charAt(i) == 'L') {
+                i = descriptor.indexOf(';', i);
+            }
+            i++;
+            count++;
+        }
+        return count;
+    }
+
     public String getSignature() {
         return name + descriptor;
     }
@@ -0,0 +1,136 @@
+package net.rubygrapefruit;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+
+/**
+ * The cost of a single phase of a check, or of inspecting a single jar.
+ */
+public class Metrics {
+    private static final ThreadMXBean THREADS = ManagementFactory.getThreadMXBean();
+
+    private final String phase;
+    private final String target;
+    private final long wallNanos;
+    private final long classes;
+    private final long members;
+    private final long bytesRead;
+    private final long allocatedBytes;
+
+    public Metrics(String phase, String target, long wallNanos, long classes, long members, long bytesRead, long allocatedBytes) {
+        this.phase = phase;
+        this.target = target;
+        this.wallNanos = wallNanos;
+        this.classes = classes;
+        this.members = members;
+        this.bytesRead = bytesRead;
+        this.allocatedBytes = allocatedBytes;
+    }
+
+    /**
+     * The name of the phase: "jar", "inspect", "resolve" or "diff".
+     */
+    public String getPhase() {
+        return phase;
+    }
+
+    /**
+     * The jar or distribution that the phase processed, or null when the phase processed more than one distribution.
+     */
+    public String getTarget() {
+        return target;
+    }
+
+    public long getWallNanos() {
+        return wallNanos;
+    }
+
+    public long getClasses() {
+        return classes;
+    }
+
+    public long getMembers() {
+        return members;
+    }
+
+    public long getBytesRead() {
+        return bytesRead;
+    }
+
+    /**
+     * The number of bytes allocated during the phase, or -1 when the JVM does not support allocation measurement.
+     * For a jar, this counts only the allocations made by the thread that inspected the jar, and is -1 when the jar was
+     * read and parsed on several threads. For other phases, this counts the allocations of all threads, including any
+     * unrelated work running at the same time.
+     */
+    public long getAllocatedBytes() {
+        return allocatedBytes;
+    }
+
+    @Override
+    public String toString() {
+        return phase + (target == null ? "" : " " + target);
+    }
+
+    /**
+     * Starts measuring work done by the calling thread.
+     */
+    static Timer startThread() {
+        return new Timer(false, true);
+    }
+
+    /**
+     * Starts measuring work done by any thread.
+     */
+    static Timer startAll() {
+        return new Timer(true, true);
+    }
+
+    /**
+     * Starts measuring elapsed time only, for work that is spread across threads that also do other work.
+     */
+    static Timer startWall() {
+        return new Timer(false, false);
+    }
+
+    private static long allocatedBytes(boolean allThreads) {
+        if (!(THREADS instanceof com.sun.management.ThreadMXBean)) {
+            return -1;
+        }
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) THREADS;
+        if (!threads.isThreadAllocatedMemorySupported() || !threads.isThreadAllocatedMemoryEnabled()) {
+            return -1;
+        }
+        if (!allThreads) {
+            return threads.getThreadAllocatedBytes(Thread.currentThread().getId());
+        }
+        long total = 0;
+        for (long allocated : threads.getThreadAllocatedBytes(threads.getAllThreadIds())) {
+            // Threads that have died since their ids were collected report -1
+            if (allocated > 0) {
+                total += allocated;
+            }
+        }
+        return total;
+    }
+
+    static class Timer {
+        private final boolean allThreads;
+        private final long startNanos;
+        private final long startAllocated;
+
+        private Timer(boolean allThreads, boolean measureAllocations) {
+            this.allThreads = allThreads;
+            this.startAllocated = measureAllocations ? allocatedBytes(allThreads) : -1;
+            this.startNanos = System.nanoTime();
+        }
+
+        Metrics stop(String phase, Object target, long classes, long members, long bytesRead) {
+            long wallNanos = System.nanoTime() - startNanos;
+            long allocated = startAllocated < 0 ? -1 : allocatedBytes(allThreads);
+            // Threads that die during the phase take their allocations with them, so the total can go backwards
+            long allocatedBytes = allocated < 0 || startAllocated < 0 ? -1 : Math.max(0, allocated - startAllocated);
+            return new Metrics(phase, target == null ? null : target.toString(), wallNanos, classes, members, bytesRead, allocatedBytes);
+        }
+    }
+}
@@ -0,0 +1,49 @@
+package net.rubygrapefruit;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+
+/**
+ * Writes metrics to a {@link Writer} as newline delimited JSON, one object per jar or phase. The caller is responsible
+ * for buffering and flushing the writer.
+ */
+public class MetricsFileWriter extends MetricsListener {
+    private final Writer writer;
+    private final StringBuilder line = new StringBuilder();
+
+    public MetricsFileWriter(Writer writer) {
+        this.writer = writer;
+    }
+
+    @Override
+    public void jarInspected(Metrics metrics) {
+        write(metrics);
+    }
+
+    @Override
+    public void phaseCompleted(Metrics metrics) {
+        write(metrics);
+    }
+
+    private synchronized void write(Metrics metrics) {
+        line.setLength(0);
+        line.append("{\"phase\":");
+        JsonDiffReporter.appendString(line, metrics.getPhase());
+        if (metrics.getTarget() != null) {
+            line.append(",\"target\":");
+            JsonDiffReporter.appendString(line, metrics.getTarget());
+        }
+        line.append(",\"wallNanos\":").append(metrics.getWallNanos());
+        line.append(",\"classes\":").append(metrics.getClasses());
+        line.append(",\"members\":").append(metrics.getMembers());
+        line.append(",\"bytesRead\":").append(metrics.getBytesRead());
+        line.append(",\"allocatedBytes\":").append(metrics.getAllocatedBytes());
+        line.append("}\n");
+        try {
+            writer.append(line);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
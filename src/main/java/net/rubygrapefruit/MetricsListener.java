@@ -0,0 +1,13 @@
+package net.rubygrapefruit;
+
+/**
+ * Receives the cost of each phase of a check. Jars may be inspected in parallel, so the methods of this listener may
+ * be called concurrently.
+ */
+public class MetricsListener {
+    public void jarInspected(Metrics metrics) {
+    }
+
+    public void phaseCompleted(Metrics metrics) {
+    }
+}
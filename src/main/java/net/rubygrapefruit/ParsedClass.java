@@ -0,0 +1,87 @@
+package net.rubygrapefruit;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The details of a single class file, as read from a jar. Does not reference any other class, so instances can be created
+ * concurrently and merged into a {@link ClassSet} later.
+ */
+public class ParsedClass {
+    private final String name;
+    private final int access;
+    private final String superName;
+    private final String[] interfaces;
+    private final List<MethodDetails> methods = new ArrayList<>();
+    private final List<FieldDetails> fields = new ArrayList<>();
+    private boolean apiType;
+
+    public ParsedClass(String name, int access, String superName, String[] interfaces) {
+        this.name = Symbols.intern(name);
+        this.access = access;
+        this.superName = Symbols.intern(superName);
+        this.interfaces = interfaces;
+        for (int i = 0; i < interfaces.length; i++) {
+            interfaces[i] = Symbols.intern(interfaces[i]);
+        }
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public int getAccess() {
+        return access;
+    }
+
+    /**
+     * Returns null for a class with no super class, such as {@code java/lang/Object}.
+     */
+    public String getSuperName() {
+        return superName;
+    }
+
+    public String[] getInterfaces() {
+        return interfaces;
+    }
+
+    /**
+     * Returns true when this class is part of the public API, if visible.
+     */
+    public boolean isApiType() {
+        return apiType;
+    }
+
+    public void setApiType(boolean apiType) {
+        this.apiType = apiType;
+    }
+
+    public List<MethodDetails> getMethods() {
+        return methods;
+    }
+
+    public List<FieldDetails> getFields() {
+        return fields;
+    }
+
+    public void addMethod(int access, String name, String descriptor) {
+        methods.add(new MethodDetails(access, name, descriptor));
+    }
+
+    public void addMethod(MethodDetails method) {
+        methods.add(method);
+    }
+
+    public void addField(int access, String name, String descriptor) {
+        fields.add(new FieldDetails(access, name, descriptor));
+    }
+
+    public void addField(FieldDetails field) {
+        fields.add(field);
+    }
+
+    @Override
+    public String toString() {
+        return name.replace("/", ".");
+    }
+}
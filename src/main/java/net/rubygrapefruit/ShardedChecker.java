@@ -0,0 +1,223 @@
+package net.rubygrapefruit;
+
+import org.objectweb.asm.ClassReader;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.stream.Stream;
+
+/**
+ * Compares two distributions by splitting their classes into shards by package, and comparing each shard in its own
+ * process, as described by {@link DiffShard}. The shards are started using the same JVM and classes as the current
+ * process.
+ *
+ * <p>Once every shard has completed, the events of the shards are merged into class name order and sent to the
+ * listener, so that the report is the same as for a comparison in a single process, whatever the number of shards.
+ * Moves are found by comparing the removed and added classes of all shards, before the events are merged.</p>
+ */
+public class ShardedChecker {
+    private static final long POLL_INTERVAL = 20;
+
+    private final File before;
+    private final File after;
+    private final DiffListener listener;
+    private final int shards;
+    private List<String> workerArgs = Collections.emptyList();
+    private File workDir;
+    private Cancellation cancellation;
+
+    public ShardedChecker(File before, File after, DiffListener listener, int shards) {
+        if (shards < 1) {
+            throw new IllegalArgumentException("Shard count must be at least 1");
+        }
+        this.before = before;
+        this.after = after;
+        this.listener = listener;
+        this.shards = shards;
+    }
+
+    /**
+     * Sets the command line options to pass to each shard, such as {@code --cache-dir} or {@code --rules}.
+     */
+    public void setWorkerArgs(List<String> workerArgs) {
+        this.workerArgs = workerArgs;
+    }
+
+    /**
+     * Sets the directory for the files shared by the shards, or null to use the system temporary directory. Each run
+     * writes its files to a new subdirectory, so that files left behind by an earlier run are never read, and the
+     * subdirectory is deleted once the comparison has completed.
+     */
+    public void setWorkDir(File workDir) {
+        this.workDir = workDir;
+    }
+
+    /**
+     * Sets the cancellation used to stop reporting changes early, or null to report every change. The cancellation is
+     * only checked while merging the events of the shards, so the shards always compare all of their classes.
+     */
+    public void setCancellation(Cancellation cancellation) {
+        this.cancellation = cancellation;
+    }
+
+    public void run() throws IOException {
+        // Check the distributions here, rather than in every shard
+        for (File distro : Arrays.asList(before, after)) {
+            if (ApiSnapshot.isSnapshot(distro)) {
+                throw new IllegalArgumentException(String.format("Cannot shard the comparison of snapshot %s, as it holds only the public API classes", distro));
+            }
+            DistributionInspector.jars(distro);
+        }
+        File dir;
+        if (workDir != null) {
+            workDir.mkdirs();
+            dir = Files.createTempDirectory(workDir.toPath(), "api-check").toFile();
+        } else {
+            dir = Files.createTempDirectory("api-check").toFile();
+        }
+        try {
+            runShards(dir);
+            merge(dir);
+        } finally {
+            deleteRecursively(dir);
+        }
+    }
+
+    /**
+     * Starts a process for each shard and waits for them all to complete. Stops the other shards as soon as one fails,
+     * as the remaining shards may be waiting on its super type summary.
+     */
+    private void runShards(File dir) throws IOException {
+        List<Process> processes = new ArrayList<>();
+        try {
+            for (int i = 0; i < shards; i++) {
+                List<String> command = new ArrayList<>();
+                command.add(Paths.get(System.getProperty("java.home"), "bin", "java").toString());
+                command.add("-cp");
+                command.add(classPath());
+                command.add(ApiChecker.class.getName());
+                command.addAll(workerArgs);
+                command.addAll(Arrays.asList("shard", String.valueOf(i), String.valueOf(shards), dir.getAbsolutePath(),
+                        before.getAbsolutePath(), after.getAbsolutePath()));
+                processes.add(new ProcessBuilder(command).inheritIO().start());
+            }
+            while (true) {
+                boolean running = false;
+                for (int i = 0; i < processes.size(); i++) {
+                    Process process = processes.get(i);
+                    if (process.isAlive()) {
+                        running = true;
+                    } else if (process.exitValue() != 0) {
+                        throw new IOException(String.format("Shard %s of %s failed with exit code %s", i, shards, process.exitValue()));
+                    }
+                }
+                if (!running) {
+                    return;
+                }
+                Thread.sleep(POLL_INTERVAL);
+            }
+        } catch (InterruptedException e) {
+            throw new IOException("Interrupted while waiting for shards", e);
+        } finally {
+            for (Process process : processes) {
+                process.destroy();
+            }
+        }
+    }
+
+    private static void deleteRecursively(File dir) throws IOException {
+        if (!dir.exists()) {
+            return;
+        }
+        try (Stream<Path> paths = Files.walk(dir.toPath())) {
+            paths.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+    }
+
+    private static File movesFile(File dir) {
+        return new File(dir, "moves.bin");
+    }
+
+    /**
+     * Returns the class path that holds the classes of this tool and of ASM.
+     */
+    private static String classPath() {
+        Set<String> entries = new LinkedHashSet<>();
+        for (Class<?> type : Arrays.asList(ApiChecker.class, ClassReader.class)) {
+            try {
+                entries.add(Paths.get(type.getProtectionDomain().getCodeSource().getLocation().toURI()).toString());
+            } catch (URISyntaxException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+        return String.join(File.pathSeparator, entries);
+    }
+
+    /**
+     * Finds the moves between the removed and added classes of all shards, then merges the events of the shards and
+     * the moves into class name order.
+     */
+    private void merge(File dir) throws IOException {
+        List<ClassDetails> removed = new ArrayList<>();
+        List<ClassDetails> added = new ArrayList<>();
+        for (int i = 0; i < shards; i++) {
+            try (DiffEventLog.Reader reader = new DiffEventLog.Reader(DiffShard.eventsFile(dir, i))) {
+                while (reader.next()) {
+                    if (reader.isRemoved()) {
+                        removed.add(reader.getDetails());
+                    } else if (reader.isAdded()) {
+                        added.add(reader.getDetails());
+                    }
+                }
+            }
+        }
+        removed.sort(Comparator.naturalOrder());
+        added.sort(Comparator.naturalOrder());
+        File moves = movesFile(dir);
+        try (DiffEventLog.Writer writer = new DiffEventLog.Writer(moves)) {
+            new ApiDiff(writer).diff(removed, added);
+        }
+
+        List<DiffEventLog.Reader> readers = new ArrayList<>();
+        try {
+            PriorityQueue<DiffEventLog.Reader> queue = new PriorityQueue<>(shards + 1, Comparator.comparing(DiffEventLog.Reader::getName));
+            for (int i = 0; i <= shards; i++) {
+                DiffEventLog.Reader reader = new DiffEventLog.Reader(i < shards ? DiffShard.eventsFile(dir, i) : moves);
+                readers.add(reader);
+                if (reader.next()) {
+                    queue.add(reader);
+                }
+            }
+            // The removed and added classes of the shards are reported from the moves instead
+            DiffEventLog.Reader movesReader = readers.get(shards);
+            while (!queue.isEmpty()) {
+                if (cancellation != null && cancellation.isCancelled()) {
+                    return;
+                }
+                DiffEventLog.Reader reader = queue.poll();
+                if (reader == movesReader || !reader.isRemoved() && !reader.isAdded()) {
+                    reader.replay(listener);
+                }
+                if (reader.next()) {
+                    queue.add(reader);
+                }
+            }
+        } finally {
+            for (DiffEventLog.Reader reader : readers) {
+                reader.close();
+            }
+        }
+    }
+}
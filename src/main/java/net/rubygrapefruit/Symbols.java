@@ -0,0 +1,226 @@
+package net.rubygrapefruit;
+
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * The table of canonical names and descriptors used by the model. Each distinct string is held once, regardless of how
+ * many classes or distributions refer to it, and canonical strings can be compared by identity. Arrays of strings, such
+ * as the annotations or exceptions of a member, are held once in the same way.
+ *
+ * <p>The table holds its strings and arrays weakly, so that those no longer used by any model, such as the strings of a
+ * model that has been discarded, are removed from the table by the garbage collector.</p>
+ */
+public class Symbols {
+    /**
+     * The canonical empty array of strings.
+     */
+    public static final String[] NONE = new String[0];
+
+    private static final WeakTable<String> SYMBOLS = new WeakTable<String>() {
+        @Override
+        int hash(String value) {
+            return value.hashCode();
+        }
+
+        @Override
+        boolean same(String value1, String value2) {
+            return value1.equals(value2);
+        }
+    };
+    private static final WeakTable<String[]> ARRAYS = new WeakTable<String[]>() {
+        @Override
+        int hash(String[] value) {
+            return Arrays.hashCode(value);
+        }
+
+        @Override
+        boolean same(String[] value1, String[] value2) {
+            return Arrays.equals(value1, value2);
+        }
+    };
+
+    public static String intern(String value) {
+        if (value == null) {
+            return null;
+        }
+        return SYMBOLS.intern(value);
+    }
+
+    /**
+     * Returns the canonical array with the same elements as the given array, whose elements are also canonical.
+     * Returns {@link #NONE} for null or an empty array. The given array may be modified, and must not be used once
+     * passed to this method.
+     */
+    public static String[] intern(String[] values) {
+        if (values == null || values.length == 0) {
+            return NONE;
+        }
+        for (int i = 0; i < values.length; i++) {
+            values[i] = intern(values[i]);
+        }
+        return ARRAYS.intern(values);
+    }
+
+    /**
+     * Compares {@code name1 + separator + descriptor1} with {@code name2 + separator + descriptor2}, without creating
+     * either string. Use a separator of 0 for no separator.
+     */
+    public static int compare(String name1, String descriptor1, String name2, String descriptor2, char separator) {
+        if (name1 == name2) {
+            return descriptor1 == descriptor2 ? 0 : descriptor1.compareTo(descriptor2);
+        }
+        int separatorLength = separator == 0 ? 0 : 1;
+        int length1 = name1.length() + separatorLength + descriptor1.length();
+        int length2 = name2.length() + separatorLength + descriptor2.length();
+        int length = Math.min(length1, length2);
+        for (int i = 0; i < length; i++) {
+            char c1 = charAt(name1, descriptor1, separator, separatorLength, i);
+            char c2 = charAt(name2, descriptor2, separator, separatorLength, i);
+            if (c1 != c2) {
+                return c1 - c2;
+            }
+        }
+        return length1 - length2;
+    }
+
+    /**
+     * Calculates a 64 bit hash of {@code name + separator + descriptor}, without creating the string. Use a separator
+     * of 0 for no separator. The hash does not change between runs, so it can be persisted.
+     */
+    public static long hash64(String name, String descriptor, char separator) {
+        // FNV-1a, followed by a finalizer to spread the bits
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < name.length(); i++) {
+            hash = (hash ^ name.charAt(i)) * 0x100000001b3L;
+        }
+        if (separator != 0) {
+            hash = (hash ^ separator) * 0x100000001b3L;
+        }
+        for (int i = 0; i < descriptor.length(); i++) {
+            hash = (hash ^ descriptor.charAt(i)) * 0x100000001b3L;
+        }
+        return mix64(hash);
+    }
+
+    /**
+     * The finalizer of MurmurHash3.
+     */
+    static long mix64(long hash) {
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+
+    private static char charAt(String name, String descriptor, char separator, int separatorLength, int index) {
+        if (index < name.length()) {
+            return name.charAt(index);
+        }
+        index -= name.length();
+        if (index < separatorLength) {
+            return separator;
+        }
+        return descriptor.charAt(index - separatorLength);
+    }
+
+    /**
+     * A table of canonical values that refers to its values using weak references. Entries whose value has been
+     * collected are removed on the next call to {@link #intern(Object)}.
+     */
+    private static abstract class WeakTable<T> {
+        // Keyed by Entry, and queried using Lookup
+        private final ConcurrentMap<Object, Entry> entries = new ConcurrentHashMap<>();
+        private final ReferenceQueue<T> queue = new ReferenceQueue<>();
+
+        abstract int hash(T value);
+
+        abstract boolean same(T value1, T value2);
+
+        T intern(T value) {
+            for (Reference<? extends T> stale = queue.poll(); stale != null; stale = queue.poll()) {
+                entries.remove(stale);
+            }
+            int hash = hash(value);
+            Entry existing = entries.get(new Lookup(value, hash));
+            T existingValue = existing == null ? null : existing.get();
+            if (existingValue != null) {
+                return existingValue;
+            }
+            Entry entry = new Entry(value, hash);
+            while (true) {
+                existing = entries.putIfAbsent(entry, entry);
+                existingValue = existing == null ? null : existing.get();
+                if (existing == null) {
+                    return value;
+                }
+                if (existingValue != null) {
+                    return existingValue;
+                }
+                // Collected since it was found, so replace it
+                entries.remove(existing, existing);
+            }
+        }
+
+        private class Entry extends WeakReference<T> {
+            private final int hash;
+
+            Entry(T value, int hash) {
+                super(value, queue);
+                this.hash = hash;
+            }
+
+            @Override
+            @SuppressWarnings("unchecked")
+            public boolean equals(Object obj) {
+                if (obj == this) {
+                    return true;
+                }
+                if (!(obj instanceof WeakTable.Entry)) {
+                    return false;
+                }
+                Entry other = (Entry) obj;
+                T value = get();
+                T otherValue = other.get();
+                // A collected entry is only equal to itself
+                return hash == other.hash && value != null && otherValue != null && same(value, otherValue);
+            }
+
+            @Override
+            public int hashCode() {
+                return hash;
+            }
+        }
+
+        private class Lookup {
+            private final T value;
+            private final int hash;
+
+            Lookup(T value, int hash) {
+                this.value = value;
+                this.hash = hash;
+            }
+
+            @Override
+            @SuppressWarnings("unchecked")
+            public boolean equals(Object obj) {
+                if (!(obj instanceof WeakTable.Entry)) {
+                    return false;
+                }
+                T otherValue = ((Entry) obj).get();
+                return otherValue != null && same(value, otherValue);
+            }
+
+            @Override
+            public int hashCode() {
+                return hash;
+            }
+        }
+    }
+}
@@ -0,0 +1,94 @@
+package net.rubygrapefruit;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+
+/**
+ * Writes a human readable report of the changes to a {@link Writer}. Unchanged classes are not reported. The caller is
+ * responsible for buffering and flushing the writer.
+ */
+public class TextDiffReporter extends DiffListener {
+    private final Writer writer;
+
+    public TextDiffReporter(Writer writer) {
+        this.writer = writer;
+    }
+
+    @Override
+    public void releaseStarted(File before, File after) {
+        line("");
+        line("==== " + before + " -> " + after + " ====");
+    }
+
+    @Override
+    public void classAdded(ApiClass details) {
+        line("ADDED: " + details);
+    }
+
+    @Override
+    public void classRemoved(ApiClass details) {
+        line("REMOVED: " + details);
+    }
+
+    @Override
+    public void classMoved(ApiClass before, ApiClass after) {
+        line("MOVED: " + before + " -> " + after);
+    }
+
+    @Override
+    public void classChanged(ApiClass before, ApiClass after) {
+        line("");
+        line("CHANGED: " + after);
+    }
+
+    @Override
+    public void superClassChanged(ApiClass before, ApiClass after) {
+        line("  * super class changed: was: " + ApiClass.displayName(before.getSuperName()) + ", now: " + ApiClass.displayName(after.getSuperName()));
+    }
+
+    @Override
+    public void interfaceAdded(ApiClass before, ApiClass after, ClassDetails addedInterface) {
+        line("  * interface added: " + addedInterface);
+    }
+
+    @Override
+    public void interfaceRemoved(ApiClass before, ApiClass after, ClassDetails removedInterface) {
+        line("  * interface removed: " + removedInterface);
+    }
+
+    @Override
+    public void methodAdded(ApiClass before, ApiClass after, MethodDetails addedMethod) {
+        line("  * method added: " + addedMethod);
+    }
+
+    @Override
+    public void methodRemoved(ApiClass before, ApiClass after, MethodDetails removedMethod) {
+        line("  * method removed: " + removedMethod);
+    }
+
+    @Override
+    public void methodSignatureChanged(ApiClass before, ApiClass after, MethodDetails removedMethod, MethodDetails addedMethod) {
+        line("  * method signature changed: was: " + removedMethod + ", now: " + addedMethod);
+    }
+
+    @Override
+    public void fieldAdded(ApiClass before, ApiClass after, FieldDetails addedField) {
+        line("  * field added: " + addedField);
+    }
+
+    @Override
+    public void fieldRemoved(ApiClass before, ApiClass after, FieldDetails removedField) {
+        line("  * field removed: " + removedField);
+    }
+
+    private void line(String text) {
+        try {
+            writer.write(text);
+            writer.write('\n');
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
@@ -313,6 +313,31 @@ class ApiCheckerSpec extends Specification {
         0 * listener._
     }
 
+    def "reports moved classes and changed method signatures"() {
+        def listener = Mock(DiffListener)
+        def before = new DistroFixture(temporaryFolder.newFolder("before"))
+        before.lib("gradle-core.jar") {
+            source("org.gradle.logging.Thing1", "package org.gradle.logging; public class Thing1 { public void a(String s) { } public int f; }")
+            source("org.gradle.logging.Thing2", "package org.gradle.logging; public class Thing2 { public void a(int i) { } public void b() { } public void c(int i) { } public void c(long l) { } }")
+        }
+        def after = new DistroFixture(temporaryFolder.newFolder("after"))
+        after.lib("gradle-core.jar") {
+            source("org.gradle.api.Thing1", "package org.gradle.api; public class Thing1 { public void a(String s) { } public int f; }")
+            source("org.gradle.logging.Thing2", "package org.gradle.logging; public class Thing2 { public String a(long l) { return null; } public void b() { } public void c(String s) { } public void c(Object o) { } }")
+        }
+
+        when:
+        new ApiChecker(before.installDir, after.installDir, listener).run()
+
+        then:
+        1 * listener.classMoved({it.name == "org/gradle/logging/Thing1"}, {it.name == "org/gradle/api/Thing1"})
+        1 * listener.classChanged({it.name == "org/gradle/logging/Thing2"}, {it.name == "org/gradle/logging/Thing2"})
+        1 * listener.methodSignatureChanged({it.name == "org/gradle/logging/Thing2"}, {it.name == "org/gradle/logging/Thing2"}, {it.signature == "a(I)V"}, {it.signature == "a(J)Ljava/lang/String;"})
+        2 * listener.methodRemoved({it.name == "org/gradle/logging/Thing2"}, {it.name == "org/gradle/logging/Thing2"}, {it.name == "c"})
+        2 * listener.methodAdded({it.name == "org/gradle/logging/Thing2"}, {it.name == "org/gradle/logging/Thing2"}, {it.name == "c"})
+        0 * listener._
+    }
+
     def "reports on changes to inherited class methods"() {
         def listener = Mock(DiffListener)
         def before = new DistroFixture(temporaryFolder.newFolder("before"))
@@ -590,4 +615,803 @@ class ApiCheckerSpec extends Specification {
         1 * listener.classUnchanged({it.name == "org/gradle/logging/Thing1"})
         0 * listener._
     }
+
+    def "inspects jars in parallel"() {
+        def listener = Mock(DiffListener)
+        def before = new DistroFixture(temporaryFolder.newFolder("before"))
+        before.lib("gradle-core.jar") {
+            (1..100).each { i ->
+                source("org.gradle.logging.Thing${i}", "package org.gradle.logging; public class Thing${i} { public void method${i}() { } }")
+            }
+        }
+        before.lib("plugins/gradle-plugins.jar") {
+            source("org.gradle.java.Thing", "package org.gradle.java; public class Thing extends org.gradle.logging.Thing1 { }")
+        }
+        def after = new DistroFixture(temporaryFolder.newFolder("after"))
+        after.lib("gradle-core.jar") {
+            (1..100).each { i ->
+                source("org.gradle.logging.Thing${i}", "package org.gradle.logging; public class Thing${i} { public void method${i == 1 ? 0 : i}() { } }")
+            }
+        }
+        after.lib("plugins/gradle-plugins.jar") {
+            source("org.gradle.java.Thing", "package org.gradle.java; public class Thing extends org.gradle.logging.Thing1 { }")
+        }
+
+        when:
+        def checker = new ApiChecker(before.installDir, after.installDir, listener)
+        checker.parallelism = 4
+        checker.run()
+
+        then:
+        1 * listener.classChanged({it.name == "org/gradle/logging/Thing1"}, {it.name == "org/gradle/logging/Thing1"})
+        1 * listener.methodRemoved({it.name == "org/gradle/logging/Thing1"}, {it.name == "org/gradle/logging/Thing1"}, {it.name == "method1"})
+        1 * listener.methodAdded({it.name == "org/gradle/logging/Thing1"}, {it.name == "org/gradle/logging/Thing1"}, {it.name == "method0"})
+        1 * listener.classChanged({it.name == "org/gradle/java/Thing"}, {it.name == "org/gradle/java/Thing"})
+        1 * listener.methodRemoved({it.name == "org/gradle/java/Thing"}, {it.name == "org/gradle/java/Thing"}, {it.name == "method1"})
+        1 * listener.methodAdded({it.name == "org/gradle/java/Thing"}, {it.name == "org/gradle/java/Thing"}, {it.name == "method0"})
+        99 * listener.classUnchanged(_)
+        0 * listener._
+    }
+
+    def "uses a snapshot in place of a distribution"() {
+        def listener = Mock(DiffListener)
+        def before = new DistroFixture(temporaryFolder.newFolder("before"))
+        before.lib("gradle-core.jar") {
+            source("org.gradle.logging.Thing1", """
+                package org.gradle.logging;
+                public class Thing1 extends org.gradle.logging.internal.AbstractThing {
+                    public String field;
+                    public void doThing() { }
+                }
+            """)
+            source("org.gradle.logging.internal.AbstractThing", """
+                package org.gradle.logging.internal;
+                public abstract class AbstractThing {
+                    public void inherited() { }
+                }
+            """)
+            source("org.gradle.logging.Thing2", "package org.gradle.logging; public class Thing2 { }")
+        }
+        def after = new DistroFixture(temporaryFolder.newFolder("after"))
+        after.lib("gradle-core.jar") {
+            source("org.gradle.logging.Thing1", """
+                package org.gradle.logging;
+                public class Thing1 {
+                    public String field;
+                    public void doThing() { }
+                }
+            """)
+            source("org.gradle.logging.Thing3", "package org.gradle.logging; public class Thing3 { }")
+        }
+        def snapshot = temporaryFolder.newFile("before.snapshot")
+
+        when:
+        ApiChecker.writeSnapshot(before.installDir, snapshot, null)
+        new ApiChecker(snapshot, after.installDir, listener).run()
+
+        then:
+        1 * listener.classChanged({it.name == "org/gradle/logging/Thing1"}, {it.name == "org/gradle/logging/Thing1"})
+        1 * listener.superClassChanged({it.name == "org/gradle/logging/Thing1"}, {it.name == "org/gradle/logging/Thing1"})
+        1 * listener.methodRemoved({it.name == "org/gradle/logging/Thing1"}, {it.name == "org/gradle/logging/Thing1"}, {it.name == "inherited"})
+        1 * listener.classRemoved({it.name == "org/gradle/logging/Thing2"})
+        1 * listener.classAdded({it.name == "org/gradle/logging/Thing3"})
+        0 * listener._
+    }
+
+    def "a snapshot has the same API as its distribution"() {
+        def listener = Mock(DiffListener)
+        def distro = new DistroFixture(temporaryFolder.newFolder("distro"))
+        distro.lib("gradle-core.jar") {
+            source("org.gradle.api.Thing", """
+                package org.gradle.api;
+                import java.util.List;
+                public class Thing<T extends Number> extends org.gradle.api.internal.AbstractThing implements java.io.Serializable, Comparable<Thing<T>> {
+                    public static final String NAME = "thing";
+                    protected List<T> values;
+                    public Thing() { }
+                    @Deprecated
+                    public <S extends T> S get(List<? super S> list) throws java.io.IOException { return null; }
+                    public int compareTo(Thing<T> other) { return 0; }
+                    protected void run(String... args) { }
+                    void notVisible() { }
+                }
+            """)
+            source("org.gradle.api.internal.AbstractThing", """
+                package org.gradle.api.internal;
+                public abstract class AbstractThing implements Runnable {
+                    public long count;
+                    public void inherited() { }
+                    public void run() { }
+                }
+            """)
+            source("org.gradle.api.Action", "package org.gradle.api; public interface Action<T> { void execute(T target); }")
+        }
+        def snapshot = temporaryFolder.newFile("distro.snapshot")
+
+        when:
+        ApiChecker.writeSnapshot(distro.installDir, snapshot, null)
+        def checker = new ApiChecker(snapshot, distro.installDir, listener)
+        checker.compact = compact
+        checker.run()
+
+        then:
+        1 * listener.classUnchanged({it.name == "org/gradle/api/Action"})
+        1 * listener.classUnchanged({it.name == "org/gradle/api/Thing"})
+        0 * listener._
+
+        where:
+        compact << [false, true]
+    }
+
+    def "reports changes in class name order"() {
+        def listener = Mock(DiffListener)
+        def before = new DistroFixture(temporaryFolder.newFolder("before"))
+        before.lib("gradle-core.jar") {
+            source("org.gradle.logging.Thing1", "package org.gradle.logging; public class Thing1 { }")
+            source("org.gradle.logging.Thing2", "package org.gradle.logging; public class Thing2 { public void a() { } public void c() { } }")
+            source("org.gradle.logging.Thing3", "package org.gradle.logging; public class Thing3 { }")
+        }
+        def after = new DistroFixture(temporaryFolder.newFolder("after"))
+        after.lib("gradle-core.jar") {
+            source("org.gradle.logging.Thing2", "package org.gradle.logging; public class Thing2 { public void b() { } public void c() { } }")
+            source("org.gradle.logging.Thing3", "package org.gradle.logging; public class Thing3 { }")
+            source("org.gradle.logging.Thing4", "package org.gradle.logging; public class Thing4 { }")
+        }
+
+        when:
+        new ApiChecker(before.installDir, after.installDir, listener).run()
+
+        then:
+        1 * listener.classRemoved({it.name == "org/gradle/logging/Thing1"})
+
+        then:
+        1 * listener.classChanged({it.name == "org/gradle/logging/Thing2"}, {it.name == "org/gradle/logging/Thing2"})
+
+        then:
+        1 * listener.methodRemoved({it.name == "org/gradle/logging/Thing2"}, {it.name == "org/gradle/logging/Thing2"}, {it.name == "a"})
+
+        then:
+        1 * listener.methodAdded({it.name == "org/gradle/logging/Thing2"}, {it.name == "org/gradle/logging/Thing2"}, {it.name == "b"})
+
+        then:
+        1 * listener.classUnchanged({it.name == "org/gradle/logging/Thing3"})
+
+        then:
+        1 * listener.classAdded({it.name == "org/gradle/logging/Thing4"})
+        0 * listener._
+    }
+
+    def "writes only the report to stdout when quiet"() {
+        def before = new DistroFixture(temporaryFolder.newFolder("before"))
+        before.lib("gradle-core.jar") {
+            source("org.gradle.logging.Thing", "package org.gradle.logging; public class Thing { public void a() { } }")
+        }
+        def after = new DistroFixture(temporaryFolder.newFolder("after"))
+        after.lib("gradle-core.jar") {
+            source("org.gradle.logging.Thing", "package org.gradle.logging; public class Thing { public void b() { } }")
+        }
+        def stdout = new ByteArrayOutputStream()
+        def originalOut = System.out
+        System.out = new PrintStream(stdout, true, "UTF-8")
+
+        when:
+        try {
+            ApiChecker.main(["--quiet", before.installDir.path, after.installDir.path] as String[])
+            ApiChecker.main(["--quiet", "--format", "json", before.installDir.path, after.installDir.path] as String[])
+            ApiChecker.main([before.installDir.path, after.installDir.path] as String[])
+        } finally {
+            System.out = originalOut
+        }
+
+        then:
+        stdout.toString("UTF-8") == """
+CHANGED: org.gradle.logging.Thing
+  * method removed: a()V
+  * method added: b()V
+{"event":"classChanged","class":"org.gradle.logging.Thing"}
+{"event":"methodRemoved","class":"org.gradle.logging.Thing","method":"a()V"}
+{"event":"methodAdded","class":"org.gradle.logging.Thing","method":"b()V"}
+Comparing ${before.installDir} to ${after.installDir}
+
+CHANGED: org.gradle.logging.Thing
+  * method removed: a()V
+  * method added: b()V
+"""
+    }
+
+    def "reports changes since the previous incremental check"() {
+        def listener = Mock(DiffListener)
+        def stateDir = temporaryFolder.newFolder("state")
+        def checker = new IncrementalChecker(stateDir, new JarInspector(null, null))
+        def v1 = new DistroFixture(temporaryFolder.newFolder("v1"))
+        v1.lib("gradle-core.jar") {
+            source("org.gradle.logging.Thing1", "package org.gradle.logging; public class Thing1 { public void a() { } }")
+        }
+        v1.lib("gradle-logging.jar") {
+            source("org.gradle.logging.Thing2", "package org.gradle.logging; public class Thing2 extends Thing1 { }")
+            source("org.gradle.logging.Thing3", "package org.gradle.logging; public class Thing3 { }")
+        }
+        def v2 = new DistroFixture(temporaryFolder.newFolder("v2"))
+        v2.lib("gradle-core.jar") {
+            source("org.gradle.logging.Thing1", "package org.gradle.logging; public class Thing1 { public void b() { } }")
+        }
+        new File(v2.installDir, "lib/gradle-logging.jar-7.0.jar").bytes = new File(v1.installDir, "lib/gradle-logging.jar-7.0.jar").bytes
+
+        when:
+        def result = checker.check(v1.installDir, listener)
+
+        then:
+        !result
+        0 * listener._
+
+        when:
+        result = checker.check(v1.installDir, listener)
+
+        then:
+        result
+        0 * listener._
+
+        when:
+        result = checker.check(v2.installDir, listener)
+
+        then:
+        result
+        1 * listener.classChanged({it.name == "org/gradle/logging/Thing1"}, {it.name == "org/gradle/logging/Thing1"})
+        1 * listener.methodRemoved({it.name == "org/gradle/logging/Thing1"}, {it.name == "org/gradle/logging/Thing1"}, {it.name == "a"})
+        1 * listener.methodAdded({it.name == "org/gradle/logging/Thing1"}, {it.name == "org/gradle/logging/Thing1"}, {it.name == "b"})
+        1 * listener.classChanged({it.name == "org/gradle/logging/Thing2"}, {it.name == "org/gradle/logging/Thing2"})
+        1 * listener.methodRemoved({it.name == "org/gradle/logging/Thing2"}, {it.name == "org/gradle/logging/Thing2"}, {it.name == "a"})
+        1 * listener.methodAdded({it.name == "org/gradle/logging/Thing2"}, {it.name == "org/gradle/logging/Thing2"}, {it.name == "b"})
+        0 * listener._
+    }
+
+    def "reports changes for each release in a series"() {
+        def listener = Mock(DiffListener)
+        def v1 = new DistroFixture(temporaryFolder.newFolder("v1"))
+        v1.lib("gradle-core.jar") {
+            source("org.gradle.api.Thing", "package org.gradle.api; public class Thing { public void a() { } }")
+        }
+        def v2 = new DistroFixture(temporaryFolder.newFolder("v2"))
+        v2.lib("gradle-core.jar") {
+            source("org.gradle.api.Thing", "package org.gradle.api; public class Thing { public void a() { } public void b() { } }")
+        }
+        def v3 = new DistroFixture(temporaryFolder.newFolder("v3"))
+        v3.lib("gradle-core.jar") {
+            source("org.gradle.api.Thing", "package org.gradle.api; public class Thing { public void b() { } }")
+        }
+        def checker = new HistoryChecker(new DistributionInspector(new JarInspector(null, null)), null, 2)
+
+        when:
+        def history = checker.check([v1.installDir, v2.installDir, v3.installDir], listener)
+
+        then:
+        1 * listener.releaseStarted(v1.installDir, v2.installDir)
+
+        then:
+        1 * listener.classChanged({it.name == "org/gradle/api/Thing"}, {it.name == "org/gradle/api/Thing"})
+        1 * listener.methodAdded({it.name == "org/gradle/api/Thing"}, {it.name == "org/gradle/api/Thing"}, {it.name == "b"})
+
+        then:
+        1 * listener.releaseStarted(v2.installDir, v3.installDir)
+
+        then:
+        1 * listener.classChanged({it.name == "org/gradle/api/Thing"}, {it.name == "org/gradle/api/Thing"})
+        1 * listener.methodRemoved({it.name == "org/gradle/api/Thing"}, {it.name == "org/gradle/api/Thing"}, {it.name == "a"})
+        0 * listener._
+
+        and:
+        def entries = history.entries.collectEntries { [(it.member ?: it.className): it] }
+        entries["org.gradle.api.Thing"].introducedIn == v1.installDir
+        entries["org.gradle.api.Thing"].removedIn == null
+        entries["a()V"].introducedIn == v1.installDir
+        entries["a()V"].removedIn == v3.installDir
+        entries["b()V"].introducedIn == v2.installDir
+        entries["b()V"].removedIn == null
+    }
+
+    def "records a moved class as removed and introduced when it has also changed"() {
+        def listener = Mock(DiffListener)
+        def v1 = new DistroFixture(temporaryFolder.newFolder("v1"))
+        v1.lib("gradle-core.jar") {
+            source("org.gradle.api.Thing", "package org.gradle.api; public class Thing { public void a() { } public void b(int i) { } }")
+        }
+        def v2 = new DistroFixture(temporaryFolder.newFolder("v2"))
+        v2.lib("gradle-core.jar") {
+            source("org.gradle.api.other.Thing", "package org.gradle.api.other; public class Thing { public void a() { } public void b(String s) { } }")
+        }
+        def checker = new HistoryChecker(new DistributionInspector(new JarInspector(null, null)), null, 2)
+
+        when:
+        def history = checker.check([v1.installDir, v2.installDir], listener)
+
+        then:
+        1 * listener.releaseStarted(v1.installDir, v2.installDir)
+
+        then:
+        1 * listener.classMoved({it.name == "org/gradle/api/Thing"}, {it.name == "org/gradle/api/other/Thing"})
+        1 * listener.classChanged({it.name == "org/gradle/api/Thing"}, {it.name == "org/gradle/api/other/Thing"})
+        1 * listener.methodSignatureChanged({it.name == "org/gradle/api/Thing"}, {it.name == "org/gradle/api/other/Thing"}, {it.name == "b"}, {it.name == "b"})
+        0 * listener._
+
+        and:
+        def entries = history.entries.collectEntries { [(it.member ? it.className + "#" + it.member : it.className): it] }
+        entries.keySet() == [
+            "org.gradle.api.Thing",
+            "org.gradle.api.Thing#<init>()V",
+            "org.gradle.api.Thing#a()V",
+            "org.gradle.api.Thing#b(I)V",
+            "org.gradle.api.other.Thing",
+            "org.gradle.api.other.Thing#<init>()V",
+            "org.gradle.api.other.Thing#a()V",
+            "org.gradle.api.other.Thing#b(Ljava/lang/String;)V"
+        ] as Set
+        entries["org.gradle.api.Thing"].removedIn == v2.installDir
+        entries["org.gradle.api.Thing#b(I)V"].introducedIn == v1.installDir
+        entries["org.gradle.api.Thing#b(I)V"].removedIn == v2.installDir
+        entries["org.gradle.api.other.Thing"].introducedIn == v2.installDir
+        entries["org.gradle.api.other.Thing"].removedIn == null
+        entries["org.gradle.api.other.Thing#b(Ljava/lang/String;)V"].introducedIn == v2.installDir
+        entries["org.gradle.api.other.Thing#b(Ljava/lang/String;)V"].removedIn == null
+    }
+
+    def "reports the cost of each jar and phase"() {
+        def listener = Mock(DiffListener)
+        def metrics = Mock(MetricsListener)
+        def before = new DistroFixture(temporaryFolder.newFolder("before"))
+        before.lib("gradle-core.jar") {
+            source("org.gradle.api.Thing", "package org.gradle.api; public class Thing { public void a() { } }")
+        }
+        def after = new DistroFixture(temporaryFolder.newFolder("after"))
+        after.lib("gradle-core.jar") {
+            source("org.gradle.api.Thing", "package org.gradle.api; public class Thing { public void a() { } }")
+        }
+        def checker = new ApiChecker(before.installDir, after.installDir, listener)
+        checker.metricsListener = metrics
+
+        when:
+        checker.run()
+
+        then:
+        2 * metrics.jarInspected({ it.phase == "jar" && it.classes == 1 && it.members == 2 && it.bytesRead > 0 })
+        2 * metrics.phaseCompleted({ it.phase == "inspect" && it.classes == 1 })
+        2 * metrics.phaseCompleted({ it.phase == "resolve" && it.classes == 1 })
+        1 * metrics.phaseCompleted({ it.phase == "diff" && it.classes == 2 })
+        0 * metrics._
+    }
+
+    def "reports the cost of each jar when reading jars on separate threads"() {
+        def listener = Mock(DiffListener)
+        def metrics = Mock(MetricsListener)
+        def before = new DistroFixture(temporaryFolder.newFolder("before"))
+        before.lib("gradle-core.jar") {
+            source("org.gradle.api.Thing", "package org.gradle.api; public class Thing { public void a() { } }")
+        }
+        def after = new DistroFixture(temporaryFolder.newFolder("after"))
+        after.classesDir("gradle-core") {
+            source("org.gradle.api.Thing", "package org.gradle.api; public class Thing { public void a() { } }")
+        }
+        def checker = new ApiChecker(before.installDir, after.installDir, listener)
+        checker.metricsListener = metrics
+        checker.readThreads = 2
+
+        when:
+        checker.run()
+
+        then:
+        2 * metrics.jarInspected({ it.phase == "jar" && it.classes == 1 && it.members == 2 && it.bytesRead > 0 && it.wallNanos > 0 && it.allocatedBytes == -1 })
+        2 * metrics.phaseCompleted({ it.phase == "inspect" && it.classes == 1 })
+        2 * metrics.phaseCompleted({ it.phase == "resolve" && it.classes == 1 })
+        1 * metrics.phaseCompleted({ it.phase == "diff" && it.classes == 2 })
+        0 * metrics._
+    }
+
+    def "inspects class directories in the lib directory"() {
+        def listener = Mock(DiffListener)
+        def before = new DistroFixture(temporaryFolder.newFolder("before"))
+        before.classesDir("gradle-core") {
+            source("org.gradle.api.Thing", "package org.gradle.api; public class Thing { public void a() { } }")
+        }
+        def after = new DistroFixture(temporaryFolder.newFolder("after"))
+        after.lib("gradle-core.jar") {
+            source("org.gradle.api.Thing", "package org.gradle.api; public class Thing { public void b() { } }")
+        }
+
+        when:
+        new ApiChecker(before.installDir, after.installDir, listener).run()
+
+        then:
+        1 * listener.classChanged({it.name == "org/gradle/api/Thing"}, {it.name == "org/gradle/api/Thing"})
+        1 * listener.methodRemoved({it.name == "org/gradle/api/Thing"}, {it.name == "org/gradle/api/Thing"}, {it.name == "a"})
+        1 * listener.methodAdded({it.name == "org/gradle/api/Thing"}, {it.name == "org/gradle/api/Thing"}, {it.name == "b"})
+        0 * listener._
+    }
+
+    def "reads jars and class directories on separate threads"() {
+        def listener = Mock(DiffListener)
+        def before = new DistroFixture(temporaryFolder.newFolder("before"))
+        before.classesDir("gradle-core") {
+            (1..100).each { i ->
+                source("org.gradle.logging.Thing${i}", "package org.gradle.logging; public class Thing${i} { public void method${i}() { } }")
+            }
+        }
+        before.lib("plugins/gradle-plugins.jar") {
+            source("org.gradle.java.Thing", "package org.gradle.java; public class Thing extends org.gradle.logging.Thing1 { }")
+        }
+        def after = new DistroFixture(temporaryFolder.newFolder("after"))
+        after.lib("gradle-core.jar") {
+            (1..100).each { i ->
+                source("org.gradle.logging.Thing${i}", "package org.gradle.logging; public class Thing${i} { public void method${i == 1 ? 0 : i}() { } }")
+            }
+        }
+        after.classesDir("plugins/gradle-plugins") {
+            source("org.gradle.java.Thing", "package org.gradle.java; public class Thing extends org.gradle.logging.Thing1 { }")
+        }
+
+        when:
+        def checker = new ApiChecker(before.installDir, after.installDir, listener)
+        checker.parallelism = 4
+        checker.readThreads = 2
+        checker.run()
+
+        then:
+        1 * listener.classChanged({it.name == "org/gradle/logging/Thing1"}, {it.name == "org/gradle/logging/Thing1"})
+        1 * listener.methodRemoved({it.name == "org/gradle/logging/Thing1"}, {it.name == "org/gradle/logging/Thing1"}, {it.name == "method1"})
+        1 * listener.methodAdded({it.name == "org/gradle/logging/Thing1"}, {it.name == "org/gradle/logging/Thing1"}, {it.name == "method0"})
+        1 * listener.classChanged({it.name == "org/gradle/java/Thing"}, {it.name == "org/gradle/java/Thing"})
+        1 * listener.methodRemoved({it.name == "org/gradle/java/Thing"}, {it.name == "org/gradle/java/Thing"}, {it.name == "method1"})
+        1 * listener.methodAdded({it.name == "org/gradle/java/Thing"}, {it.name == "org/gradle/java/Thing"}, {it.name == "method0"})
+        99 * listener.classUnchanged(_)
+        0 * listener._
+    }
+
+    def "stops at the first breaking change"() {
+        def cancellation = new Cancellation()
+        def gate = new BreakingChangeGate(cancellation)
+        def before = new DistroFixture(temporaryFolder.newFolder("before"))
+        before.lib("gradle-core.jar") {
+            source("org.gradle.api.A", "package org.gradle.api; public class A { public void a() { } }")
+            source("org.gradle.api.B", "package org.gradle.api; public class B { }")
+        }
+        def after = new DistroFixture(temporaryFolder.newFolder("after"))
+        after.lib("gradle-core.jar") {
+            source("org.gradle.api.A", "package org.gradle.api; public class A { public void b() { } }")
+            source("org.gradle.api.C", "package org.gradle.api; public class C { }")
+        }
+        def checker = new ApiChecker(before.installDir, after.installDir, gate)
+        checker.cancellation = cancellation
+
+        when:
+        checker.run()
+
+        then:
+        gate.breaking
+        gate.breakingChange == "org.gradle.api.A: method removed: a()V"
+        cancellation.cancelled
+    }
+
+    def "does not stop when there are no breaking changes"() {
+        def cancellation = new Cancellation()
+        def gate = new BreakingChangeGate(cancellation)
+        def before = new DistroFixture(temporaryFolder.newFolder("before"))
+        before.lib("gradle-core.jar") {
+            source("org.gradle.api.A", "package org.gradle.api; public class A { public void a() { } }")
+        }
+        def after = new DistroFixture(temporaryFolder.newFolder("after"))
+        after.lib("gradle-core.jar") {
+            source("org.gradle.api.A", "package org.gradle.api; public class A { public void a() { } public void b() { } }")
+            source("org.gradle.api.C", "package org.gradle.api; public class C { }")
+        }
+        def checker = new ApiChecker(before.installDir, after.installDir, gate)
+        checker.cancellation = cancellation
+
+        when:
+        checker.run()
+
+        then:
+        !gate.breaking
+        !cancellation.cancelled
+    }
+
+    def "daemon reuses the baseline model between checks"() {
+        def jarInspector = Spy(JarInspector, constructorArgs: [null, null])
+        def daemon = new ApiDaemon(new DistributionInspector(jarInspector), 60000)
+        def before = new DistroFixture(temporaryFolder.newFolder("before"))
+        before.lib("gradle-core.jar") {
+            source("org.gradle.api.Thing", "package org.gradle.api; public class Thing { public void a() { } }")
+        }
+        def after = new DistroFixture(temporaryFolder.newFolder("after"))
+        after.lib("gradle-core.jar") {
+            source("org.gradle.api.Thing", "package org.gradle.api; public class Thing { public void b() { } }")
+        }
+        def port = daemon.start(0)
+        def request = "check\ttext\t${before.installDir}\t${after.installDir}"
+
+        when:
+        def output1 = new StringWriter()
+        def result1 = ApiDaemon.request(port, request, output1)
+        def output2 = new StringWriter()
+        def result2 = ApiDaemon.request(port, request, output2)
+
+        then:
+        result1 == null
+        result2 == null
+        output1.toString().contains("CHANGED: org.gradle.api.Thing")
+        output2.toString() == output1.toString()
+        3 * jarInspector.inspectJar(_)
+
+        cleanup:
+        daemon.stop()
+    }
+
+    def "daemon rejects requests without its token"() {
+        def daemon = new ApiDaemon(new DistributionInspector(new JarInspector(null, null)), 60000)
+        def port = daemon.start(0)
+
+        when:
+        def socket = new Socket(InetAddress.getLoopbackAddress(), port)
+        def reply
+        try {
+            socket.outputStream.write("not-the-token\nstop\n".getBytes("utf-8"))
+            socket.outputStream.flush()
+            reply = new BufferedReader(new InputStreamReader(socket.inputStream, "utf-8")).readLine()
+        } finally {
+            socket.close()
+        }
+
+        then:
+        reply == "ERROR Missing or incorrect daemon token"
+        ApiDaemon.tokenFile(port).file
+        ApiDaemon.request(port, "stop", new StringWriter()) == null
+
+        cleanup:
+        daemon.stop()
+    }
+
+    def "reports the same changes when holding compact models"() {
+        def listener = Mock(DiffListener)
+        def before = new DistroFixture(temporaryFolder.newFolder("before"))
+        before.lib("gradle-core.jar") {
+            source("org.gradle.api.Base", "package org.gradle.api; public class Base { public void a() { } }")
+            source("org.gradle.api.Thing", "package org.gradle.api; public class Thing extends Base { public int f; }")
+            source("org.gradle.api.Removed", "package org.gradle.api; public class Removed { }")
+        }
+        def after = new DistroFixture(temporaryFolder.newFolder("after"))
+        after.lib("gradle-core.jar") {
+            source("org.gradle.api.Base", "package org.gradle.api; public class Base { public void b() { } }")
+            source("org.gradle.api.Thing", "package org.gradle.api; public class Thing extends Base implements java.io.Serializable { }")
+        }
+        def checker = new ApiChecker(before.installDir, after.installDir, listener)
+        checker.compact = true
+
+        when:
+        checker.run()
+
+        then:
+        1 * listener.classChanged({it.name == "org/gradle/api/Base"}, {it.name == "org/gradle/api/Base"})
+        1 * listener.methodRemoved({it.name == "org/gradle/api/Base"}, {it.name == "org/gradle/api/Base"}, {it.name == "a"})
+        1 * listener.methodAdded({it.name == "org/gradle/api/Base"}, {it.name == "org/gradle/api/Base"}, {it.name == "b"})
+        1 * listener.classRemoved({it.name == "org/gradle/api/Removed"})
+        1 * listener.classChanged({it.name == "org/gradle/api/Thing"}, {it.name == "org/gradle/api/Thing"})
+        1 * listener.interfaceAdded({it.name == "org/gradle/api/Thing"}, {it.name == "org/gradle/api/Thing"}, {it.name == "java/io/Serializable"})
+        1 * listener.methodRemoved({it.name == "org/gradle/api/Thing"}, {it.name == "org/gradle/api/Thing"}, {it.name == "a"})
+        1 * listener.methodAdded({it.name == "org/gradle/api/Thing"}, {it.name == "org/gradle/api/Thing"}, {it.name == "b"})
+        1 * listener.fieldRemoved({it.name == "org/gradle/api/Thing"}, {it.name == "org/gradle/api/Thing"}, {it.name == "f"})
+        0 * listener._
+    }
+
+    def "reports the same changes when comparing class stores"() {
+        def listener = Mock(DiffListener)
+        def before = new DistroFixture(temporaryFolder.newFolder("before"))
+        before.lib("gradle-core.jar") {
+            source("org.gradle.api.Base", "package org.gradle.api; public class Base { public void a() { } }")
+            source("org.gradle.api.Thing", "package org.gradle.api; public class Thing extends Base { public int f; }")
+            source("org.gradle.api.Removed", "package org.gradle.api; public class Removed { }")
+        }
+        before.lib("gradle-other.jar") {
+            source("org.gradle.api.Thing", "package org.gradle.api; public class Thing extends Base { public int f; public void c() { } }")
+        }
+        def after = new DistroFixture(temporaryFolder.newFolder("after"))
+        after.lib("gradle-core.jar") {
+            source("org.gradle.api.Base", "package org.gradle.api; public class Base { public void b() { } }")
+            source("org.gradle.api.Thing", "package org.gradle.api; public class Thing extends Base implements java.io.Serializable { public void c() { } }")
+        }
+        def checker = new ApiChecker(before.installDir, after.installDir, listener)
+        checker.memoryBudget = 1024
+        checker.spillDir = temporaryFolder.newFolder("spill")
+
+        when:
+        checker.run()
+
+        then:
+        1 * listener.classChanged({it.name == "org/gradle/api/Base"}, {it.name == "org/gradle/api/Base"})
+        1 * listener.methodRemoved({it.name == "org/gradle/api/Base"}, {it.name == "org/gradle/api/Base"}, {it.name == "a"})
+        1 * listener.methodAdded({it.name == "org/gradle/api/Base"}, {it.name == "org/gradle/api/Base"}, {it.name == "b"})
+        1 * listener.classRemoved({it.name == "org/gradle/api/Removed"})
+        1 * listener.classChanged({it.name == "org/gradle/api/Thing"}, {it.name == "org/gradle/api/Thing"})
+        1 * listener.interfaceAdded({it.name == "org/gradle/api/Thing"}, {it.name == "org/gradle/api/Thing"}, {it.name == "java/io/Serializable"})
+        1 * listener.methodRemoved({it.name == "org/gradle/api/Thing"}, {it.name == "org/gradle/api/Thing"}, {it.name == "a"})
+        1 * listener.methodAdded({it.name == "org/gradle/api/Thing"}, {it.name == "org/gradle/api/Thing"}, {it.name == "b"})
+        1 * listener.fieldRemoved({it.name == "org/gradle/api/Thing"}, {it.name == "org/gradle/api/Thing"}, {it.name == "f"})
+        0 * listener._
+
+        and:
+        checker.spillDir.list().length == 0
+    }
+
+    def "reports the same changes when comparing in several processes"() {
+        def listener = Mock(DiffListener)
+        def before = new DistroFixture(temporaryFolder.newFolder("before"))
+        before.lib("gradle-core.jar") {
+            source("org.gradle.api.Base", "package org.gradle.api; public class Base { public void a() { } }")
+            source("org.gradle.api.tasks.Thing", "package org.gradle.api.tasks; public class Thing extends org.gradle.api.Base { public int f; }")
+            source("org.gradle.api.Removed", "package org.gradle.api; public class Removed { }")
+            source("org.gradle.api.old.Moved", "package org.gradle.api.old; public class Moved { public void m() { } }")
+        }
+        def after = new DistroFixture(temporaryFolder.newFolder("after"))
+        after.lib("gradle-core.jar") {
+            source("org.gradle.api.Base", "package org.gradle.api; public class Base { public void b() { } }")
+            source("org.gradle.api.tasks.Thing", "package org.gradle.api.tasks; public class Thing extends org.gradle.api.Base implements java.io.Serializable { }")
+            source("org.gradle.api.plugins.Moved", "package org.gradle.api.plugins; public class Moved { public void m() { } }")
+        }
+        def checker = new ShardedChecker(before.installDir, after.installDir, listener, 3)
+        checker.workDir = temporaryFolder.newFolder("shards")
+
+        when:
+        checker.run()
+
+        then:
+        1 * listener.classChanged({it.name == "org/gradle/api/Base"}, {it.name == "org/gradle/api/Base"})
+        1 * listener.methodRemoved({it.name == "org/gradle/api/Base"}, {it.name == "org/gradle/api/Base"}, {it.name == "a"})
+        1 * listener.methodAdded({it.name == "org/gradle/api/Base"}, {it.name == "org/gradle/api/Base"}, {it.name == "b"})
+        1 * listener.classRemoved({it.name == "org/gradle/api/Removed"})
+        1 * listener.classMoved({it.name == "org/gradle/api/old/Moved"}, {it.name == "org/gradle/api/plugins/Moved"})
+        1 * listener.classChanged({it.name == "org/gradle/api/tasks/Thing"}, {it.name == "org/gradle/api/tasks/Thing"})
+        1 * listener.interfaceAdded({it.name == "org/gradle/api/tasks/Thing"}, {it.name == "org/gradle/api/tasks/Thing"}, {it.name == "java/io/Serializable"})
+        1 * listener.methodRemoved({it.name == "org/gradle/api/tasks/Thing"}, {it.name == "org/gradle/api/tasks/Thing"}, {it.name == "a"})
+        1 * listener.methodAdded({it.name == "org/gradle/api/tasks/Thing"}, {it.name == "org/gradle/api/tasks/Thing"}, {it.name == "b"})
+        1 * listener.fieldRemoved({it.name == "org/gradle/api/tasks/Thing"}, {it.name == "org/gradle/api/tasks/Thing"}, {it.name == "f"})
+        0 * listener._
+
+        and:
+        checker.workDir.list().length == 0
+    }
+
+    def "rejects options that are not supported when comparing in several processes"() {
+        when:
+        ApiChecker.main((["--shards", "2"] + args) as String[])
+
+        then:
+        def e = thrown(IllegalArgumentException)
+        e.message.startsWith("USAGE:")
+
+        where:
+        args << [
+            ["--compact", "before", "after"],
+            ["--memory-budget", "10", "before", "after"],
+            ["--metrics", "metrics.json", "before", "after"],
+            ["--verbose", "before", "after"],
+            ["history", "first", "second"],
+            ["incremental", "state", "dist"],
+            ["leaks", "dist"],
+            ["daemon"],
+            ["--daemon", "1234", "before", "after"],
+            ["--daemon", "1234", "stop"]
+        ]
+    }
+
+    def "uses the configured rules to decide which classes and members are part of the public API"() {
+        def listener = Mock(DiffListener)
+        def before = new DistroFixture(temporaryFolder.newFolder("before"))
+        before.lib("acme-core.jar") {
+            source("com.acme.Incubating", "package com.acme; public @interface Incubating { }")
+            source("com.acme.Thing", "package com.acme; public class Thing { }")
+            source("com.acme.impl.Impl", "package com.acme.impl; public class Impl { }")
+        }
+        before.lib("acme-extra.jar") {
+            source("com.acme.impl.Extra", "package com.acme.impl; public class Extra { }")
+        }
+        def after = new DistroFixture(temporaryFolder.newFolder("after"))
+        after.lib("acme-core.jar") {
+            source("com.acme.Incubating", "package com.acme; public @interface Incubating { }")
+            source("com.acme.Thing", "package com.acme; public class Thing { @Incubating public void incubating() { } public void stable() { } }")
+            source("com.acme.New", "package com.acme; @Incubating public class New { }")
+        }
+        after.lib("acme-extra.jar") {
+        }
+        def checker = new ApiChecker(before.installDir, after.installDir, listener)
+        checker.rules = ApiRules.parse("""
+            # The public API of the acme libraries
+            include com.acme.**
+            exclude **/impl/**
+            exclude-annotation com.acme.Incubating
+            module acme-extra.jar include com/acme/impl/**
+        """)
+
+        when:
+        checker.run()
+
+        then:
+        1 * listener.classChanged({it.name == "com/acme/Thing"}, {it.name == "com/acme/Thing"})
+        1 * listener.methodAdded({it.name == "com/acme/Thing"}, {it.name == "com/acme/Thing"}, {it.name == "stable"})
+        1 * listener.classRemoved({it.name == "com/acme/impl/Extra"})
+        0 * listener._
+    }
+
+    def "does not inherit constructors or private members from super types"() {
+        def listener = Mock(DiffListener)
+        def before = new DistroFixture(temporaryFolder.newFolder("before"))
+        before.lib("gradle-core.jar") {
+            source("org.gradle.logging.internal.Base", """
+                package org.gradle.logging.internal;
+                public abstract class Base {
+                    public Base() { }
+                    private void doSomething() { Runnable r = new Runnable() { public void run() { } }; }
+                }
+            """)
+            source("org.gradle.logging.Thing1", """
+                package org.gradle.logging;
+                public class Thing1 extends org.gradle.logging.internal.Base {
+                    private Thing1() { }
+                }
+            """)
+        }
+        def after = new DistroFixture(temporaryFolder.newFolder("after"))
+        after.lib("gradle-core.jar") {
+            source("org.gradle.logging.internal.Base", """
+                package org.gradle.logging.internal;
+                public abstract class Base {
+                    public Base(String s) { }
+                    private void doSomethingElse() { Runnable r = new Runnable() { public void run() { } public void other() { } }; }
+                }
+            """)
+            source("org.gradle.logging.Thing1", """
+                package org.gradle.logging;
+                public class Thing1 extends org.gradle.logging.internal.Base {
+                    private Thing1() { super(null); }
+                }
+            """)
+        }
+
+        when:
+        new ApiChecker(before.installDir, after.installDir, listener).run()
+
+        then:
+        1 * listener.classUnchanged({it.name == "org/gradle/logging/Thing1"})
+        0 * listener._
+    }
+
+    def "finds internal and non-visible classes that are reachable from the public API"() {
+        def distro = new DistroFixture(temporaryFolder.newFolder("distro"))
+        distro.lib("gradle-core.jar") {
+            source("org.gradle.internal.Marker", "package org.gradle.internal; public interface Marker { }")
+            source("org.gradle.internal.Services", "package org.gradle.internal; public final class Services implements Marker { }")
+            source("org.gradle.internal.Unused", "package org.gradle.internal; public class Unused { }")
+            source("org.gradle.api.Hidden", "package org.gradle.api; class Hidden { }")
+            source("org.gradle.api.Project", "package org.gradle.api; public class Project { public org.gradle.internal.Services getServices() { return null; } public Hidden[] hidden; public String getName() { return null; } }")
+        }
+
+        when:
+        def leakedTypes = ApiChecker.findLeakedTypes(distro.installDir, 1, null, ApiRules.defaults())
+
+        then:
+        leakedTypes.collect { it.toString() } == ["org.gradle.api.Hidden (not visible)", "org.gradle.internal.Marker (internal)", "org.gradle.internal.Services (internal)"]
+        leakedTypes[0].path == ["org.gradle.api.Project field hidden"]
+        leakedTypes[1].path == ["org.gradle.api.Project method getServices()Lorg/gradle/internal/Services;", "org.gradle.internal.Services interface"]
+    }
+
+    def "finds classes that are reachable through the members of a final internal class"() {
+        def distro = new DistroFixture(temporaryFolder.newFolder("distro"))
+        distro.lib("gradle-core.jar") {
+            source("org.gradle.internal.Impl", "package org.gradle.internal; public class Impl { }")
+            source("org.gradle.internal.Services", "package org.gradle.internal; public final class Services { public Impl get() { return null; } }")
+            source("org.gradle.api.Project", "package org.gradle.api; public class Project { public org.gradle.internal.Services getServices() { return null; } }")
+        }
+
+        when:
+        def leakedTypes = ApiChecker.findLeakedTypes(distro.installDir, 1, null, ApiRules.defaults())
+
+        then:
+        leakedTypes.collect { it.toString() } == ["org.gradle.internal.Impl (internal)", "org.gradle.internal.Services (internal)"]
+        leakedTypes[0].path == ["org.gradle.api.Project method getServices()Lorg/gradle/internal/Services;", "org.gradle.internal.Services method get()Lorg/gradle/internal/Impl;"]
+    }
 }
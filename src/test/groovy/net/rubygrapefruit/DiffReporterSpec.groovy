@@ -0,0 +1,104 @@
+package net.rubygrapefruit
+
+import spock.lang.Specification
+
+class DiffReporterSpec extends Specification {
+    def output = new StringWriter()
+
+    def "writes each change as a JSON object on its own line"() {
+        def reporter = new JsonDiffReporter(output)
+        def before = classDetails("org/gradle/Thing", "java/lang/Object")
+        def after = classDetails("org/gradle/Thing", "org/gradle/Base")
+
+        when:
+        reporter.releaseStarted(new File("releases/1.0"), new File("releases/2.0"))
+        reporter.classUnchanged(classDetails("org/gradle/Unchanged", "java/lang/Object"))
+        reporter.classRemoved(classDetails("org/gradle/Removed", "java/lang/Object"))
+        reporter.classAdded(classDetails("org/gradle/Added", "java/lang/Object"))
+        reporter.classMoved(classDetails("org/gradle/internal/Moved", "java/lang/Object"), classDetails("org/gradle/api/Moved", "java/lang/Object"))
+        reporter.classChanged(before, after)
+        reporter.superClassChanged(before, after)
+        reporter.interfaceAdded(before, after, new ClassDetails("java/io/Serializable"))
+        reporter.interfaceRemoved(before, after, new ClassDetails("java/lang/Runnable"))
+        reporter.methodAdded(before, after, new MethodDetails(1, "added", "()V"))
+        reporter.methodRemoved(before, after, new MethodDetails(1, "removed", "()V"))
+        reporter.methodSignatureChanged(before, after, new MethodDetails(1, "get", "(I)Ljava/lang/String;"), new MethodDetails(1, "get", "(J)Ljava/lang/String;"))
+        reporter.fieldAdded(before, after, new FieldDetails(1, "added", "I"))
+        reporter.fieldRemoved(before, after, new FieldDetails(1, "removed", "Ljava/lang/String;"))
+
+        then:
+        output.toString() == """{"event":"releaseStarted","before":"releases/1.0","after":"releases/2.0"}
+{"event":"classRemoved","class":"org.gradle.Removed"}
+{"event":"classAdded","class":"org.gradle.Added"}
+{"event":"classMoved","class":"org.gradle.api.Moved","before":"org.gradle.internal.Moved"}
+{"event":"classChanged","class":"org.gradle.Thing"}
+{"event":"superClassChanged","class":"org.gradle.Thing","before":"java.lang.Object","after":"org.gradle.Base"}
+{"event":"interfaceAdded","class":"org.gradle.Thing","interface":"java.io.Serializable"}
+{"event":"interfaceRemoved","class":"org.gradle.Thing","interface":"java.lang.Runnable"}
+{"event":"methodAdded","class":"org.gradle.Thing","method":"added()V"}
+{"event":"methodRemoved","class":"org.gradle.Thing","method":"removed()V"}
+{"event":"methodSignatureChanged","class":"org.gradle.Thing","before":"get(I)Ljava/lang/String;","after":"get(J)Ljava/lang/String;"}
+{"event":"fieldAdded","class":"org.gradle.Thing","field":"added I"}
+{"event":"fieldRemoved","class":"org.gradle.Thing","field":"removed Ljava/lang/String;"}
+"""
+    }
+
+    def "escapes JSON strings"() {
+        def reporter = new JsonDiffReporter(output)
+
+        when:
+        reporter.releaseStarted(new File('say "hello"'), new File('back\\slash\tand\u0001control'))
+        reporter.classAdded(new ClassDetails('org/gradle/Thing$Inner'))
+
+        then:
+        output.toString() == '''{"event":"releaseStarted","before":"say \\"hello\\"","after":"back\\\\slash\\u0009and\\u0001control"}
+{"event":"classAdded","class":"org.gradle.Thing$Inner"}
+'''
+    }
+
+    def "writes a human readable report of each change"() {
+        def reporter = new TextDiffReporter(output)
+        def before = classDetails("org/gradle/Thing", "java/lang/Object")
+        def after = classDetails("org/gradle/Thing", "org/gradle/Base")
+
+        when:
+        reporter.releaseStarted(new File("releases/1.0"), new File("releases/2.0"))
+        reporter.classUnchanged(classDetails("org/gradle/Unchanged", "java/lang/Object"))
+        reporter.classRemoved(classDetails("org/gradle/Removed", "java/lang/Object"))
+        reporter.classAdded(classDetails("org/gradle/Added", "java/lang/Object"))
+        reporter.classMoved(classDetails("org/gradle/internal/Moved", "java/lang/Object"), classDetails("org/gradle/api/Moved", "java/lang/Object"))
+        reporter.classChanged(before, after)
+        reporter.superClassChanged(before, after)
+        reporter.interfaceAdded(before, after, new ClassDetails("java/io/Serializable"))
+        reporter.interfaceRemoved(before, after, new ClassDetails("java/lang/Runnable"))
+        reporter.methodAdded(before, after, new MethodDetails(1, "added", "()V"))
+        reporter.methodRemoved(before, after, new MethodDetails(1, "removed", "()V"))
+        reporter.methodSignatureChanged(before, after, new MethodDetails(1, "get", "(I)Ljava/lang/String;"), new MethodDetails(1, "get", "(J)Ljava/lang/String;"))
+        reporter.fieldAdded(before, after, new FieldDetails(1, "added", "I"))
+        reporter.fieldRemoved(before, after, new FieldDetails(1, "removed", "Ljava/lang/String;"))
+
+        then:
+        output.toString() == """
+==== releases/1.0 -> releases/2.0 ====
+REMOVED: org.gradle.Removed
+ADDED: org.gradle.Added
+MOVED: org.gradle.internal.Moved -> org.gradle.api.Moved
+
+CHANGED: org.gradle.Thing
+  * super class changed: was: java.lang.Object, now: org.gradle.Base
+  * interface added: java.io.Serializable
+  * interface removed: java.lang.Runnable
+  * method added: added()V
+  * method removed: removed()V
+  * method signature changed: was: get(I)Ljava/lang/String;, now: get(J)Ljava/lang/String;
+  * field added: added I
+  * field removed: removed Ljava/lang/String;
+"""
+    }
+
+    private static ClassDetails classDetails(String name, String superName) {
+        def details = new ClassDetails(name)
+        details.superClass = new ClassDetails(superName)
+        return details
+    }
+}
@@ -16,7 +16,9 @@ import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.SimpleFileVisitor;
 import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
 import java.util.Map;
 import java.util.jar.JarEntry;
 import java.util.jar.JarOutputStream;
@@ -24,6 +26,7 @@ import java.util.jar.JarOutputStream;
 public class DistroFixture {
     private final File installDir;
     private final File libDir;
+    private final List<File> classesDirs = new ArrayList<>();
 
     public DistroFixture(File installDir) {
         this.installDir = installDir;
@@ -53,6 +56,20 @@ public class DistroFixture {
         return this;
     }
 
+    /**
+     * Adds a directory of class files to the lib directory.
+     */
+    public DistroFixture classesDir(String name, Closure closure) throws IOException {
+        LibraryFixture libraryFixture = new LibraryFixture(name);
+        closure.setDelegate(libraryFixture);
+        closure.setResolveStrategy(Closure.DELEGATE_FIRST);
+        closure.call();
+
+        File outDir = new File(libDir, name);
+        libraryFixture.build(outDir);
+        return this;
+    }
+
     public class LibraryFixture {
         private final String name;
         private final Map<File, String> sourceFiles = new ListHashMap<>();
@@ -71,20 +88,10 @@ public class DistroFixture {
         }
 
         private void build(JarOutputStream jarFile) throws IOException {
-            if (sourceFiles.isEmpty()) {
+            File outputDir = compile();
+            if (outputDir == null) {
                 return;
             }
-
-            File outputDir = new File(installDir, "tmp/" + name);
-            outputDir.mkdirs();
-
-            JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
-            StandardJavaFileManager fileManager = compiler.getStandardFileManager(null, null, null);
-            JavaCompiler.CompilationTask compileTask = compiler.getTask(null, fileManager, null, Arrays.asList("-d", outputDir.getAbsolutePath()), null, fileManager.getJavaFileObjects(sourceFiles.keySet().toArray(new File[0])));
-            boolean ok = compileTask.call();
-            if (!ok) {
-                throw new IllegalArgumentException("Could not compile source files");
-            }
             Files.walkFileTree(outputDir.toPath(), new SimpleFileVisitor<Path>() {
                 @Override
                 public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
@@ -100,5 +107,46 @@ public class DistroFixture {
                 }
             });
         }
+
+        private void build(File outDir) throws IOException {
+            File outputDir = compile();
+            if (outputDir == null) {
+                return;
+            }
+            Files.walkFileTree(outputDir.toPath(), new SimpleFileVisitor<Path>() {
+                @Override
+                public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+                    if (file.toString().endsWith(".class")) {
+                        Path target = outDir.toPath().resolve(outputDir.toPath().relativize(file));
+                        Files.createDirectories(target.getParent());
+                        Files.copy(file, target);
+                    }
+                    return FileVisitResult.CONTINUE;
+                }
+            });
+        }
+
+        private File compile() throws IOException {
+            if (sourceFiles.isEmpty()) {
+                return null;
+            }
+
+            File outputDir = new File(installDir, "tmp/" + name);
+            outputDir.mkdirs();
+
+            JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+            StandardJavaFileManager fileManager = compiler.getStandardFileManager(null, null, null);
+            StringBuilder classpath = new StringBuilder();
+            for (File classesDir : classesDirs) {
+                classpath.append(classesDir.getAbsolutePath()).append(File.pathSeparatorChar);
+            }
+            JavaCompiler.CompilationTask compileTask = compiler.getTask(null, fileManager, null, Arrays.asList("-d", outputDir.getAbsolutePath(), "-classpath", classpath.toString()), null, fileManager.getJavaFileObjects(sourceFiles.keySet().toArray(new File[0])));
+            boolean ok = compileTask.call();
+            if (!ok) {
+                throw new IllegalArgumentException("Could not compile source files");
+            }
+            classesDirs.add(outputDir);
+            return outputDir;
+        }
     }
 }
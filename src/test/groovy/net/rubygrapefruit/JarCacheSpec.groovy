@@ -0,0 +1,104 @@
+package net.rubygrapefruit
+
+import org.junit.Rule
+import org.junit.rules.TemporaryFolder
+import spock.lang.Specification
+
+class JarCacheSpec extends Specification {
+    @Rule TemporaryFolder temporaryFolder = new TemporaryFolder()
+
+    def "stores and loads classes"() {
+        def cache = new JarCache(temporaryFolder.newFolder("cache"), 1024 * 1024)
+        def parsedClass = new ParsedClass("org/gradle/Thing", 1, "java/lang/Object", ["org/gradle/Named"] as String[])
+        parsedClass.addMethod(1, "doThing", "()V")
+        parsedClass.addMethod(new MethodDetails(1, "get", "()Ljava/util/List;", "()Ljava/util/List<Ljava/lang/String;>;", ["java/io/IOException"] as String[], ["Lorg/gradle/api/Incubating;"] as String[]))
+        parsedClass.addField(4, "field", "Ljava/lang/String;")
+        parsedClass.addField(new FieldDetails(1, "names", "Ljava/util/List;", "Ljava/util/List<Ljava/lang/String;>;", ["Ljava/lang/Deprecated;"] as String[]))
+        parsedClass.apiType = true
+
+        when:
+        cache.store("key", [parsedClass])
+        def loaded = cache.load("key")
+
+        then:
+        loaded.size() == 1
+        loaded[0].name == "org/gradle/Thing"
+        loaded[0].access == 1
+        loaded[0].apiType
+        loaded[0].superName == "java/lang/Object"
+        loaded[0].interfaces as List == ["org/gradle/Named"]
+        loaded[0].methods.collect { it.signature } == ["doThing()V", "get()Ljava/util/List;"]
+        loaded[0].methods[0].genericSignature == null
+        loaded[0].methods[0].exceptions.length == 0
+        loaded[0].methods[1].genericSignature == "()Ljava/util/List<Ljava/lang/String;>;"
+        loaded[0].methods[1].exceptions as List == ["java/io/IOException"]
+        loaded[0].methods[1].annotations as List == ["Lorg/gradle/api/Incubating;"]
+        loaded[0].fields.collect { it.signature } == ["field Ljava/lang/String;", "names Ljava/util/List;"]
+        loaded[0].fields[1].genericSignature == "Ljava/util/List<Ljava/lang/String;>;"
+        loaded[0].fields[1].annotations as List == ["Ljava/lang/Deprecated;"]
+
+        and:
+        cache.load("unknown") == null
+    }
+
+    def "discards corrupt entries"() {
+        def cacheDir = temporaryFolder.newFolder("cache")
+        def cache = new JarCache(cacheDir, 1024 * 1024)
+        cache.store("key", [new ParsedClass("org/gradle/Thing", 1, null, [] as String[])])
+        def entry = new File(cacheDir, "key.bin")
+
+        when:
+        entry.bytes = entry.bytes[0..<entry.bytes.length - 3] as byte[]
+
+        then:
+        cache.load("key") == null
+        !entry.exists()
+    }
+
+    def "removes least recently used entries when the cache is too large"() {
+        def cacheDir = temporaryFolder.newFolder("cache")
+        def parsedClass = new ParsedClass("org/gradle/Thing", 1, null, [] as String[])
+        new JarCache(cacheDir, 1024 * 1024).store("probe", [parsedClass])
+        def entrySize = new File(cacheDir, "probe.bin").length()
+        new File(cacheDir, "probe.bin").delete()
+        def cache = new JarCache(cacheDir, entrySize * 2)
+
+        when:
+        cache.store("key1", [parsedClass])
+        new File(cacheDir, "key1.bin").lastModified = 1000
+        cache.store("key2", [parsedClass])
+        new File(cacheDir, "key2.bin").lastModified = 2000
+        cache.load("key1")
+        cache.store("key3", [parsedClass])
+
+        then:
+        new File(cacheDir, "key1.bin").exists()
+        !new File(cacheDir, "key2.bin").exists()
+        new File(cacheDir, "key3.bin").exists()
+    }
+
+    def "removes temporary files left behind by other processes when the cache is too large"() {
+        def cacheDir = temporaryFolder.newFolder("cache")
+        def parsedClass = new ParsedClass("org/gradle/Thing", 1, null, [] as String[])
+        new JarCache(cacheDir, 1024 * 1024).store("probe", [parsedClass])
+        def entrySize = new File(cacheDir, "probe.bin").length()
+        new File(cacheDir, "probe.bin").delete()
+        def cache = new JarCache(cacheDir, entrySize)
+        def staleFile = new File(cacheDir, "stale.tmp")
+        staleFile.text = "partial"
+        staleFile.lastModified = 1000
+        def currentFile = new File(cacheDir, "current.tmp")
+        currentFile.text = "partial"
+
+        when:
+        cache.store("key1", [parsedClass])
+        new File(cacheDir, "key1.bin").lastModified = 2000
+        cache.store("key2", [parsedClass])
+
+        then:
+        !staleFile.exists()
+        currentFile.exists()
+        !new File(cacheDir, "key1.bin").exists()
+        new File(cacheDir, "key2.bin").exists()
+    }
+}
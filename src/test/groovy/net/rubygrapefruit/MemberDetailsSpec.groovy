@@ -0,0 +1,54 @@
+package net.rubygrapefruit
+
+import spock.lang.Specification
+
+class MemberDetailsSpec extends Specification {
+    def "orders methods by signature"() {
+        def method1 = new MethodDetails(1, name1, descriptor1)
+        def method2 = new MethodDetails(1, name2, descriptor2)
+
+        expect:
+        Math.signum(method1.compareTo(method2)) == Math.signum(method1.signature.compareTo(method2.signature))
+        Math.signum(method2.compareTo(method1)) == Math.signum(method2.signature.compareTo(method1.signature))
+
+        where:
+        name1    | descriptor1              | name2    | descriptor2
+        "get"    | "()V"                    | "get"    | "()V"
+        "get"    | "()V"                    | "getAll" | "()V"
+        "get"    | "(I)V"                   | "getAll" | "()V"
+        "get"    | "()V"                    | "get"    | "()Ljava/lang/String;"
+        "get"    | "(Ljava/lang/String;)V"  | "get"    | "(Ljava/lang/String;I)V"
+        "a"      | "()V"                    | "b"      | "()V"
+        "<init>" | "()V"                    | "a"      | "()V"
+        "run"    | "()V"                    | "ru"     | "n()V"
+    }
+
+    def "orders fields by signature"() {
+        def field1 = new FieldDetails(1, name1, descriptor1)
+        def field2 = new FieldDetails(1, name2, descriptor2)
+
+        expect:
+        Math.signum(field1.compareTo(field2)) == Math.signum(field1.signature.compareTo(field2.signature))
+        Math.signum(field2.compareTo(field1)) == Math.signum(field2.signature.compareTo(field1.signature))
+
+        where:
+        name1   | descriptor1          | name2     | descriptor2
+        "value" | "I"                  | "value"   | "I"
+        "value" | "I"                  | "values"  | "I"
+        "value" | "Z"                  | "value0"  | "I"
+        "value" | "I"                  | "value"   | "J"
+        "name"  | "Ljava/lang/String;" | "name"    | "Ljava/lang/StringBuilder;"
+        "a"     | "I"                  | "A"       | "I"
+    }
+
+    def "fields with the same name and descriptor are equal"() {
+        def field = new FieldDetails(1, "value", "I")
+
+        expect:
+        field == new FieldDetails(4, new String("value"), new String("I"), null, ["Ljava/lang/Deprecated;"] as String[])
+        field.hashCode() == new FieldDetails(4, "value", "I").hashCode()
+        field != new FieldDetails(1, "value", "J")
+        field != new FieldDetails(1, "values", "I")
+        !field.equals(new MethodDetails(1, "value", "I"))
+    }
+}